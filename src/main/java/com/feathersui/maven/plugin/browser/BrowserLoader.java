@@ -0,0 +1,89 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.browser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Properties;
+
+import com.feathersui.maven.plugin.utils.OnDemandDependencies;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Loads the Playwright browser implementation on demand. Playwright and its
+ * driver bundle are large, so they aren't dependencies of the plugin at
+ * runtime. The first goal that needs a browser resolves them from the
+ * project's plugin repositories, and loads them, with the implementation
+ * classes, in a child-first class loader that is shared by the rest of the
+ * Maven session. If Playwright was added to the plugin's dependencies, it's
+ * used directly instead.
+ */
+public class BrowserLoader {
+	private static final String IMPLEMENTATION_PACKAGE = "com.feathersui.maven.plugin.browser.playwright.";
+	private static final String FACTORY_CLASS_NAME = IMPLEMENTATION_PACKAGE + "PlaywrightBrowserSessionFactory";
+	private static final String PLAYWRIGHT_CLASS_NAME = "com.microsoft.playwright.Playwright";
+	private static final String PROPERTIES_FILE_NAME = "playwright.properties";
+
+	private static BrowserSessionFactory factory;
+
+	/**
+	 * Returns the factory of the shared browser implementation, resolving and
+	 * loading it first, if necessary.
+	 */
+	public static synchronized BrowserSessionFactory getFactory(RepositorySystem repositorySystem,
+			RepositorySystemSession repositorySession, List<RemoteRepository> repositories)
+			throws IOException {
+		if (factory != null) {
+			return factory;
+		}
+		ClassLoader classLoader = OnDemandDependencies.createClassLoader(
+				"com.microsoft.playwright:playwright:" + getPlaywrightVersion(), PLAYWRIGHT_CLASS_NAME,
+				IMPLEMENTATION_PACKAGE, repositorySystem, repositorySession, repositories);
+		try {
+			Class<?> factoryClass = Class.forName(FACTORY_CLASS_NAME, true, classLoader);
+			factory = (BrowserSessionFactory) factoryClass.getConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new IOException("Failed to load browser implementation", e);
+		}
+		return factory;
+	}
+
+	/**
+	 * Returns the factory of the shared browser implementation, or
+	 * {@code null} if no goal has loaded it yet.
+	 */
+	public static synchronized BrowserSessionFactory getLoadedFactory() {
+		return factory;
+	}
+
+	/**
+	 * Returns the version of Playwright that the plugin was compiled with.
+	 */
+	public static String getPlaywrightVersion() throws IOException {
+		Properties properties = new Properties();
+		try (InputStream stream = BrowserLoader.class.getResourceAsStream(PROPERTIES_FILE_NAME)) {
+			if (stream == null) {
+				throw new IOException("Missing resource: " + PROPERTIES_FILE_NAME);
+			}
+			properties.load(stream);
+		}
+		return properties.getProperty("version");
+	}
+}
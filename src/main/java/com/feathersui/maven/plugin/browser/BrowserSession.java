@@ -0,0 +1,83 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.browser;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A single page in an isolated context of a headless browser, which goals
+ * use to run html5 tests, benchmarks, and performance traces. The browser
+ * implementation is loaded on demand by {@link BrowserLoader}, so that its
+ * dependencies aren't resolved by builds that never need a browser.
+ *
+ * <p>
+ * Values returned from JavaScript are converted to JSON-compatible Java
+ * types, such as {@code Map}, {@code List}, {@code Number}, {@code String},
+ * and {@code Boolean}.
+ * </p>
+ */
+public interface BrowserSession extends Closeable {
+	/**
+	 * Adds a script that is evaluated before any of the page's scripts, on
+	 * every navigation.
+	 */
+	void addInitScript(String script);
+
+	/**
+	 * Receives the type, such as {@code "error"} or {@code "info"}, and the
+	 * text of every console message.
+	 */
+	void onConsoleMessage(BiConsumer<String, String> listener);
+
+	/**
+	 * Receives the URL of every request made by the page.
+	 */
+	void onRequest(Consumer<String> listener);
+
+	void navigate(String url);
+
+	Object evaluate(String expression);
+
+	/**
+	 * Waits until the function returns a truthy value.
+	 *
+	 * @param timeout the maximum time to wait, in milliseconds, or zero to
+	 *                wait forever
+	 */
+	void waitForFunction(String expression, double timeout);
+
+	void waitForTimeout(double timeout);
+
+	/**
+	 * Starts recording a Chrome DevTools performance trace of the page.
+	 */
+	void startTracing(List<String> categories);
+
+	/**
+	 * Stops recording, and returns the trace in JSON format.
+	 */
+	byte[] stopTracing();
+
+	/**
+	 * Closes the page and its context, but not the browser, which is reused
+	 * for the rest of the Maven session.
+	 */
+	@Override
+	void close();
+}
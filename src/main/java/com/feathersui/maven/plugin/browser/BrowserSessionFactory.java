@@ -0,0 +1,31 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.browser;
+
+/**
+ * Creates sessions in a browser implementation that was loaded by
+ * {@link BrowserLoader}. Implementations must have a public constructor
+ * without arguments.
+ */
+public interface BrowserSessionFactory {
+	BrowserSession newSession();
+
+	/**
+	 * Closes the browser that the current thread's sessions share, if it has
+	 * one. Must be called from the same thread that created the sessions.
+	 */
+	void closeBrowser();
+}
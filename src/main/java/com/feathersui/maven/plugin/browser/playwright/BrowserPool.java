@@ -0,0 +1,142 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.browser.playwright;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Playwright;
+import com.microsoft.playwright.PlaywrightException;
+
+/**
+ * Keeps a headless Chromium browser running for the rest of the Maven
+ * session, so that it doesn't need to be launched again for each module.
+ * Callers receive a new, isolated {@link BrowserContext}, which they must
+ * close when they're done with it.
+ *
+ * <p>
+ * Playwright objects may only be used by the thread that created them, so
+ * each thread of a parallel build gets its own browser. Goals close their
+ * thread's browser with {@link #closeCurrentThread()} when the session
+ * doesn't need it anymore. The browser of a thread that ends without
+ * closing it, such as a thread of a parallel build, is closed after the
+ * thread is gone, when nothing can use it concurrently. Browsers are
+ * launched again if they crash or disconnect.
+ * </p>
+ */
+public class BrowserPool {
+	private static final BrowserPool INSTANCE = new BrowserPool();
+
+	public static BrowserPool getInstance() {
+		return INSTANCE;
+	}
+
+	private static class Entry {
+		public Playwright playwright;
+		public Browser browser;
+	}
+
+	private BrowserPool() {
+	}
+
+	private Map<Thread, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Closes the current thread's browser, if it has one.
+	 */
+	public void closeCurrentThread() {
+		Entry entry = entries.remove(Thread.currentThread());
+		if (entry != null) {
+			close(entry);
+		}
+	}
+
+	/**
+	 * Creates a new browser context in the current thread's browser,
+	 * launching the browser first, if necessary.
+	 */
+	public BrowserContext newContext() {
+		Entry entry = getBrowser();
+		try {
+			return entry.browser.newContext();
+		} catch (PlaywrightException e) {
+			// the browser may have crashed since the connection was checked
+			close(entry);
+			entries.remove(Thread.currentThread());
+			return getBrowser().browser.newContext();
+		}
+	}
+
+	private Entry getBrowser() {
+		Thread thread = Thread.currentThread();
+		Entry entry = entries.get(thread);
+		if (entry != null && !entry.browser.isConnected()) {
+			close(entry);
+			entry = null;
+		}
+		if (entry == null) {
+			entry = new Entry();
+			// Playwright may be loaded on demand by a different class loader
+			// than the one that Maven set for the thread
+			ClassLoader contextClassLoader = thread.getContextClassLoader();
+			thread.setContextClassLoader(BrowserPool.class.getClassLoader());
+			try {
+				entry.playwright = Playwright.create();
+			} finally {
+				thread.setContextClassLoader(contextClassLoader);
+			}
+			try {
+				entry.browser = entry.playwright.chromium().launch();
+			} catch (PlaywrightException e) {
+				entry.playwright.close();
+				throw e;
+			}
+			entries.put(thread, entry);
+			watchOwner(thread, entry);
+		}
+		return entry;
+	}
+
+	private void watchOwner(Thread owner, Entry entry) {
+		Thread watcher = new Thread(() -> {
+			try {
+				owner.join();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (entries.remove(owner, entry)) {
+				close(entry);
+			}
+		}, "lime-browser-pool-" + owner.getName());
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	private void close(Entry entry) {
+		try {
+			entry.browser.close();
+		} catch (PlaywrightException e) {
+			// already disconnected
+		}
+		try {
+			entry.playwright.close();
+		} catch (Exception e) {
+			// the driver may have exited already
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.browser.playwright;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.feathersui.maven.plugin.browser.BrowserSession;
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+
+/**
+ * A {@link BrowserSession} that wraps a Playwright page in its own browser
+ * context.
+ */
+public class PlaywrightBrowserSession implements BrowserSession {
+	public PlaywrightBrowserSession(BrowserContext browserContext) {
+		this.browserContext = browserContext;
+	}
+
+	private BrowserContext browserContext;
+	private Page page;
+
+	@Override
+	public void addInitScript(String script) {
+		browserContext.addInitScript(script);
+	}
+
+	@Override
+	public void onConsoleMessage(BiConsumer<String, String> listener) {
+		getPage().onConsoleMessage((message) -> listener.accept(message.type(), message.text()));
+	}
+
+	@Override
+	public void onRequest(Consumer<String> listener) {
+		getPage().onRequest((request) -> listener.accept(request.url()));
+	}
+
+	@Override
+	public void navigate(String url) {
+		getPage().navigate(url);
+	}
+
+	@Override
+	public Object evaluate(String expression) {
+		return getPage().evaluate(expression);
+	}
+
+	@Override
+	public void waitForFunction(String expression, double timeout) {
+		getPage().waitForFunction(expression, null, new Page.WaitForFunctionOptions().setTimeout(timeout));
+	}
+
+	@Override
+	public void waitForTimeout(double timeout) {
+		getPage().waitForTimeout(timeout);
+	}
+
+	@Override
+	public void startTracing(List<String> categories) {
+		browserContext.browser().startTracing(getPage(),
+				new Browser.StartTracingOptions().setCategories(categories).setScreenshots(false));
+	}
+
+	@Override
+	public byte[] stopTracing() {
+		return browserContext.browser().stopTracing();
+	}
+
+	@Override
+	public void close() {
+		browserContext.close();
+	}
+
+	/**
+	 * Init scripts must be added before the page is created, so the page is
+	 * created when it's first needed.
+	 */
+	private Page getPage() {
+		if (page == null) {
+			page = browserContext.newPage();
+		}
+		return page;
+	}
+}
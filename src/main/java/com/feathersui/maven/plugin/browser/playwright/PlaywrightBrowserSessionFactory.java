@@ -0,0 +1,35 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.browser.playwright;
+
+import com.feathersui.maven.plugin.browser.BrowserSession;
+import com.feathersui.maven.plugin.browser.BrowserSessionFactory;
+
+/**
+ * Creates sessions in the headless Chromium browsers of the
+ * {@link BrowserPool}.
+ */
+public class PlaywrightBrowserSessionFactory implements BrowserSessionFactory {
+	@Override
+	public BrowserSession newSession() {
+		return new PlaywrightBrowserSession(BrowserPool.getInstance().newContext());
+	}
+
+	@Override
+	public void closeBrowser() {
+		BrowserPool.getInstance().closeCurrentThread();
+	}
+}
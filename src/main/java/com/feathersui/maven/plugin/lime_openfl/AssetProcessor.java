@@ -0,0 +1,336 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.lime_openfl;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import com.feathersui.maven.plugin.utils.AtlasPacker;
+import com.feathersui.maven.plugin.utils.HashUtils;
+import com.feathersui.maven.plugin.utils.LruCacheDirectory;
+import com.feathersui.maven.plugin.utils.PngEncoder;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Packs texture atlases and optimizes PNG files for an {@code <assets>}
+ * element before Lime processes it. Results are stored in a cache keyed by
+ * the hash of their inputs, so unchanged inputs are never processed again.
+ *
+ * @see Assets#atlas
+ * @see Assets#optimizePng
+ */
+public class AssetProcessor {
+	// change when the output format changes to invalidate cached results
+	private static final String CACHE_VERSION = "1";
+	private static final String PNG_EXTENSION = ".png";
+	// cached results that were used recently may still be copied by another
+	// build, so they are never evicted
+	private static final long CACHE_MIN_AGE = 5L * 60L * 1000L;
+
+	public AssetProcessor(File outputDirectory, File cacheDirectory, long cacheMaxBytes, int atlasMaxSize,
+			int atlasPadding, Log log) {
+		this.outputDirectory = outputDirectory;
+		this.cacheDirectory = cacheDirectory;
+		this.cacheMaxBytes = cacheMaxBytes;
+		this.atlasMaxSize = atlasMaxSize;
+		this.atlasPadding = atlasPadding;
+		this.log = log;
+	}
+
+	private File outputDirectory;
+	private File cacheDirectory;
+	private long cacheMaxBytes;
+	private int atlasMaxSize;
+	private int atlasPadding;
+	private Log log;
+
+	public static boolean needsProcessing(Assets assets) {
+		return assets.path != null && (assets.atlas != null || Boolean.TRUE.equals(assets.optimizePng));
+	}
+
+	/**
+	 * Returns the PNG files in an {@code <assets>} element's directory that
+	 * match its {@code include} and {@code exclude} filters.
+	 */
+	public static List<File> findPngFiles(Assets assets) throws IOException {
+		return findFiles(assets, PNG_EXTENSION);
+	}
+
+	/**
+	 * Returns a filter for Lime's {@code exclude} attribute that matches
+	 * every file returned by {@link #findPngFiles(Assets)}. Lime's filters
+	 * are case-sensitive, so each letter case of the extension that is used
+	 * is listed separately.
+	 */
+	public static String getPngExcludeFilter(Assets assets) throws IOException {
+		Set<String> filters = new TreeSet<>();
+		filters.add("*" + PNG_EXTENSION);
+		for (File pngFile : findPngFiles(assets)) {
+			String name = pngFile.getName();
+			filters.add("*" + name.substring(name.length() - PNG_EXTENSION.length()));
+		}
+		return String.join("|", filters);
+	}
+
+	/**
+	 * Returns the files in an {@code <assets>} element's directory that
+	 * match its {@code include} and {@code exclude} filters, and optionally,
+	 * an extension.
+	 */
+	public static List<File> findFiles(Assets assets, String extension) throws IOException {
+		if (!assets.path.isDirectory()) {
+			return new ArrayList<>();
+		}
+		Pattern include = assets.include != null ? toPattern(assets.include) : null;
+		Pattern exclude = assets.exclude != null ? toPattern(assets.exclude) : null;
+		try (Stream<Path> stream = Files.walk(assets.path.toPath())) {
+			return stream.filter(Files::isRegularFile).map(Path::toFile).filter(file -> {
+				String name = file.getName();
+				if (name.startsWith(".") || (extension != null && !name.toLowerCase().endsWith(extension))) {
+					return false;
+				}
+				if (include != null && !include.matcher(name).matches()) {
+					return false;
+				}
+				return exclude == null || !exclude.matcher(name).matches();
+			}).sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static Pattern toPattern(String filter) {
+		StringBuilder builder = new StringBuilder();
+		for (String part : filter.split("\\|")) {
+			if (builder.length() > 0) {
+				builder.append("|");
+			}
+			builder.append(Pattern.quote(part.trim()).replace("*", "\\E.*\\Q").replace("?", "\\E.\\Q"));
+		}
+		return Pattern.compile(builder.toString());
+	}
+
+	/**
+	 * Processes the PNG files of an {@code <assets>} element, and writes the
+	 * results to a new directory, which is returned.
+	 */
+	public File process(Assets assets, String id) throws IOException {
+		File processedDirectory = new File(outputDirectory, id);
+		FileUtils.deleteDirectory(processedDirectory);
+		FileUtils.forceMkdir(processedDirectory);
+		FileUtils.forceMkdir(cacheDirectory);
+
+		List<File> pngFiles = findPngFiles(assets);
+		Path assetsPath = assets.path.toPath();
+		if (assets.atlas != null) {
+			packAtlas(assets, pngFiles, processedDirectory);
+		} else {
+			List<Callable<Void>> tasks = new ArrayList<>();
+			for (File pngFile : pngFiles) {
+				File outputFile = processedDirectory.toPath().resolve(assetsPath.relativize(pngFile.toPath()))
+						.toFile();
+				tasks.add(() -> {
+					optimizePng(pngFile, outputFile);
+					return null;
+				});
+			}
+			runAll(tasks);
+		}
+		evictCache();
+		return processedDirectory;
+	}
+
+	private void optimizePng(File pngFile, File outputFile) throws IOException {
+		byte[] original = Files.readAllBytes(pngFile.toPath());
+		String key = HashUtils.sha256("png:" + CACHE_VERSION + ":" + HashUtils.sha256(original));
+		File cachedFile = new File(cacheDirectory, key + ".png");
+		if (cachedFile.isFile()) {
+			cachedFile.setLastModified(System.currentTimeMillis());
+		} else {
+			byte[] optimized = PngEncoder.optimize(original);
+			writeToCache(cachedFile, optimized);
+			if (optimized.length < original.length) {
+				log.debug("Optimized PNG " + pngFile.getName() + ": " + original.length + " -> " + optimized.length
+						+ " bytes");
+			}
+		}
+		FileUtils.forceMkdir(outputFile.getParentFile());
+		Files.copy(cachedFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private void packAtlas(Assets assets, List<File> pngFiles, File processedDirectory) throws IOException {
+		Path assetsPath = assets.path.toPath();
+		List<String> names = new ArrayList<>();
+		for (File pngFile : pngFiles) {
+			String name = assetsPath.relativize(pngFile.toPath()).toString().replace('\\', '/');
+			names.add(name.substring(0, name.length() - 4));
+		}
+
+		List<Callable<String>> hashTasks = new ArrayList<>();
+		for (File pngFile : pngFiles) {
+			hashTasks.add(() -> HashUtils.sha256(pngFile));
+		}
+		List<String> hashes = runAll(hashTasks);
+		MessageDigest digest = HashUtils.newDigest();
+		HashUtils.update(digest, "atlas:" + CACHE_VERSION);
+		HashUtils.update(digest, assets.atlas);
+		HashUtils.update(digest, Integer.toString(atlasMaxSize));
+		HashUtils.update(digest, Integer.toString(atlasPadding));
+		HashUtils.update(digest, Boolean.toString(Boolean.TRUE.equals(assets.optimizePng)));
+		for (int i = 0; i < names.size(); i++) {
+			HashUtils.update(digest, names.get(i));
+			HashUtils.update(digest, hashes.get(i));
+		}
+		String key = HashUtils.toHex(digest.digest());
+		File cachedDirectory = new File(cacheDirectory, key);
+		if (cachedDirectory.isDirectory()) {
+			cachedDirectory.setLastModified(System.currentTimeMillis());
+		} else {
+			log.info("Packing texture atlas: " + assets.atlas + " (" + pngFiles.size() + " images)");
+			File tempDirectory = new File(cacheDirectory, key + "-" + UUID.randomUUID() + ".tmp");
+			FileUtils.forceMkdir(tempDirectory);
+			try {
+				writeAtlas(assets, pngFiles, names, tempDirectory);
+				try {
+					Files.move(tempDirectory.toPath(), cachedDirectory.toPath());
+				} catch (IOException e) {
+					// another build may have cached the same atlas already
+					if (!cachedDirectory.isDirectory()) {
+						throw e;
+					}
+				}
+			} finally {
+				FileUtils.deleteDirectory(tempDirectory);
+			}
+		}
+		FileUtils.copyDirectory(cachedDirectory, processedDirectory);
+	}
+
+	private void writeAtlas(Assets assets, List<File> pngFiles, List<String> names, File directory)
+			throws IOException {
+		List<Callable<AtlasPacker.Sprite>> readTasks = new ArrayList<>();
+		for (int i = 0; i < pngFiles.size(); i++) {
+			File pngFile = pngFiles.get(i);
+			String name = names.get(i);
+			readTasks.add(() -> {
+				BufferedImage image = ImageIO.read(new ByteArrayInputStream(Files.readAllBytes(pngFile.toPath())));
+				if (image == null) {
+					throw new IOException("Failed to read image: " + pngFile.getAbsolutePath());
+				}
+				return new AtlasPacker.Sprite(name, image);
+			});
+		}
+		List<AtlasPacker.Sprite> sprites = runAll(readTasks);
+		List<AtlasPacker.Page> pages = new AtlasPacker(atlasMaxSize, atlasPadding).pack(sprites);
+
+		List<Callable<Void>> writeTasks = new ArrayList<>();
+		for (int i = 0; i < pages.size(); i++) {
+			AtlasPacker.Page page = pages.get(i);
+			String baseName = i == 0 ? assets.atlas : assets.atlas + "-" + i;
+			writeTasks.add(() -> {
+				String imageFileName = baseName + ".png";
+				byte[] png = PngEncoder.encode(page.image);
+				if (Boolean.TRUE.equals(assets.optimizePng)) {
+					png = PngEncoder.optimize(png);
+				}
+				Files.write(new File(directory, imageFileName).toPath(), png);
+				FileUtils.write(new File(directory, baseName + ".json"), AtlasPacker.toJson(page, imageFileName),
+						Charset.forName("utf-8"));
+				FileUtils.write(new File(directory, baseName + ".xml"), AtlasPacker.toXml(page, imageFileName),
+						Charset.forName("utf-8"));
+				return null;
+			});
+		}
+		runAll(writeTasks);
+	}
+
+	private void evictCache() throws IOException {
+		if (cacheMaxBytes <= 0) {
+			return;
+		}
+		LruCacheDirectory lruCacheDirectory = new LruCacheDirectory(cacheDirectory);
+		try (Closeable lock = lruCacheDirectory.tryLock()) {
+			if (lock == null) {
+				// another build is already cleaning up
+				return;
+			}
+			long deletedBytes = lruCacheDirectory.evict(lruCacheDirectory.listEntries(), cacheMaxBytes,
+					CACHE_MIN_AGE, 0);
+			if (deletedBytes > 0) {
+				log.debug("Removed " + (deletedBytes / 1024L) + " KB from asset cache");
+			}
+		}
+	}
+
+	private void writeToCache(File cachedFile, byte[] contents) throws IOException {
+		File tempFile = new File(cachedFile.getPath() + "-" + UUID.randomUUID() + ".tmp");
+		Files.write(tempFile.toPath(), contents);
+		Files.move(tempFile.toPath(), cachedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private <T> List<T> runAll(List<Callable<T>> tasks) throws IOException {
+		List<T> results = new ArrayList<>();
+		if (tasks.size() == 0) {
+			return results;
+		}
+		int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<T>> futures = new ArrayList<>();
+			for (Callable<T> task : tasks) {
+				futures.add(executor.submit(task));
+			}
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while processing assets", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.feathersui.maven.plugin.lime_openfl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import com.feathersui.maven.plugin.utils.Json;
+
+/**
+ * Partitions the files of an {@code <assets>} element that would be added to
+ * the default library, which is preloaded before the first frame, into files
+ * that stay preloaded and files that are moved to libraries that are loaded
+ * on demand. Files that were requested during a recorded run stay preloaded,
+ * and so do files that are too small to be worth a separate request.
+ * Everything else is grouped into a lazy library named after its top-level
+ * directory.
+ *
+ * @see GenerateProjectXmlMojo#splitAssets
+ */
+public class AssetSplitter {
+	// change when the format of the usage file changes
+	private static final String USAGE_VERSION = "1";
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+	private static final String ROOT_LIBRARY_NAME = "lazy";
+	private static final Pattern INVALID_LIBRARY_NAME_CHARACTERS = Pattern.compile("[^A-Za-z0-9_\\-]");
+
+	public static class Entry {
+		public Entry(File file, String targetPath) {
+			this.file = file;
+			this.targetPath = targetPath;
+		}
+
+		/**
+		 * The source file.
+		 */
+		public File file;
+
+		/**
+		 * The path of the asset in the output, which is also its ID.
+		 */
+		public String targetPath;
+	}
+
+	public static class Split {
+		public List<Entry> preloaded = new ArrayList<>();
+		public long preloadedBytes = 0L;
+
+		/**
+		 * The files of each lazy library, by library name.
+		 */
+		public Map<String, List<Entry>> lazyLibraries = new TreeMap<>();
+		public long lazyBytes = 0L;
+	}
+
+	public AssetSplitter(Collection<String> usedPaths, long lazyMinSize) {
+		this.lazyMinSize = lazyMinSize;
+		// any suffix of a requested URL may be the path of the file relative
+		// to its <assets> directory, whatever its target path is
+		for (String usedPath : usedPaths) {
+			String current = usedPath;
+			while (current.length() > 0) {
+				usedSuffixes.add(current);
+				int slashIndex = current.indexOf('/');
+				if (slashIndex == -1) {
+					break;
+				}
+				current = current.substring(slashIndex + 1);
+			}
+		}
+	}
+
+	private long lazyMinSize;
+	private Set<String> usedSuffixes = new HashSet<>();
+
+	/**
+	 * Returns {@code true} if an {@code <assets>} element adds a directory of
+	 * files to the default library, without embedding or processing them.
+	 */
+	public static boolean canSplit(Assets assets) {
+		return assets.path != null && assets.path.isDirectory() && assets.library == null
+				&& !Boolean.TRUE.equals(assets.embed) && !AssetProcessor.needsProcessing(assets);
+	}
+
+	public Split split(Assets assets) throws IOException {
+		Split result = new Split();
+		String targetRoot = assets.rename != null ? assets.rename : assets.path.getAbsolutePath();
+		Path root = assets.path.toPath();
+		for (File file : AssetProcessor.findFiles(assets, null)) {
+			String relativePath = root.relativize(file.toPath()).toString().replace('\\', '/');
+			Entry entry = new Entry(file, targetRoot + "/" + relativePath);
+			long size = file.length();
+			if (size < lazyMinSize || usedSuffixes.contains(relativePath)) {
+				result.preloaded.add(entry);
+				result.preloadedBytes += size;
+				continue;
+			}
+			result.lazyLibraries.computeIfAbsent(getLibraryName(relativePath), key -> new ArrayList<>()).add(entry);
+			result.lazyBytes += size;
+		}
+		return result;
+	}
+
+	private static String getLibraryName(String relativePath) {
+		int slashIndex = relativePath.indexOf('/');
+		if (slashIndex == -1) {
+			return ROOT_LIBRARY_NAME;
+		}
+		return INVALID_LIBRARY_NAME_CHARACTERS.matcher(relativePath.substring(0, slashIndex)).replaceAll("_");
+	}
+
+	/**
+	 * Reads the paths that were requested during a recorded run, or returns
+	 * an empty list if the file doesn't exist.
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<String> readUsage(File file) throws IOException {
+		List<String> result = new ArrayList<>();
+		if (file == null || !file.isFile()) {
+			return result;
+		}
+		Map<String, Object> json = null;
+		try {
+			json = (Map<String, Object>) Json.parse(new String(Files.readAllBytes(file.toPath()), UTF_8));
+		} catch (RuntimeException e) {
+			throw new IOException("Invalid asset usage file: " + file.getAbsolutePath(), e);
+		}
+		if (!USAGE_VERSION.equals(json.get("version"))) {
+			throw new IOException("Unsupported asset usage file version: " + json.get("version"));
+		}
+		Object paths = json.get("paths");
+		if (paths instanceof List) {
+			for (Object path : (List<Object>) paths) {
+				result.add((String) path);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the paths that were requested during a recorded run, relative
+	 * to the <em>bin</em> directory, in the order that they were first
+	 * requested.
+	 */
+	public static void writeUsage(File file, Collection<String> paths) throws IOException {
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("version", USAGE_VERSION);
+		json.put("paths", new ArrayList<>(paths));
+		Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+		Files.write(file.toPath(), Json.stringify(json).getBytes(UTF_8));
+	}
+}
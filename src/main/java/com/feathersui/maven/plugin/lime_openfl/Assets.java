@@ -35,6 +35,40 @@ public class Assets {
 	public String library = null;
 	public String glyphs = null;
 
+	/**
+	 * Optionally pack the PNG files in this directory into a texture atlas
+	 * with the specified name, instead of copying them individually. The
+	 * atlas image is described by both a JSON file (TexturePacker hash
+	 * format) and an XML file (Sparrow/Starling format), using the path of
+	 * each PNG file, without the extension, as its name.
+	 * 
+	 * <p>
+	 * The following example packs the images in a directory into an atlas
+	 * named <em>sprites</em>.
+	 * </p>
+	 * 
+	 * <pre>
+	 * {@code
+	 * <limeProject>
+	 *   <assets>
+	 *     <assets>
+	 *       <path>assets/sprites</path>
+	 *       <rename>sprites</rename>
+	 *       <atlas>sprites</atlas>
+	 *     </assets>
+	 *   </assets>
+	 * </limeProject>
+	 * }
+	 * </pre>
+	 */
+	public String atlas = null;
+
+	/**
+	 * Optionally recompress the PNG files in this directory, without
+	 * changing their pixels, to reduce their size.
+	 */
+	public Boolean optimizePng = null;
+
 	public void set(File path) {
 		this.path = path;
 	}
@@ -15,8 +15,47 @@ limitations under the License.
 */
 package com.feathersui.maven.plugin.lime_openfl;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 import javax.xml.parsers.DocumentBuilderFactory;
 
+import com.feathersui.maven.plugin.utils.BuildCache;
+import com.feathersui.maven.plugin.utils.CompileThreadPool;
+import com.feathersui.maven.plugin.utils.CompileTimesStreamConsumer;
+import com.feathersui.maven.plugin.utils.GzipPrecompressor;
+import com.feathersui.maven.plugin.utils.HashUtils;
+import com.feathersui.maven.plugin.utils.HaxelibLock;
+import com.feathersui.maven.plugin.utils.HaxelibStamps;
+import com.feathersui.maven.plugin.utils.HaxelibStore;
+import com.feathersui.maven.plugin.utils.Json;
+import com.feathersui.maven.plugin.utils.LruCacheDirectory;
+import com.feathersui.maven.plugin.utils.RemoteBuildCache;
+import com.feathersui.maven.plugin.utils.TraceRecorder;
+
+import org.apache.commons.io.FileUtils;
+
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Parameter;
@@ -31,6 +70,16 @@ import org.w3c.dom.NodeList;
  * The base class for Lime/OpenFL build goals.
  */
 public abstract class BaseBuildMojo extends BaseMojo {
+	// object files used in the last few minutes may belong to a build that
+	// is still running
+	private static final long COMPILE_CACHE_MIN_AGE = 5L * 60L * 1000L;
+	// change when the format of cached output changes
+	private static final String BUILD_CACHE_VERSION = "3";
+	// hxcpp intermediate files aren't needed to restore the output
+	private static final List<String> BUILD_CACHE_EXCLUDED_NAMES = Arrays.asList("obj");
+	private static final String[] DEFAULT_PRECOMPRESS_EXTENSIONS = { "js", "json", "html", "htm", "css", "svg",
+			"xml", "txt", "map", "wasm" };
+
 	/**
 	 * Specify if the build is debug instead of release using the {@code -debug}
 	 * command line option.
@@ -73,6 +122,199 @@ public abstract class BaseBuildMojo extends BaseMojo {
 	@Parameter
 	public String[] additionalDependencies;
 
+	/**
+	 * Specify if the Haxe compiler should measure how much time is spent in
+	 * each part of the compilation, using the {@code --times} compiler option
+	 * and the {@code macro-times} define. The timing table is not printed to
+	 * the log. Instead, a report sorted by time is written to the
+	 * <em>target/lime-reports</em> directory, in both text and JSON formats.
+	 */
+	@Parameter(defaultValue = "false", property = "lime.profileCompile")
+	public boolean profileCompile;
+
+	/**
+	 * Specify if native builds should share a hxcpp compile cache, using the
+	 * {@code HXCPP_COMPILE_CACHE} environment variable. The cache is stored
+	 * outside of the <em>target</em> directory, so compiled object files are
+	 * reused after {@code mvn clean}.
+	 */
+	@Parameter(defaultValue = "false", property = "lime.compileCache")
+	public boolean compileCache;
+
+	/**
+	 * Optionally specify a custom location for the hxcpp compile cache, if
+	 * {@link #compileCache} is enabled. The same directory may be shared by
+	 * multiple projects and multiple builds running at the same time.
+	 */
+	@Parameter(defaultValue = "${user.home}/.lime-openfl-maven-plugin/hxcpp-cache", property = "lime.compileCacheDirectory")
+	public File compileCacheDirectory;
+
+	/**
+	 * The maximum size of the hxcpp compile cache, in megabytes. When a build
+	 * completes, the least recently used object files are removed until the
+	 * cache is smaller than this size.
+	 */
+	@Parameter(defaultValue = "4096", property = "lime.compileCacheMaxSize")
+	public long compileCacheMaxSize;
+
+	/**
+	 * Specify if native builds should share a pool of compile threads with
+	 * other modules in the same Maven session. When building modules in
+	 * parallel with {@code mvn -T}, the idle threads are divided between the
+	 * native builds that are starting, using the
+	 * {@code HXCPP_COMPILE_THREADS} environment variable, so that the
+	 * machine's cores and memory aren't oversubscribed. A native build that
+	 * runs alone uses every thread.
+	 */
+	@Parameter(defaultValue = "true", property = "lime.compileThreadPool")
+	public boolean compileThreadPool;
+
+	/**
+	 * Optionally specify a fixed number of compile threads for native builds,
+	 * using the {@code HXCPP_COMPILE_THREADS} environment variable. If set,
+	 * the shared {@link #compileThreadPool} is not used.
+	 */
+	@Parameter(property = "lime.compileThreads")
+	public Integer compileThreads;
+
+	/**
+	 * The estimated amount of memory used by each native compile thread, in
+	 * megabytes. Used to limit the size of the shared
+	 * {@link #compileThreadPool} on machines with more cores than memory.
+	 */
+	@Parameter(defaultValue = "1024", property = "lime.compileThreadMemory")
+	public long compileThreadMemory;
+
+	/**
+	 * Specify if the html5 output should be precompressed after the build.
+	 * A <em>.gz</em> sidecar file is written next to each compressible file
+	 * that is at least {@link #precompressMinSize} bytes, which a web server
+	 * may serve to browsers that accept gzip encoding. Files that haven't
+	 * changed since the previous build are not compressed again.
+	 */
+	@Parameter(defaultValue = "false", property = "lime.precompress")
+	public boolean precompress;
+
+	/**
+	 * The minimum size of a file, in bytes, to precompress, if
+	 * {@link #precompress} is enabled.
+	 */
+	@Parameter(defaultValue = "1024", property = "lime.precompressMinSize")
+	public long precompressMinSize;
+
+	/**
+	 * Optionally specify the file extensions to precompress, if
+	 * {@link #precompress} is enabled. Defaults to common text-based formats,
+	 * such as <em>js</em>, <em>json</em>, <em>html</em>, and <em>css</em>.
+	 */
+	@Parameter
+	public String[] precompressExtensions;
+
+	/**
+	 * Specify if build output should be stored in a local build cache, keyed
+	 * by a hash of every input of the build, including the Lime
+	 * <em>project.xml</em> file, the contents of source and asset
+	 * directories, the resolved Haxelib versions, the Haxe version, and the
+	 * build parameters. If the same inputs are built again, such as after
+	 * {@code mvn clean} or switching branches, the output is restored from
+	 * the cache instead of running Lime.
+	 */
+	@Parameter(defaultValue = "false", property = "lime.buildCache")
+	public boolean buildCache;
+
+	/**
+	 * Optionally specify a custom location for the local build cache, if
+	 * {@link #buildCache} is enabled.
+	 */
+	@Parameter(defaultValue = "${user.home}/.lime-openfl-maven-plugin/build-cache", property = "lime.buildCacheDirectory")
+	public File buildCacheDirectory;
+
+	/**
+	 * The maximum size of the local build cache, in megabytes. The least
+	 * recently used entries are removed when the cache is larger.
+	 */
+	@Parameter(defaultValue = "4096", property = "lime.buildCacheMaxSize")
+	public long buildCacheMaxSize;
+
+	/**
+	 * The maximum number of days since an entry in the local build cache was
+	 * last used before it is removed.
+	 */
+	@Parameter(defaultValue = "30", property = "lime.buildCacheMaxAge")
+	public int buildCacheMaxAge;
+
+	/**
+	 * Optionally specify the URL of a shared build cache, such as one started
+	 * with the <em>cache-server</em> goal. Before running Lime, the build
+	 * output is downloaded with {@code GET <url>/<key>.zip}, where the key is
+	 * a hash of every input of the build. After a successful build, the
+	 * output is uploaded with {@code PUT <url>/<key>.zip}. Works with or
+	 * without the local {@link #buildCache}.
+	 */
+	@Parameter(property = "lime.remoteBuildCacheUrl")
+	public String remoteBuildCacheUrl;
+
+	/**
+	 * Specify if output should be uploaded to the shared build cache, if
+	 * {@link #remoteBuildCacheUrl} is set. Set to {@code false} to only
+	 * download, such as for pull request builds.
+	 */
+	@Parameter(defaultValue = "true", property = "lime.remoteBuildCachePush")
+	public boolean remoteBuildCachePush;
+
+	/**
+	 * Optionally specify a token that is sent with every request to the
+	 * shared build cache, using the {@code Authorization: Bearer} header. A
+	 * <em>cache-server</em> started with a {@code cacheServerToken} rejects
+	 * uploads without it.
+	 */
+	@Parameter(property = "lime.remoteBuildCacheToken")
+	public String remoteBuildCacheToken;
+
+	/**
+	 * Specify if the Haxelib libraries should be verified against the
+	 * lockfile written by the <em>lock</em> goal, instead of asking Haxelib
+	 * which versions are installed. The locked versions are checked in the
+	 * Haxelib repository without running Haxelib, and any that are missing
+	 * are installed in parallel.
+	 */
+	@Parameter(defaultValue = "false", property = "lime.haxelibLocked")
+	public boolean haxelibLocked;
+
+	/**
+	 * The lockfile that stores the exact versions of the Haxelib libraries,
+	 * including dependencies. Created by the <em>lock</em> goal, and read when
+	 * {@link #haxelibLocked} is {@code true}.
+	 */
+	@Parameter(defaultValue = "${basedir}/haxelib-lock.json", property = "lime.haxelibLockFile")
+	public File haxelibLockFile;
+
+	@Parameter(defaultValue = "${project.build.directory}/lime-reports", required = true, readonly = true)
+	protected File reportsDirectory;
+
+	@Parameter(defaultValue = "${project.build.directory}/haxelib-stamps.json", required = true, readonly = true)
+	private File haxelibStampsFile;
+
+	/**
+	 * The versions of the libraries reported by {@code haxelib path}, including
+	 * dependencies, populated by {@link #checkHaxelibs()}.
+	 */
+	protected Map<String, String> resolvedHaxelibs = new TreeMap<>();
+
+	/**
+	 * The class paths reported by {@code haxelib path}, and the names of the
+	 * libraries that they belong to, populated by {@link #checkHaxelibs()}.
+	 */
+	protected Map<String, String> haxelibClassPaths = new LinkedHashMap<>();
+
+	/**
+	 * The libraries in the lockfile, if {@link #haxelibLocked} is
+	 * {@code true}, populated by {@link #checkHaxelibs()}.
+	 */
+	private Map<String, HaxelibLock.Library> lockedHaxelibs = new TreeMap<>();
+
+	private CompileThreadPool.Registration compileThreadsRegistration;
+
 	/**
 	 * Builds the Lime project.
 	 */
@@ -80,19 +322,485 @@ public abstract class BaseBuildMojo extends BaseMojo {
 		if (isDebug && isFinal) {
 			throw new MojoFailureException("Cannot set both isDebug and isFinal parameters for Lime project");
 		}
-		try {
+		try (TraceRecorder.Span goalSpan = traceGoal()) {
+			if (!hasIncrementalChanges(getIncrementalInputs())) {
+				getLog().debug("Skipping build because no inputs have changed: " + basedir.getName());
+				return;
+			}
+			// register before checking libraries, so that builds that start
+			// compiling first leave a share of the compile threads
+			compileThreadsRegistration = registerCompileThreads();
 			checkHaxelibs();
 			build();
 		} catch (Exception e) {
 			throw new MojoExecutionException("Fatal error building Lime project", e);
+		} finally {
+			if (compileThreadsRegistration != null) {
+				compileThreadsRegistration.close();
+				compileThreadsRegistration = null;
+			}
+			writeTrace();
 		}
 	}
 
 	protected abstract void build() throws CommandLineException, MojoExecutionException, MojoFailureException;
 
+	/**
+	 * Returns the inputs that are checked for changes during an incremental
+	 * build in an IDE. Subclasses may add inputs that aren't referenced by
+	 * the <em>project.xml</em> file.
+	 */
+	protected List<File> getIncrementalInputs() throws Exception {
+		List<File> result = new ArrayList<>(getProjectInputPaths());
+		if (additionalSources != null) {
+			for (String current : additionalSources) {
+				File file = new File(current);
+				result.add(file.isAbsolute() ? file : new File(basedir, current));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the key of the build in the local and remote build caches, or
+	 * {@code null} if both are disabled. Subclasses may add inputs that
+	 * aren't referenced by the <em>project.xml</em> file.
+	 *
+	 * <p>Paths are made relative to the project's base directory, so that
+	 * the same inputs have the same key in different checkouts.</p>
+	 */
+	protected String getBuildCacheKey(List<File> extraInputs, List<String> extraValues)
+			throws MojoExecutionException {
+		if (!buildCache && remoteBuildCacheUrl == null) {
+			return null;
+		}
+		try {
+			MessageDigest digest = HashUtils.newDigest();
+			HashUtils.update(digest, "lime-build:" + BUILD_CACHE_VERSION);
+			updateBuildConfigDigest(digest, extraValues);
+
+			List<File> inputs = new ArrayList<>(getProjectInputPaths());
+			if (additionalSources != null) {
+				for (String current : additionalSources) {
+					File file = new File(current);
+					inputs.add(file.isAbsolute() ? file : new File(basedir, current));
+				}
+			}
+			inputs.addAll(extraInputs);
+			for (File input : inputs) {
+				updateInputDigest(digest, input);
+			}
+			updateHaxelibDigest(digest);
+			return HashUtils.toHex(digest.digest());
+		} catch (Exception e) {
+			throw new MojoExecutionException("Fatal error calculating build cache key", e);
+		}
+	}
+
+	private void updateInputDigest(MessageDigest digest, File input) throws IOException {
+		if (!input.exists()) {
+			return;
+		}
+		HashUtils.update(digest, toCacheKeyPath(input));
+		List<Path> files = null;
+		try (Stream<Path> stream = Files.walk(input.toPath())) {
+			files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+		List<String> hashes = files.parallelStream().map(file -> {
+			try {
+				return HashUtils.sha256(file.toFile());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}).collect(Collectors.toList());
+		for (int i = 0; i < files.size(); i++) {
+			HashUtils.update(digest, input.toPath().relativize(files.get(i)).toString().replace('\\', '/'));
+			HashUtils.update(digest, hashes.get(i));
+		}
+	}
+
+	/**
+	 * Adds the contents of the resolved libraries to the build cache key.
+	 * A release is identified by its version, and a locked library by its
+	 * checksum, which is verified before the build. Libraries from git, or a
+	 * development directory, may change without changing their versions, so
+	 * the contents of their class paths are hashed.
+	 */
+	private void updateHaxelibDigest(MessageDigest digest) throws IOException {
+		for (Map.Entry<String, String> entry : resolvedHaxelibs.entrySet()) {
+			String name = entry.getKey();
+			HaxelibLock.Library library = lockedHaxelibs.get(name);
+			if (library != null && !new File(library.path).isAbsolute()) {
+				HashUtils.update(digest, name + ":" + library.checksum);
+				continue;
+			}
+			for (Map.Entry<String, String> classPathEntry : haxelibClassPaths.entrySet()) {
+				if (!name.equals(classPathEntry.getValue())) {
+					continue;
+				}
+				File classPath = new File(classPathEntry.getKey());
+				if (library == null && HaxelibLock.isReleaseDirectory(name, entry.getValue(),
+						HaxelibLock.findLibraryDirectory(classPath))) {
+					continue;
+				}
+				updateInputDigest(digest, classPath);
+			}
+		}
+	}
+
+	/**
+	 * Returns a hash of the build's configuration, including the Lime
+	 * <em>project.xml</em> file, the build parameters, the Haxe version, and
+	 * the resolved Haxelib versions, but not the contents of the inputs.
+	 */
+	protected String getBuildConfigHash(List<String> extraValues) throws MojoExecutionException {
+		try {
+			MessageDigest digest = HashUtils.newDigest();
+			updateBuildConfigDigest(digest, extraValues);
+			return HashUtils.toHex(digest.digest());
+		} catch (Exception e) {
+			throw new MojoExecutionException("Fatal error calculating build configuration hash", e);
+		}
+	}
+
+	private void updateBuildConfigDigest(MessageDigest digest, List<String> extraValues) throws Exception {
+		String projectXml = FileUtils.readFileToString(projectFile, Charset.forName("utf-8"));
+		HashUtils.update(digest, projectXml.replace(basedir.getAbsolutePath(), "${basedir}"));
+		HashUtils.update(digest, target);
+		HashUtils.update(digest, Boolean.toString(isDebug));
+		HashUtils.update(digest, Boolean.toString(isFinal));
+		for (String[] values : Arrays.asList(additionalHaxedefs, additionalHaxelibs, additionalSources,
+				additionalDependencies, precompressExtensions)) {
+			HashUtils.update(digest, values != null ? String.join("\n", values) : "");
+		}
+		HashUtils.update(digest, precompress ? "precompress:" + precompressMinSize : "");
+		HashUtils.update(digest, getHaxeVersion());
+		for (Map.Entry<String, String> entry : resolvedHaxelibs.entrySet()) {
+			HashUtils.update(digest, entry.getKey() + "=" + entry.getValue());
+		}
+		for (String value : extraValues) {
+			HashUtils.update(digest, value);
+		}
+	}
+
+	/**
+	 * Returns a path that doesn't depend on the location of the project, if
+	 * the file is inside the project's base directory.
+	 */
+	protected String toCacheKeyPath(File file) {
+		Path basePath = basedir.toPath().toAbsolutePath().normalize();
+		Path path = file.toPath().toAbsolutePath().normalize();
+		if (!path.startsWith(basePath)) {
+			return path.toString();
+		}
+		return "${basedir}/" + basePath.relativize(path).toString().replace('\\', '/');
+	}
+
+	/**
+	 * Restores the output directory from the local build cache, or from the
+	 * remote build cache, if either contains an entry with the specified key.
+	 * Entries found in the remote build cache are also stored in the local
+	 * build cache.
+	 */
+	protected boolean restoreFromBuildCache(String cacheKey, File outputDirectory) throws MojoExecutionException {
+		try (TraceRecorder.Span span = traceSpan("cache", "restore from build cache")) {
+			if (cacheKey == null) {
+				return false;
+			}
+			if (buildCache) {
+				try {
+					if (getBuildCache().restore(cacheKey, outputDirectory)) {
+						getLog().info("Restored output from build cache: " + outputDirectory.getAbsolutePath());
+						return true;
+					}
+				} catch (IOException e) {
+					throw new MojoExecutionException("Fatal error restoring output from build cache", e);
+				}
+			}
+			if (remoteBuildCacheUrl != null) {
+				try {
+					if (new RemoteBuildCache(remoteBuildCacheUrl, remoteBuildCacheToken).pull(cacheKey, outputDirectory)) {
+						getLog().info("Restored output from remote build cache: " + outputDirectory.getAbsolutePath());
+						storeInLocalBuildCache(cacheKey, outputDirectory);
+						return true;
+					}
+				} catch (IOException e) {
+					// the build can still succeed without the remote cache
+					getLog().warn("Failed to restore output from remote build cache: " + e.getMessage());
+				}
+			}
+			getLog().debug("Build cache miss: " + cacheKey);
+			return false;
+		}
+	}
+
+	protected void storeInBuildCache(String cacheKey, File outputDirectory) {
+		try (TraceRecorder.Span span = traceSpan("cache", "store in build cache")) {
+			if (cacheKey == null) {
+				return;
+			}
+			storeInLocalBuildCache(cacheKey, outputDirectory);
+			if (remoteBuildCacheUrl != null && remoteBuildCachePush) {
+				try {
+					new RemoteBuildCache(remoteBuildCacheUrl, remoteBuildCacheToken).push(cacheKey, outputDirectory, BUILD_CACHE_EXCLUDED_NAMES);
+				} catch (IOException e) {
+					getLog().warn("Failed to store output in remote build cache: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	private void storeInLocalBuildCache(String cacheKey, File outputDirectory) {
+		if (!buildCache) {
+			return;
+		}
+		BuildCache cache = getBuildCache();
+		try {
+			cache.store(cacheKey, outputDirectory, BUILD_CACHE_EXCLUDED_NAMES);
+			long deletedBytes = cache.evict();
+			if (deletedBytes > 0) {
+				getLog().debug("Removed " + (deletedBytes / 1024L) + " KB from build cache");
+			}
+		} catch (IOException e) {
+			getLog().warn("Failed to store output in build cache: " + e.getMessage());
+		}
+	}
+
+	private BuildCache getBuildCache() {
+		return new BuildCache(buildCacheDirectory, buildCacheMaxSize * 1024L * 1024L,
+				buildCacheMaxAge * 24L * 60L * 60L * 1000L);
+	}
+
+	/**
+	 * Adds the build type and the additional sources, dependencies, defines,
+	 * and libraries to a {@code lime build} command line.
+	 */
+	protected void addBuildArgs(Commandline commandLine) {
+		if (isDebug) {
+			commandLine.createArg().setValue("-debug");
+		}
+		if (isFinal) {
+			commandLine.createArg().setValue("-final");
+		}
+		if (additionalSources != null) {
+			for (String current : additionalSources) {
+				commandLine.createArg().setValue("--source=" + current);
+			}
+		}
+		if (additionalDependencies != null) {
+			for (String current : additionalDependencies) {
+				commandLine.createArg().setValue("--dependency=" + current);
+			}
+		}
+		if (additionalHaxedefs != null) {
+			for (String current : additionalHaxedefs) {
+				commandLine.createArg().setValue("--haxedef=" + current);
+			}
+		}
+		if (additionalHaxelibs != null) {
+			for (String current : additionalHaxelibs) {
+				commandLine.createArg().setValue("--haxelib=" + current);
+			}
+		}
+	}
+
+	protected void addProfileCompileArgs(Commandline commandLine) {
+		if (!profileCompile) {
+			return;
+		}
+		commandLine.createArg().setValue("--haxeflag=--times");
+		commandLine.createArg().setValue("--haxedef=macro-times");
+	}
+
+	protected void configureCompileCache(Commandline commandLine) throws MojoExecutionException {
+		if (!compileCache || !isNativeTarget()) {
+			return;
+		}
+		try {
+			FileUtils.forceMkdir(compileCacheDirectory);
+		} catch (IOException e) {
+			throw new MojoExecutionException(
+					"Failed to create compile cache directory: " + compileCacheDirectory.getAbsolutePath(), e);
+		}
+		getLog().debug("Using compile cache: " + compileCacheDirectory.getAbsolutePath());
+		commandLine.addEnvironment("HXCPP_COMPILE_CACHE", compileCacheDirectory.getAbsolutePath());
+		// keep hxcpp's own cleanup consistent with ours
+		commandLine.addEnvironment("HXCPP_CACHE_MB", Long.toString(compileCacheMaxSize));
+	}
+
+	private boolean isCompileThreadPoolEnabled() {
+		return isNativeTarget() && compileThreads == null && compileThreadPool
+				&& System.getenv("HXCPP_COMPILE_THREADS") == null;
+	}
+
+	/**
+	 * Registers the build with the shared pool of compile threads, if it's
+	 * used. Otherwise, returns {@code null}.
+	 */
+	private CompileThreadPool.Registration registerCompileThreads() {
+		if (!isCompileThreadPoolEnabled()) {
+			return null;
+		}
+		return CompileThreadPool.getInstance(compileThreadMemory).register();
+	}
+
+	/**
+	 * Sets the number of compile threads for a native build. If the shared
+	 * pool is used, returns a lease that must be closed when the build
+	 * completes. Otherwise, returns {@code null}.
+	 */
+	protected CompileThreadPool.Lease acquireCompileThreads(Commandline commandLine)
+			throws MojoExecutionException {
+		try (TraceRecorder.Span span = traceSpan("compile", "acquire compile threads")) {
+			if (!isNativeTarget()) {
+				return null;
+			}
+			if (compileThreads != null) {
+				commandLine.addEnvironment("HXCPP_COMPILE_THREADS", compileThreads.toString());
+				return null;
+			}
+			if (!isCompileThreadPoolEnabled()) {
+				return null;
+			}
+			CompileThreadPool pool = CompileThreadPool.getInstance(compileThreadMemory);
+			if (compileThreadsRegistration == null) {
+				compileThreadsRegistration = pool.register();
+			}
+			getLog().debug("Waiting for compile threads...");
+			CompileThreadPool.Lease lease = null;
+			try {
+				lease = compileThreadsRegistration.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MojoExecutionException("Interrupted while waiting for compile threads", e);
+			}
+			span.arg("threads", lease.getTokens());
+			getLog().debug("Using " + lease.getTokens() + " of " + pool.getTotalTokens() + " compile threads");
+			commandLine.addEnvironment("HXCPP_COMPILE_THREADS", Integer.toString(lease.getTokens()));
+			return lease;
+		}
+	}
+
+	protected void cleanCompileCache() {
+		if (!compileCache || !isNativeTarget()) {
+			return;
+		}
+		LruCacheDirectory cacheDirectory = new LruCacheDirectory(compileCacheDirectory);
+		try (Closeable lock = cacheDirectory.tryLock()) {
+			if (lock == null) {
+				getLog().debug("Compile cache cleanup skipped. Another build is already cleaning up.");
+				return;
+			}
+			long deletedBytes = cacheDirectory.evict(cacheDirectory.listFiles(), compileCacheMaxSize * 1024L * 1024L,
+					COMPILE_CACHE_MIN_AGE, 0);
+			if (deletedBytes > 0) {
+				getLog().debug("Removed " + (deletedBytes / 1024L) + " KB from compile cache");
+			}
+		} catch (IOException e) {
+			getLog().warn("Failed to clean compile cache: " + e.getMessage());
+		}
+	}
+
+	protected void precompressOutput(File outputDirectory) throws MojoExecutionException {
+		try (TraceRecorder.Span span = traceSpan("output", "precompress")) {
+			if (!precompress || !"html5".equals(target)) {
+				return;
+			}
+			Set<String> extensions = new HashSet<>(Arrays.asList(DEFAULT_PRECOMPRESS_EXTENSIONS));
+			if (precompressExtensions != null) {
+				extensions.clear();
+				for (String extension : precompressExtensions) {
+					extensions.add(extension.toLowerCase().replaceFirst("^\\.", ""));
+				}
+			}
+			GzipPrecompressor precompressor = new GzipPrecompressor(extensions, precompressMinSize);
+			try {
+				int count = precompressor.precompress(outputDirectory);
+				getLog().debug("Precompressed " + count + " files in " + outputDirectory.getAbsolutePath());
+			} catch (IOException e) {
+				throw new MojoExecutionException("Fatal error precompressing Lime output", e);
+			}
+		}
+	}
+
+	protected void writeCompileTimesReport(String reportName, long elapsedMillis,
+			CompileTimesStreamConsumer... consumers) throws MojoExecutionException {
+		List<CompileTimesStreamConsumer.Entry> entries = new ArrayList<>();
+		CompileTimesStreamConsumer.Entry total = null;
+		for (CompileTimesStreamConsumer consumer : consumers) {
+			entries.addAll(consumer.getEntries());
+			if (total == null) {
+				total = consumer.getTotal();
+			}
+		}
+		if (entries.size() == 0) {
+			getLog().warn("Haxe compiler did not report any compile times");
+			return;
+		}
+		entries.sort(Comparator.comparingDouble((CompileTimesStreamConsumer.Entry entry) -> entry.time).reversed());
+
+		double elapsedSeconds = elapsedMillis / 1000.0;
+		double haxeSeconds = total != null ? total.time : 0.0;
+
+		StringBuilder textBuilder = new StringBuilder();
+		textBuilder.append(String.format("Total process time: %.3fs\n", elapsedSeconds));
+		textBuilder.append(String.format("Haxe compiler time: %.3fs\n", haxeSeconds));
+		textBuilder.append(String.format("Other (Lime tools, native compiler): %.3fs\n",
+				Math.max(0.0, elapsedSeconds - haxeSeconds)));
+		textBuilder.append("\n");
+		textBuilder.append(String.format("%10s %6s %10s  %s\n", "time(s)", "%", "count", "name"));
+		List<Map<String, Object>> jsonEntries = new ArrayList<>();
+		for (CompileTimesStreamConsumer.Entry entry : entries) {
+			double percent = haxeSeconds > 0.0 ? (entry.time / haxeSeconds) * 100.0 : 0.0;
+			textBuilder.append(String.format("%10.3f %6.1f %10d  %s\n", entry.time, percent, entry.count, entry.path));
+
+			Map<String, Object> jsonEntry = new LinkedHashMap<>();
+			jsonEntry.put("name", entry.name);
+			jsonEntry.put("path", entry.path);
+			jsonEntry.put("info", entry.info);
+			jsonEntry.put("depth", entry.depth);
+			jsonEntry.put("time", entry.time);
+			jsonEntry.put("percent", percent);
+			jsonEntry.put("count", entry.count);
+			jsonEntries.add(jsonEntry);
+		}
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("processTime", elapsedSeconds);
+		json.put("haxeTime", haxeSeconds);
+		json.put("entries", jsonEntries);
+
+		File textFile = new File(reportsDirectory, reportName + ".txt");
+		File jsonFile = new File(reportsDirectory, reportName + ".json");
+		try {
+			FileUtils.write(textFile, textBuilder.toString(), Charset.forName("utf-8"));
+			FileUtils.write(jsonFile, Json.stringify(json), Charset.forName("utf-8"));
+		} catch (Exception e) {
+			throw new MojoExecutionException("Fatal error writing compile times report", e);
+		}
+		getLog().info("Compile times report: " + textFile.getAbsolutePath());
+	}
+
 	protected void checkHaxelibs() throws Exception {
-		getLog().debug("Checking libraries...");
-		boolean foundLime = false;
+		try (TraceRecorder.Span span = traceSpan("haxelib", "check libraries")) {
+			getLog().debug("Checking libraries...");
+			Map<String, String> requiredHaxelibs = getRequiredHaxelibs();
+			if (haxelibLocked || haxelibStore) {
+				checkLockedHaxelibs(requiredHaxelibs);
+				return;
+			}
+			for (Map.Entry<String, String> entry : requiredHaxelibs.entrySet()) {
+				checkHaxelib(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Returns the names of the libraries required by the <em>project.xml</em>
+	 * file and {@link #additionalHaxelibs}, including Lime, and their
+	 * required versions, or {@code null} if any version is fine.
+	 */
+	protected Map<String, String> getRequiredHaxelibs() throws Exception {
+		Map<String, String> result = new LinkedHashMap<>();
 		Document projectDocument = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(projectFile);
 		NodeList haxelibElements = projectDocument.getDocumentElement().getElementsByTagName("haxelib");
 		for (int i = 0; i < haxelibElements.getLength(); i++) {
@@ -104,26 +812,258 @@ public abstract class BaseBuildMojo extends BaseMojo {
 			if (name.length() == 0) {
 				continue;
 			}
-			if (!foundLime && name.equals("lime")) {
-				foundLime = true;
-			}
 			String version = null;
 			if (haxelibElement.hasAttribute("version")) {
 				version = haxelibElement.getAttribute("version");
 			}
-			checkHaxelib(name, version);
+			if (version != null || !result.containsKey(name)) {
+				result.put(name, version);
+			}
 		}
 		if (additionalHaxelibs != null) {
 			for (String haxelib : additionalHaxelibs) {
-				if (!foundLime && haxelib.equals("lime")) {
-					foundLime = true;
+				if (!result.containsKey(haxelib)) {
+					result.put(haxelib, null);
 				}
-				checkHaxelib(haxelib, null);
 			}
 		}
-		if (!foundLime) {
-			checkHaxelib("lime", null);
+		if (!result.containsKey("lime")) {
+			result.put("lime", null);
 		}
+		return result;
+	}
+
+	/**
+	 * Verifies the libraries against the lockfile with file system checks
+	 * only, and installs the locked versions that are missing.
+	 */
+	private void checkLockedHaxelibs(Map<String, String> requiredHaxelibs) throws Exception {
+		HaxelibLock lock = HaxelibLock.read(haxelibLockFile);
+		if (lock == null) {
+			throw new MojoFailureException("Lime build failure. Haxelib lockfile not found: "
+					+ haxelibLockFile.getAbsolutePath() + ". Run the lock goal to create it.");
+		}
+		Map<String, HaxelibLock.Library> libraries = lock.getLibraries();
+		for (Map.Entry<String, String> entry : requiredHaxelibs.entrySet()) {
+			String name = entry.getKey();
+			String requiredVersion = entry.getValue();
+			HaxelibLock.Library library = libraries.get(name);
+			if (library == null) {
+				throw new MojoFailureException("Lime build failure. Haxelib not found in lockfile: " + name
+						+ ". Run the lock goal to update it.");
+			}
+			if (requiredVersion != null && !requiredVersion.equals(library.version)) {
+				throw new MojoFailureException("Lime build failure. Haxelib lockfile contains " + name + " "
+						+ library.version + ", but " + requiredVersion + " is required. Run the lock goal to update it.");
+			}
+		}
+		File repository = null;
+		if (haxelibStore) {
+			repository = createHaxelibView(lock);
+		} else {
+			File globalRepository = getHaxelibRepository();
+			HaxelibStamps stamps = HaxelibStamps.read(haxelibStampsFile);
+			List<String> missing = new ArrayList<>();
+			for (Map.Entry<String, HaxelibLock.Library> entry : libraries.entrySet()) {
+				if (HaxelibLock.hasDevDirectory(entry.getValue(), globalRepository)) {
+					throw new MojoFailureException("Lime build failure. Haxelib " + entry.getKey()
+							+ " uses a development directory instead of the locked version. Run haxelib dev "
+							+ entry.getKey() + " to remove it, or run the lock goal to lock the development directory.");
+				}
+				if (!stamps.hasChecksum(entry.getValue(), globalRepository)
+						|| !HaxelibLock.isCurrent(entry.getValue(), globalRepository)) {
+					missing.add(entry.getKey());
+				}
+			}
+			try {
+				if (missing.size() > 0) {
+					runInParallel(lock, missing,
+							(name, library) -> installLockedHaxelib(name, library, globalRepository, stamps));
+				}
+			} finally {
+				stamps.write();
+			}
+			repository = globalRepository;
+		}
+		for (Map.Entry<String, HaxelibLock.Library> entry : libraries.entrySet()) {
+			String name = entry.getKey();
+			HaxelibLock.Library library = entry.getValue();
+			lockedHaxelibs.put(name, library);
+			resolvedHaxelibs.put(name, library.version);
+			File libraryDirectory = HaxelibLock.getLibraryDirectory(library, repository);
+			for (String classPath : library.classPaths) {
+				File classPathFile = classPath.length() > 0 ? new File(libraryDirectory, classPath) : libraryDirectory;
+				haxelibClassPaths.put(classPathFile.getAbsolutePath() + File.separator, name);
+			}
+		}
+		getLog().debug("Libraries match lockfile: " + haxelibLockFile.getAbsolutePath());
+	}
+
+	/**
+	 * Adds the locked libraries that are missing from the Haxelib store, and
+	 * replaces the project's view of the store.
+	 */
+	private File createHaxelibView(HaxelibLock lock) throws Exception {
+		HaxelibStore store = new HaxelibStore(haxelibStoreDirectory);
+		// the libraries may already be installed in the usual repository
+		File globalRepository = HaxelibLock.findRepository(basedir);
+		List<String> missing = new ArrayList<>();
+		for (Map.Entry<String, HaxelibLock.Library> entry : lock.getLibraries().entrySet()) {
+			if (!store.contains(entry.getValue())) {
+				missing.add(entry.getKey());
+			}
+		}
+		if (missing.size() > 0) {
+			runInParallel(lock, missing, (name, library) -> addToHaxelibStore(store, name, library, globalRepository));
+		}
+		store.createView(lock, haxelibViewDirectory);
+		getLog().debug("Haxelib view: " + haxelibViewDirectory.getAbsolutePath());
+		return haxelibViewDirectory;
+	}
+
+	private void addToHaxelibStore(HaxelibStore store, String name, HaxelibLock.Library library,
+			File globalRepository) throws CommandLineException, IOException, MojoFailureException {
+		try (TraceRecorder.Span span = traceSpan("haxelib", "add to store: " + name)) {
+			if (globalRepository != null && HaxelibLock.hasChecksum(library, globalRepository)) {
+				getLog().info("Adding Haxelib to store: " + name + " " + library.version);
+				store.add(library, HaxelibLock.getLibraryDirectory(library, globalRepository));
+				return;
+			}
+			if (!HaxelibLock.isReleaseVersion(library)) {
+				throw new MojoFailureException("Lime build failure. Locked Haxelib must be installed manually: " + name
+						+ " " + library.version + " (" + library.path + ")");
+			}
+			getLog().info("Installing Haxelib into store: " + name + " " + library.version);
+			// install into an empty repository, so that parallel installs of
+			// different versions can't conflict
+			File tempRepository = store.createTempDirectory();
+			try {
+				Commandline commandLine = new Commandline();
+				commandLine.setWorkingDirectory(tempRepository);
+				commandLine.setExecutable(getHaxelibPath());
+				commandLine.addEnvironment("HAXELIB_PATH", tempRepository.getAbsolutePath());
+				commandLine.createArg().setValue("install");
+				commandLine.createArg().setValue(name);
+				commandLine.createArg().setValue(HaxelibLock.getInstalledVersion(library));
+				commandLine.createArg().setValue("--always");
+				commandLine.createArg().setValue("--quiet");
+				commandLine.createArg().setValue("--skip-dependencies");
+
+				CommandLineUtils.StringStreamConsumer systemOut = new CommandLineUtils.StringStreamConsumer();
+				CommandLineUtils.StringStreamConsumer systemErr = new CommandLineUtils.StringStreamConsumer();
+
+				int exitCode = executeCommandLine("haxelib install " + name, commandLine, systemOut, systemErr);
+				if (exitCode != 0) {
+					throw new MojoFailureException("Lime build failure. Failed to install Haxelib: " + name);
+				}
+				if (!HaxelibLock.hasChecksum(library, tempRepository)) {
+					throw new MojoFailureException("Lime build failure. Installed Haxelib does not match lockfile: "
+							+ name + " " + library.version);
+				}
+				store.add(library, HaxelibLock.getLibraryDirectory(library, tempRepository));
+			} finally {
+				FileUtils.deleteDirectory(tempRepository);
+			}
+		}
+	}
+
+	private interface LockedHaxelibTask {
+		void run(String name, HaxelibLock.Library library) throws Exception;
+	}
+
+	private void runInParallel(HaxelibLock lock, List<String> names, LockedHaxelibTask task) throws Exception {
+		int threads = Math.min(names.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<>();
+			for (String name : names) {
+				HaxelibLock.Library library = lock.getLibraries().get(name);
+				futures.add(executor.submit(() -> {
+					task.run(name, library);
+					return null;
+				}));
+			}
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof Exception) {
+						throw (Exception) cause;
+					}
+					throw e;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void installLockedHaxelib(String name, HaxelibLock.Library library, File repository,
+			HaxelibStamps stamps) throws CommandLineException, IOException, MojoFailureException {
+		try (TraceRecorder.Span span = traceSpan("haxelib", "install locked: " + name)) {
+			String installedVersion = HaxelibLock.getInstalledVersion(library);
+			Commandline commandLine = new Commandline();
+			commandLine.setWorkingDirectory(basedir);
+			commandLine.setExecutable(getHaxelibPath());
+			if (stamps.hasChecksum(library, repository)) {
+				// already installed, but a different version is selected
+				getLog().info("Selecting locked Haxelib: " + name + " " + installedVersion);
+				commandLine.createArg().setValue("set");
+				commandLine.createArg().setValue(name);
+				commandLine.createArg().setValue(installedVersion);
+				commandLine.createArg().setValue("--always");
+			} else if (HaxelibLock.isReleaseVersion(library)) {
+				getLog().info("Installing locked Haxelib: " + name + " " + installedVersion);
+				commandLine.createArg().setValue("install");
+				commandLine.createArg().setValue(name);
+				commandLine.createArg().setValue(installedVersion);
+				commandLine.createArg().setValue("--always");
+				commandLine.createArg().setValue("--quiet");
+				// every dependency has its own entry in the lockfile
+				commandLine.createArg().setValue("--skip-dependencies");
+			} else {
+				throw new MojoFailureException("Lime build failure. Locked Haxelib must be installed manually: " + name
+						+ " " + library.version + " (" + library.path + ")");
+			}
+
+			CommandLineUtils.StringStreamConsumer systemOut = new CommandLineUtils.StringStreamConsumer();
+			CommandLineUtils.StringStreamConsumer systemErr = new CommandLineUtils.StringStreamConsumer();
+
+			int exitCode = executeCommandLine("haxelib " + commandLine.getArguments()[0] + " " + name, commandLine, systemOut, systemErr);
+			if (exitCode != 0) {
+				throw new MojoFailureException("Lime build failure. Failed to install Haxelib: " + name);
+			}
+			if (!stamps.hasChecksum(library, repository) || !HaxelibLock.isCurrent(library, repository)) {
+				throw new MojoFailureException("Lime build failure. Installed Haxelib does not match lockfile: " + name
+						+ " " + library.version);
+			}
+		}
+	}
+
+	/**
+	 * Returns the Haxelib repository used by the project. If it can't be
+	 * found from the file system, asks Haxelib.
+	 */
+	protected File getHaxelibRepository() throws CommandLineException, IOException, MojoFailureException {
+		File repository = HaxelibLock.findRepository(basedir);
+		if (repository != null) {
+			return repository;
+		}
+		Commandline commandLine = new Commandline();
+		commandLine.setWorkingDirectory(basedir);
+		commandLine.setExecutable(getHaxelibPath());
+		commandLine.createArg().setValue("config");
+
+		CommandLineUtils.StringStreamConsumer systemOut = new CommandLineUtils.StringStreamConsumer();
+		CommandLineUtils.StringStreamConsumer systemErr = new CommandLineUtils.StringStreamConsumer();
+
+		int exitCode = executeCommandLine("haxelib config", commandLine, systemOut, systemErr);
+		String[] lines = systemOut.getOutput().trim().split("\\r?\\n");
+		if (exitCode != 0 || lines[lines.length - 1].trim().length() == 0) {
+			throw new MojoFailureException("Lime build failure. Failed to find Haxelib repository");
+		}
+		return new File(lines[lines.length - 1].trim());
 	}
 
 	protected void checkHaxelib(String name, String requiredVersion) throws CommandLineException, MojoFailureException {
@@ -131,17 +1071,19 @@ public abstract class BaseBuildMojo extends BaseMojo {
 		Commandline commandLine = new Commandline();
 		commandLine.setWorkingDirectory(basedir);
 		commandLine.setExecutable(getHaxelibPath());
+		configureHaxelibRepository(commandLine);
 		commandLine.createArg().setValue("path");
 		commandLine.createArg().setValue(name);
 
 		CommandLineUtils.StringStreamConsumer systemOut = new CommandLineUtils.StringStreamConsumer();
 		CommandLineUtils.StringStreamConsumer systemErr = new CommandLineUtils.StringStreamConsumer();
 
-		int exitCode = CommandLineUtils.executeCommandLine(commandLine, systemOut, systemErr);
+		int exitCode = executeCommandLine("haxelib path " + name, commandLine, systemOut, systemErr);
 		if (exitCode == 0) {
 			if (requiredVersion == null) {
 				getLog().debug("Library is installed and no specific version is required: " + name);
 				// any version is fine
+				recordResolvedHaxelibs(systemOut.getOutput());
 				return;
 			}
 			String haxelibPathOutput = systemOut.getOutput();
@@ -155,6 +1097,7 @@ public abstract class BaseBuildMojo extends BaseMojo {
 			}
 			if (requiredVersion.equals(existingVersion)) {
 				getLog().debug("Library is installed with correct version: " + name + " " + existingVersion);
+				recordResolvedHaxelibs(systemOut.getOutput());
 				return;
 			}
 		}
@@ -162,12 +1105,48 @@ public abstract class BaseBuildMojo extends BaseMojo {
 		installHaxelib(name, requiredVersion);
 	}
 
+	private void recordResolvedHaxelibs(String haxelibPathOutput) {
+		// each library's class paths are listed before its define
+		List<String> classPaths = new ArrayList<>();
+		Set<String> recordedNames = new HashSet<>();
+		for (String line : haxelibPathOutput.split("\n")) {
+			line = line.trim();
+			if (line.startsWith("-cp ")) {
+				line = line.substring(4).trim();
+			}
+			if (line.length() > 0 && !line.startsWith("-")) {
+				classPaths.add(line);
+				continue;
+			}
+			if (!line.startsWith("-D ")) {
+				continue;
+			}
+			String define = line.substring(3);
+			int equalsIndex = define.indexOf('=');
+			if (equalsIndex == -1) {
+				continue;
+			}
+			String name = define.substring(0, equalsIndex);
+			if (recordedNames.add(name)) {
+				// a different version may have been recorded before it was
+				// installed or selected
+				haxelibClassPaths.values().removeIf(name::equals);
+			}
+			resolvedHaxelibs.put(name, define.substring(equalsIndex + 1));
+			for (String classPath : classPaths) {
+				haxelibClassPaths.put(classPath, name);
+			}
+			classPaths.clear();
+		}
+	}
+
 	protected void installHaxelib(String name, String requiredVersion)
 			throws CommandLineException, MojoFailureException {
 		getLog().debug("Installing library: " + name + " " + requiredVersion);
 		Commandline commandLine = new Commandline();
 		commandLine.setWorkingDirectory(basedir);
 		commandLine.setExecutable(getHaxelibPath());
+		configureHaxelibRepository(commandLine);
 		commandLine.createArg().setValue("install");
 		commandLine.createArg().setValue(name);
 		if (requiredVersion != null) {
@@ -179,10 +1158,23 @@ public abstract class BaseBuildMojo extends BaseMojo {
 		CommandLineUtils.StringStreamConsumer systemOut = new CommandLineUtils.StringStreamConsumer();
 		CommandLineUtils.StringStreamConsumer systemErr = new CommandLineUtils.StringStreamConsumer();
 
-		int exitCode = CommandLineUtils.executeCommandLine(commandLine, systemOut, systemErr);
-		if (exitCode == 0) {
-			return;
+		int exitCode = executeCommandLine("haxelib install " + name, commandLine, systemOut, systemErr);
+		if (exitCode != 0) {
+			throw new MojoFailureException("Lime build failure. Failed to install Haxelib: " + name);
+		}
+		if (requiredVersion != null) {
+			resolvedHaxelibs.put(name, requiredVersion);
+		}
+		// find out where the version was installed, and its dependencies
+		Commandline pathCommandLine = new Commandline();
+		pathCommandLine.setWorkingDirectory(basedir);
+		pathCommandLine.setExecutable(getHaxelibPath());
+		configureHaxelibRepository(pathCommandLine);
+		pathCommandLine.createArg().setValue("path");
+		pathCommandLine.createArg().setValue(name);
+		CommandLineUtils.StringStreamConsumer pathOut = new CommandLineUtils.StringStreamConsumer();
+		if (executeCommandLine("haxelib path " + name, pathCommandLine, pathOut, systemErr) == 0) {
+			recordResolvedHaxelibs(pathOut.getOutput());
 		}
-		throw new MojoFailureException("Lime build failure. Failed to install Haxelib: " + name);
 	}
 }
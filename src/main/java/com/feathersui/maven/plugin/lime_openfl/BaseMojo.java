@@ -17,15 +17,56 @@ limitations under the License.
 package com.feathersui.maven.plugin.lime_openfl;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import com.feathersui.maven.plugin.browser.BrowserLoader;
+import com.feathersui.maven.plugin.browser.BrowserSession;
+import com.feathersui.maven.plugin.browser.BrowserSessionFactory;
+import com.feathersui.maven.plugin.minifier.JsCompiler;
+import com.feathersui.maven.plugin.minifier.MinifierLoader;
+import com.feathersui.maven.plugin.utils.TraceRecorder;
+
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.sonatype.plexus.build.incremental.BuildContext;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 /**
  * The base class for all Lime/OpenFL goals.
  */
 public abstract class BaseMojo extends AbstractMojo {
+	private static final Set<String> NATIVE_TARGETS = new HashSet<>(
+			Arrays.asList("windows", "mac", "macos", "linux", "ios", "tvos", "android", "cpp", "hlc"));
+	private static final String[] INPUT_PATH_ELEMENTS = { "source", "classpath", "assets", "icon", "template",
+			"java", "launchImage", "splashScreen", "dependency" };
+	private static final Map<String, String> haxeVersions = new ConcurrentHashMap<>();
+	private static final Map<String, String> limeToolsPaths = new ConcurrentHashMap<>();
+	// marks a failed lookup, because concurrent maps don't allow null values
+	private static final String LIME_TOOLS_NOT_FOUND = "";
+	private static final String LOCAL_HAXELIB_REPOSITORY_NAME = ".haxelib";
+
 	/**
 	 * Optionally specify a custom path to the Haxelib executable. If not set,
 	 * the build will assume that a Haxelib executable can be found on the
@@ -34,6 +75,23 @@ public abstract class BaseMojo extends AbstractMojo {
 	@Parameter(property = "lime.haxelib")
 	public File haxelibExecutable;
 
+	/**
+	 * Optionally specify a custom path to the Haxe compiler executable. If not
+	 * set, the build will assume that a Haxe executable can be found on the
+	 * system path.
+	 */
+	@Parameter(property = "lime.haxe")
+	public File haxeExecutable;
+
+	/**
+	 * Optionally specify a custom path to the Neko executable, which is used
+	 * to run the Lime command line tools directly, instead of with
+	 * {@code haxelib run lime}. If not set, the build will assume that a Neko
+	 * executable can be found on the system path.
+	 */
+	@Parameter(property = "lime.neko")
+	public File nekoExecutable;
+
 	/**
 	 * Optionally specify a custom path to a Lime <em>project.xml</em> file.
 	 * If not set, will fall back to searching for a <em>project.xml</em> file
@@ -54,12 +112,74 @@ public abstract class BaseMojo extends AbstractMojo {
 	@Parameter(defaultValue = "html5", property = "lime.target")
 	public String target;
 
+	/**
+	 * Specify if Haxelib libraries should be installed into a
+	 * content-addressed store that is shared between projects, instead of
+	 * the global Haxelib repository. Each project gets its own lightweight
+	 * Haxelib repository, made of links into the store, with exactly the
+	 * versions in the lockfile written by the <em>lock</em> goal. Builds with
+	 * different versions of the same library may run in parallel, and files
+	 * that are the same in multiple versions are stored once.
+	 *
+	 * <p>
+	 * Implies {@code haxelibLocked}. Ignored by Haxelib if the project is
+	 * inside a directory with a local <em>.haxelib</em> repository.
+	 * </p>
+	 */
+	@Parameter(defaultValue = "false", property = "lime.haxelibStore")
+	public boolean haxelibStore;
+
+	/**
+	 * The directory of the shared Haxelib store, if {@link #haxelibStore} is
+	 * {@code true}.
+	 */
+	@Parameter(defaultValue = "${user.home}/.lime-openfl-maven-plugin/haxelib-store", property = "lime.haxelibStoreDirectory")
+	public File haxelibStoreDirectory;
+
+	@Parameter(defaultValue = "${project.build.directory}/haxelib-repository", required = true, readonly = true)
+	protected File haxelibViewDirectory;
+
+	/**
+	 * Specify if a timeline of the plugin's activities should be recorded,
+	 * including Haxelib checks, child processes, caches, and tests. Every goal
+	 * in the same Maven session records to one {@link #traceFile}, which may
+	 * be opened in <em>chrome://tracing</em> or
+	 * <a href="https://ui.perfetto.dev/">Perfetto</a>.
+	 */
+	@Parameter(defaultValue = "false", property = "lime.trace")
+	public boolean trace;
+
+	/**
+	 * The file where the timeline is written, if {@link #trace} is
+	 * {@code true}.
+	 */
+	@Parameter(defaultValue = "${session.executionRootDirectory}/target/lime-trace.json", property = "lime.traceFile")
+	public File traceFile;
+
 	@Parameter(defaultValue = "${basedir}", required = true, readonly = true)
 	protected File basedir;
 
 	@Parameter(defaultValue = "${project}", required = true, readonly = true)
 	protected MavenProject project;
 
+	@Parameter(defaultValue = "${session}", required = true, readonly = true)
+	protected MavenSession session;
+
+	@Parameter(defaultValue = "${mojoExecution}", required = true, readonly = true)
+	protected MojoExecution mojoExecution;
+
+	@Component
+	protected BuildContext buildContext;
+
+	@Component
+	private RepositorySystem repositorySystem;
+
+	@Parameter(defaultValue = "${repositorySystemSession}", required = true, readonly = true)
+	private RepositorySystemSession repositorySession;
+
+	@Parameter(defaultValue = "${project.remotePluginRepositories}", required = true, readonly = true)
+	private List<RemoteRepository> remotePluginRepositories;
+
 	protected String getHaxelibPath() {
 		String result = "haxelib";
 		if (haxelibExecutable != null) {
@@ -68,4 +188,377 @@ public abstract class BaseMojo extends AbstractMojo {
 		return result;
 	}
 
+	protected String getHaxePath() {
+		String result = "haxe";
+		if (haxeExecutable != null) {
+			result = haxeExecutable.getAbsolutePath();
+		}
+		return result;
+	}
+
+	protected String getNekoPath() {
+		String result = "neko";
+		if (nekoExecutable != null) {
+			result = nekoExecutable.getAbsolutePath();
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a command line for the Lime command line tools, with the
+	 * specified command, the <em>project.xml</em> file, and the target. Run it
+	 * with {@link #executeLime(Commandline, StreamConsumer, StreamConsumer)}.
+	 */
+	protected Commandline createLimeCommandLine(String command) {
+		Commandline commandLine = new Commandline();
+		commandLine.setWorkingDirectory(basedir);
+		configureHaxelibRepository(commandLine);
+		commandLine.createArg().setValue(command);
+		commandLine.createArg().setValue(projectFile.getAbsolutePath());
+		commandLine.createArg().setValue(target);
+		return commandLine;
+	}
+
+	/**
+	 * Runs the Lime command line tools. If possible, the tools are run
+	 * directly with Neko, which skips starting Haxelib and resolving Lime
+	 * again for every command. Otherwise, falls back to
+	 * {@code haxelib run lime}.
+	 */
+	protected int executeLime(Commandline commandLine, StreamConsumer systemOut, StreamConsumer systemErr)
+			throws CommandLineException {
+		String[] limeArgs = commandLine.getArguments();
+		String toolsPath = getLimeToolsPath();
+		if (toolsPath != null) {
+			commandLine.setExecutable(getNekoPath());
+			commandLine.createArg(true).setValue(toolsPath);
+			// the same as haxelib run, which passes the working directory as
+			// the last argument
+			commandLine.createArg().setValue(commandLine.getWorkingDirectory().getAbsolutePath());
+			commandLine.addEnvironment("HAXELIB_RUN", "1");
+			commandLine.addEnvironment("HAXELIB_RUN_NAME", "lime");
+			try {
+				return executeCommandLine("lime " + limeArgs[0], commandLine, systemOut, systemErr);
+			} catch (CommandLineException e) {
+				// Neko couldn't be started, so don't try again
+				getLog().debug("Failed to run Lime tools with Neko: " + e.getMessage());
+				limeToolsPaths.put(getLimeToolsCacheKey(), LIME_TOOLS_NOT_FOUND);
+				commandLine.clearArgs();
+				for (String arg : limeArgs) {
+					commandLine.createArg().setValue(arg);
+				}
+			}
+		}
+		commandLine.setExecutable(getHaxelibPath());
+		commandLine.createArg(true).setValue("lime");
+		commandLine.createArg(true).setValue("run");
+		return executeCommandLine("haxelib run lime " + limeArgs[0], commandLine, systemOut, systemErr);
+	}
+
+	/**
+	 * Runs a child process. If {@link #trace} is {@code true}, records a span
+	 * for the lifetime of the process, with the time of its first output, and
+	 * its exit code.
+	 */
+	protected int executeCommandLine(String spanName, Commandline commandLine, StreamConsumer systemOut,
+			StreamConsumer systemErr) throws CommandLineException {
+		try (TraceRecorder.Span span = traceSpan("process", spanName)) {
+			span.arg("command", commandLine.toString());
+			int exitCode = CommandLineUtils.executeCommandLine(commandLine, span.markFirstOutput(systemOut),
+					span.markFirstOutput(systemErr));
+			span.arg("exitCode", exitCode);
+			return exitCode;
+		}
+	}
+
+	/**
+	 * Opens a page in a new context of the shared headless browser. The
+	 * browser implementation is resolved and loaded the first time that any
+	 * goal needs it. The caller must close the session.
+	 */
+	protected BrowserSession newBrowserSession() throws IOException {
+		BrowserSessionFactory factory = null;
+		try (TraceRecorder.Span span = traceSpan("browser", "load browser")) {
+			factory = BrowserLoader.getFactory(repositorySystem, repositorySession, remotePluginRepositories);
+		}
+		try (TraceRecorder.Span span = traceSpan("browser", "start browser")) {
+			return factory.newSession();
+		}
+	}
+
+	/**
+	 * Returns the shared JavaScript compiler, which is resolved and loaded the
+	 * first time that any build minifies its output.
+	 */
+	protected JsCompiler loadJsCompiler() throws IOException {
+		try (TraceRecorder.Span span = traceSpan("output", "load minifier")) {
+			return MinifierLoader.getCompiler(repositorySystem, repositorySession, remotePluginRepositories);
+		}
+	}
+
+	/**
+	 * Closes the current thread's browser, unless another project in the
+	 * Maven session is still waiting to build and may need it. Goals that
+	 * open browser sessions call this when they finish, from the same
+	 * thread.
+	 */
+	protected void releaseBrowser() {
+		BrowserSessionFactory factory = BrowserLoader.getLoadedFactory();
+		if (factory == null) {
+			return;
+		}
+		if (session != null && session.getProjects() != null) {
+			for (MavenProject otherProject : session.getProjects()) {
+				if (otherProject != project && session.getResult().getBuildSummary(otherProject) == null) {
+					return;
+				}
+			}
+		}
+		factory.closeBrowser();
+	}
+
+	/**
+	 * Starts a span on the timeline, if {@link #trace} is {@code true}. Close
+	 * the span to record it.
+	 */
+	protected TraceRecorder.Span traceSpan(String category, String name) {
+		TraceRecorder recorder = getTraceRecorder();
+		if (recorder == null) {
+			return TraceRecorder.Span.DISABLED;
+		}
+		return recorder.begin(project.getId(), category, name);
+	}
+
+	/**
+	 * Starts a span for the execution of the current goal.
+	 */
+	protected TraceRecorder.Span traceGoal() {
+		String goal = mojoExecution != null ? mojoExecution.getGoal() : getClass().getSimpleName();
+		return traceSpan("goal", "lime:" + goal).arg("project", basedir.getName());
+	}
+
+	/**
+	 * Writes the timeline recorded so far in the Maven session, if
+	 * {@link #trace} is {@code true}.
+	 */
+	protected void writeTrace() {
+		TraceRecorder recorder = getTraceRecorder();
+		if (recorder == null) {
+			return;
+		}
+		try {
+			recorder.write();
+			getLog().info("Trace: " + recorder.getFile().getAbsolutePath());
+		} catch (IOException e) {
+			getLog().warn("Failed to write trace: " + e.getMessage());
+		}
+	}
+
+	private TraceRecorder getTraceRecorder() {
+		return getTraceRecorder(trace, traceFile, session);
+	}
+
+	/**
+	 * Returns the recorder of the Maven session's timeline, or {@code null}
+	 * if tracing is disabled. Goals that don't extend {@link BaseMojo} use it
+	 * to record to the same timeline.
+	 */
+	static TraceRecorder getTraceRecorder(boolean trace, File traceFile, MavenSession session) {
+		if (!trace || traceFile == null) {
+			return null;
+		}
+		long sessionStartTime = session != null && session.getRequest().getStartTime() != null
+				? session.getRequest().getStartTime().getTime()
+				: 0L;
+		return TraceRecorder.getInstance(traceFile, sessionStartTime);
+	}
+
+	/**
+	 * Returns the path to the Lime command line tools, or {@code null} if
+	 * they can't be run directly. The result is cached for the rest of the
+	 * Maven session.
+	 */
+	private String getLimeToolsPath() throws CommandLineException {
+		String cacheKey = getLimeToolsCacheKey();
+		String toolsPath = limeToolsPaths.get(cacheKey);
+		if (toolsPath == null) {
+			toolsPath = LIME_TOOLS_NOT_FOUND;
+
+			Commandline commandLine = new Commandline();
+			commandLine.setWorkingDirectory(basedir);
+			commandLine.setExecutable(getHaxelibPath());
+			configureHaxelibRepository(commandLine);
+			commandLine.createArg().setValue("libpath");
+			commandLine.createArg().setValue("lime");
+
+			CommandLineUtils.StringStreamConsumer systemOut = new CommandLineUtils.StringStreamConsumer();
+			CommandLineUtils.StringStreamConsumer systemErr = new CommandLineUtils.StringStreamConsumer();
+
+			// older versions of Haxelib don't have the libpath command
+			int exitCode = executeCommandLine("haxelib libpath lime", commandLine, systemOut, systemErr);
+			String[] lines = systemOut.getOutput().trim().split("\\r?\\n");
+			if (exitCode == 0 && lines.length > 0) {
+				File toolsFile = new File(lines[lines.length - 1].trim(), "tools/tools.n");
+				// if the tools haven't been compiled yet, haxelib run lime
+				// will compile them
+				if (toolsFile.isFile()) {
+					toolsPath = toolsFile.getAbsolutePath();
+				}
+			}
+			limeToolsPaths.put(cacheKey, toolsPath);
+			if (toolsPath.length() > 0) {
+				getLog().debug("Lime tools: " + toolsPath);
+			} else {
+				getLog().debug("Lime tools not found. Using haxelib run lime");
+			}
+		}
+		return toolsPath.length() > 0 ? toolsPath : null;
+	}
+
+	/**
+	 * Projects share the same version of Lime, unless they're in a directory
+	 * with a local Haxelib repository, or they use the Haxelib store.
+	 */
+	private String getLimeToolsCacheKey() {
+		String localRepository = "";
+		File current = basedir.getAbsoluteFile();
+		while (current != null) {
+			File repository = new File(current, LOCAL_HAXELIB_REPOSITORY_NAME);
+			if (repository.isDirectory()) {
+				localRepository = repository.getAbsolutePath();
+				break;
+			}
+			current = current.getParentFile();
+		}
+		String viewRepository = haxelibStore ? haxelibViewDirectory.getAbsolutePath() : "";
+		return getHaxelibPath() + File.pathSeparator + localRepository + File.pathSeparator + viewRepository;
+	}
+
+	/**
+	 * Points Haxelib, and commands that run Haxelib, such as Haxe and Lime, to
+	 * the project's view of the Haxelib store, if {@link #haxelibStore} is
+	 * {@code true}.
+	 */
+	protected void configureHaxelibRepository(Commandline commandLine) {
+		if (haxelibStore) {
+			commandLine.addEnvironment("HAXELIB_PATH", haxelibViewDirectory.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Returns the version of the Haxe compiler. The result is cached for the
+	 * rest of the Maven session.
+	 */
+	protected String getHaxeVersion() throws CommandLineException {
+		String haxePath = getHaxePath();
+		String version = haxeVersions.get(haxePath);
+		if (version != null) {
+			return version;
+		}
+		Commandline commandLine = new Commandline();
+		commandLine.setWorkingDirectory(basedir);
+		commandLine.setExecutable(haxePath);
+		commandLine.createArg().setValue("-version");
+
+		CommandLineUtils.StringStreamConsumer systemOut = new CommandLineUtils.StringStreamConsumer();
+		CommandLineUtils.StringStreamConsumer systemErr = new CommandLineUtils.StringStreamConsumer();
+
+		executeCommandLine("haxe -version", commandLine, systemOut, systemErr);
+		// older versions of Haxe print the version to stderr
+		version = (systemOut.getOutput() + systemErr.getOutput()).trim();
+		haxeVersions.put(haxePath, version);
+		return version;
+	}
+
+	/**
+	 * Returns the name of the directory where Lime writes the output for the
+	 * current target, inside of the {@code --app-path} directory.
+	 */
+	protected String getTargetOutputDirectoryName() {
+		if ("mac".equals(target)) {
+			return "macos";
+		}
+		return target;
+	}
+
+	/**
+	 * Returns {@code false} during an incremental build in an IDE, such as
+	 * Eclipse with m2e, if none of the inputs of the goal have changed. Always
+	 * returns {@code true} for command line builds.
+	 */
+	protected boolean hasIncrementalChanges(List<File> inputs) {
+		if (buildContext == null || !buildContext.isIncremental()) {
+			return true;
+		}
+		if (project.getFile() != null && buildContext.hasDelta(project.getFile())) {
+			return true;
+		}
+		if (buildContext.hasDelta(projectFile)) {
+			return true;
+		}
+		for (File input : inputs) {
+			if (buildContext.hasDelta(input)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the files and directories referenced by the Lime
+	 * <em>project.xml</em> file that are inputs of the build, such as
+	 * {@code <source>} and {@code <assets>} paths.
+	 */
+	protected List<File> getProjectInputPaths() throws Exception {
+		return getProjectPaths(getProjectElements(INPUT_PATH_ELEMENTS));
+	}
+
+	/**
+	 * Returns the elements of the Lime <em>project.xml</em> file with any of
+	 * the specified names, in document order.
+	 */
+	protected List<Element> getProjectElements(String... elementNames) throws Exception {
+		List<Element> result = new ArrayList<>();
+		Document projectDocument = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(projectFile);
+		List<String> names = Arrays.asList(elementNames);
+		NodeList elements = projectDocument.getDocumentElement().getElementsByTagName("*");
+		for (int i = 0; i < elements.getLength(); i++) {
+			Element element = (Element) elements.item(i);
+			if (names.contains(element.getTagName())) {
+				result.add(element);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Resolves the {@code path} attributes of the specified elements of the
+	 * Lime <em>project.xml</em> file, and returns the ones that exist.
+	 */
+	protected List<File> getProjectPaths(List<Element> elements) {
+		List<File> result = new ArrayList<>();
+		File projectDirectory = projectFile.getAbsoluteFile().getParentFile();
+		for (Element element : elements) {
+			if (!element.hasAttribute("path")) {
+				continue;
+			}
+			File file = new File(element.getAttribute("path"));
+			if (!file.isAbsolute()) {
+				file = new File(projectDirectory, element.getAttribute("path"));
+			}
+			if (file.exists() && !result.contains(file)) {
+				result.add(file);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns {@code true} if the current target is compiled to native code
+	 * with a C/C++ compiler, such as with hxcpp.
+	 */
+	protected boolean isNativeTarget() {
+		return NATIVE_TARGETS.contains(target);
+	}
+
 }
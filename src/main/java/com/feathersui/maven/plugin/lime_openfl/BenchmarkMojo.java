@@ -0,0 +1,497 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.feathersui.maven.plugin.lime_openfl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.feathersui.maven.plugin.browser.BrowserSession;
+import com.feathersui.maven.plugin.utils.Json;
+import com.feathersui.maven.plugin.utils.LogOutputStream;
+import com.feathersui.maven.plugin.utils.StaticFileHandler;
+import com.feathersui.maven.plugin.utils.TraceRecorder;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Execute;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.codehaus.plexus.util.cli.WriterStreamConsumer;
+
+/**
+ * Detects, builds, and runs the benchmarks for a
+ * <a href="https://lime.software/">Lime</a>,
+ * <a href="https://openfl.org/">OpenFL</a>, or
+ * <a href="https://feathersui.com/">Feathers UI</a> project, and compares
+ * the results with a stored baseline.
+ *
+ * <p>
+ * Benchmarks should be located in the <em>src/benchmark/haxe</em> directory.
+ * Every public method without arguments whose name starts with
+ * {@code benchmark} is measured, like this:
+ * </p>
+ *
+ * <pre>
+ * class LayoutBenchmark {
+ * 	public function new() {}
+ *
+ * 	public function benchmarkVerticalLayout():Void {
+ * 		// code to measure
+ * 	}
+ * }
+ * </pre>
+ *
+ * <p>
+ * Each benchmark is called repeatedly for {@link #benchmarkSampleTime}
+ * milliseconds to take one sample of its time per call. The first
+ * {@link #benchmarkWarmupIterations} samples are discarded, and the next
+ * {@link #benchmarkIterations} samples are reported. html5 benchmarks run in
+ * headless Chromium, and other targets run as a native process.
+ * </p>
+ */
+@Mojo(name = "benchmark")
+@Execute(phase = LifecyclePhase.GENERATE_RESOURCES)
+public class BenchmarkMojo extends BaseBuildMojo {
+	private static final Pattern benchmarkMethodPattern = Pattern
+			.compile("\\bpublic\\s+function\\s+(benchmark\\w*)\\s*\\(\\s*\\)");
+	private static final String RESULT_PREFIX = "LIME_BENCHMARK_RESULT:";
+	private static final String RESULT_GLOBAL = "limeBenchmarkResult";
+	private static final String ERROR_GLOBAL = "limeBenchmarkError";
+	// records uncaught errors, so that a failed run doesn't wait until it
+	// times out
+	private static final String ERROR_SCRIPT = "(() => {\n"
+			+ "  const record = (message) => {\n"
+			+ "    if (!window[\"" + ERROR_GLOBAL + "\"]) {\n"
+			+ "      window[\"" + ERROR_GLOBAL + "\"] = String(message);\n"
+			+ "    }\n"
+			+ "  };\n"
+			+ "  window.addEventListener(\"error\", (event) => record(event.error || event.message));\n"
+			+ "  window.addEventListener(\"unhandledrejection\", (event) => record(event.reason));\n"
+			+ "})();\n";
+
+	/**
+	 * The directory that contains the benchmark classes.
+	 */
+	@Parameter(defaultValue = "${basedir}/src/benchmark/haxe", property = "lime.benchmarkSrcDirectory")
+	public File benchmarkSrcDirectory;
+
+	/**
+	 * The number of samples to take and discard before measuring, so that
+	 * the JIT compiler and caches are warm.
+	 */
+	@Parameter(defaultValue = "5", property = "lime.benchmarkWarmupIterations")
+	public int benchmarkWarmupIterations;
+
+	/**
+	 * The number of samples to report for each benchmark.
+	 */
+	@Parameter(defaultValue = "10", property = "lime.benchmarkIterations")
+	public int benchmarkIterations;
+
+	/**
+	 * The minimum duration of each sample, in milliseconds.
+	 */
+	@Parameter(defaultValue = "200", property = "lime.benchmarkSampleTime")
+	public int benchmarkSampleTime;
+
+	/**
+	 * A JSON file that stores the baseline results for each target. The
+	 * median time of each benchmark is compared with the baseline.
+	 */
+	@Parameter(defaultValue = "${basedir}/src/benchmark/baseline.json", property = "lime.benchmarkBaselineFile")
+	public File benchmarkBaselineFile;
+
+	/**
+	 * Specify if the baseline file should be updated with the results for
+	 * the current target, instead of failing the build on regressions.
+	 */
+	@Parameter(defaultValue = "false", property = "lime.benchmarkUpdateBaseline")
+	public boolean benchmarkUpdateBaseline;
+
+	/**
+	 * The build fails if the median time of a benchmark is slower than the
+	 * baseline by more than this percentage.
+	 */
+	@Parameter(defaultValue = "10", property = "lime.benchmarkRegressionThreshold")
+	public double benchmarkRegressionThreshold;
+
+	/**
+	 * The maximum time to wait for html5 benchmarks to report their results,
+	 * in seconds. The build fails if the page doesn't finish in time, or if
+	 * it throws an uncaught error.
+	 */
+	@Parameter(defaultValue = "600", property = "lime.benchmarkTimeout")
+	public int benchmarkTimeout;
+
+	@Parameter(defaultValue = "${project.build.directory}/benchmark", required = true, readonly = true)
+	private File benchmarkBuildDirectory;
+
+	@Parameter(defaultValue = "${project.build.directory}/benchmark/generated-sources", required = true, readonly = true)
+	private File benchmarkGeneratedSrcDirectory;
+
+	@Override
+	protected void build() throws CommandLineException, MojoExecutionException, MojoFailureException {
+		if (benchmarkIterations < 1) {
+			throw new MojoFailureException(
+					"Lime benchmark build failure. benchmarkIterations must be at least 1: " + benchmarkIterations);
+		}
+		if (benchmarkWarmupIterations < 0) {
+			throw new MojoFailureException("Lime benchmark build failure. benchmarkWarmupIterations must not be "
+					+ "negative: " + benchmarkWarmupIterations);
+		}
+		Map<String, List<String>> benchmarks = null;
+		try {
+			benchmarks = findBenchmarks();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Fatal error detecting benchmarks", e);
+		}
+		if (benchmarks.size() == 0) {
+			getLog().info("No benchmarks to run");
+			return;
+		}
+		if (isDebug) {
+			getLog().warn("Benchmarks are running in a debug build, so results may not be representative");
+		}
+		generateBenchmarkSources(benchmarks);
+		buildBenchmarks();
+		String resultJson = "html5".equals(target) ? runBrowserBenchmarks() : runNativeBenchmarks();
+		reportResults(resultJson);
+	}
+
+	/**
+	 * Returns the qualified names of the benchmark classes, and the names of
+	 * their benchmark methods.
+	 */
+	private Map<String, List<String>> findBenchmarks() throws IOException {
+		Map<String, List<String>> result = new LinkedHashMap<>();
+		if (!benchmarkSrcDirectory.exists()) {
+			return result;
+		}
+		Path srcPath = benchmarkSrcDirectory.toPath();
+		List<File> files = null;
+		try (Stream<Path> stream = Files.walk(srcPath)) {
+			files = stream.map(Path::toFile).filter(file -> file.getName().endsWith(".hx")).sorted()
+					.collect(Collectors.toList());
+		}
+		for (File file : files) {
+			String fileText = FileUtils.readFileToString(file, Charset.forName("utf-8"));
+			List<String> methodNames = new ArrayList<>();
+			Matcher matcher = benchmarkMethodPattern.matcher(fileText);
+			while (matcher.find()) {
+				methodNames.add(matcher.group(1));
+			}
+			if (methodNames.size() == 0) {
+				continue;
+			}
+			String qualifiedName = srcPath.relativize(file.toPath()).toString().replace("/", ".")
+					.replace("\\", ".").replace(".hx", "");
+			result.put(qualifiedName, methodNames);
+		}
+		return result;
+	}
+
+	private void generateBenchmarkSources(Map<String, List<String>> benchmarks) throws MojoExecutionException {
+		StringBuilder mainBuilder = new StringBuilder()
+				.append("import openfl.display.Sprite;\n")
+				.append("class BenchmarkMain extends Sprite {\n")
+				.append("  public function new() {\n")
+				.append("    super();\n")
+				.append("    var results:Array<Dynamic> = [];\n");
+		int instanceCount = 0;
+		for (Map.Entry<String, List<String>> entry : benchmarks.entrySet()) {
+			String instanceName = "instance" + instanceCount;
+			instanceCount++;
+			mainBuilder.append("    var ").append(instanceName).append(" = new ").append(entry.getKey())
+					.append("();\n");
+			for (String methodName : entry.getValue()) {
+				mainBuilder.append("    measure(results, \"").append(entry.getKey()).append(".").append(methodName)
+						.append("\", function():Void { ").append(instanceName).append(".").append(methodName)
+						.append("(); });\n");
+			}
+		}
+		mainBuilder
+				.append("    var json = haxe.Json.stringify(results);\n")
+				.append("    #if html5\n")
+				.append("    Reflect.setField(js.Lib.global, \"").append(RESULT_GLOBAL).append("\", json);\n")
+				.append("    #else\n")
+				.append("    Sys.println(\"").append(RESULT_PREFIX).append("\" + json);\n")
+				.append("    Sys.exit(0);\n")
+				.append("    #end\n")
+				.append("  }\n")
+				.append("  private static function measure(results:Array<Dynamic>, name:String, benchmark:Void->Void):Void {\n")
+				.append("    var samples:Array<Float> = [];\n")
+				.append("    for (i in 0...").append(benchmarkWarmupIterations + benchmarkIterations).append(") {\n")
+				.append("      var operations = 0;\n")
+				.append("      var elapsed = 0.0;\n")
+				.append("      var start = haxe.Timer.stamp();\n")
+				.append("      do {\n")
+				.append("        benchmark();\n")
+				.append("        operations++;\n")
+				.append("        elapsed = haxe.Timer.stamp() - start;\n")
+				.append("      } while (elapsed < ").append(benchmarkSampleTime / 1000.0).append(");\n")
+				.append("      if (i >= ").append(benchmarkWarmupIterations).append(") {\n")
+				.append("        samples.push(elapsed * 1000000000.0 / operations);\n")
+				.append("      }\n")
+				.append("    }\n")
+				.append("    results.push({name: name, samples: samples});\n")
+				.append("  }\n")
+				.append("}\n");
+		StringBuilder indexBuilder = new StringBuilder()
+				.append("<!DOCTYPE html>\n")
+				.append("<html lang=\"en\">\n")
+				.append("  <head>\n")
+				.append("    <meta charset=\"utf-8\">\n")
+				.append("    <title>lime-openfl-maven-plugin Benchmark Runner</title>\n")
+				.append("    <script type=\"text/javascript\" src=\"./BenchmarkMain.js\"></script>\n")
+				.append("  </head>\n")
+				.append("  <body>\n")
+				.append("    <script type=\"text/javascript\">\n")
+				.append("      lime.$scripts[\"BenchmarkMain\"]();\n")
+				.append("    </script>\n")
+				.append("  </body>\n")
+				.append("</html>");
+		try {
+			FileUtils.write(new File(benchmarkGeneratedSrcDirectory, "BenchmarkMain.hx"), mainBuilder.toString(),
+					Charset.forName("utf-8"));
+			FileUtils.write(new File(benchmarkGeneratedSrcDirectory, "index.html"), indexBuilder.toString(),
+					Charset.forName("utf-8"));
+		} catch (IOException e) {
+			throw new MojoExecutionException("Fatal error generating benchmark sources", e);
+		}
+	}
+
+	private void buildBenchmarks() throws CommandLineException, MojoExecutionException, MojoFailureException {
+		getLog().debug("Building benchmarks: " + basedir.getName());
+
+		Commandline commandLine = createLimeCommandLine("build");
+		addBuildArgs(commandLine);
+		commandLine.createArg().setValue("--source=" + benchmarkSrcDirectory.getAbsolutePath());
+		commandLine.createArg().setValue("--source=" + benchmarkGeneratedSrcDirectory.getAbsolutePath());
+		commandLine.createArg().setValue("--app-path=" + benchmarkBuildDirectory.getAbsolutePath());
+		commandLine.createArg().setValue("--app-file=BenchmarkMain");
+		commandLine.createArg().setValue("--app-main=BenchmarkMain");
+		configureCompileCache(commandLine);
+
+		WriterStreamConsumer systemOut = new WriterStreamConsumer(
+				new OutputStreamWriter(new LogOutputStream(getLog(), false)));
+		WriterStreamConsumer systemErr = new WriterStreamConsumer(
+				new OutputStreamWriter(new LogOutputStream(getLog(), true)));
+
+		int exitCode = executeLime(commandLine, systemOut, systemErr);
+		cleanCompileCache();
+		if (exitCode != 0) {
+			throw new MojoFailureException("Lime benchmark build failure. Process exited with code: " + exitCode);
+		}
+		if ("html5".equals(target)) {
+			try {
+				FileUtils.copyFile(new File(benchmarkGeneratedSrcDirectory, "index.html"),
+						new File(benchmarkBuildDirectory, "html5/bin/index.html"));
+			} catch (IOException e) {
+				throw new MojoExecutionException("Fatal error generating benchmark index", e);
+			}
+		}
+	}
+
+	private String runBrowserBenchmarks() throws MojoExecutionException, MojoFailureException {
+		HttpServer httpServer = null;
+		BrowserSession browserSession = null;
+		try {
+			try (TraceRecorder.Span span = traceSpan("server", "start server")) {
+				httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+				httpServer.createContext("/", new StaticFileHandler(new File(benchmarkBuildDirectory, "html5/bin")));
+				httpServer.start();
+			}
+			browserSession = newBrowserSession();
+			browserSession.addInitScript(ERROR_SCRIPT);
+			browserSession.onConsoleMessage((type, text) -> getLog().info(text));
+			browserSession.navigate("http://localhost:" + httpServer.getAddress().getPort() + "/");
+			try {
+				browserSession.waitForFunction(
+						"() => window[\"" + RESULT_GLOBAL + "\"] || window[\"" + ERROR_GLOBAL + "\"]",
+						benchmarkTimeout * 1000.0);
+			} catch (RuntimeException e) {
+				throw new MojoFailureException(
+						"Lime benchmarks did not report results within " + benchmarkTimeout + " seconds", e);
+			}
+			Object error = browserSession.evaluate("() => window[\"" + ERROR_GLOBAL + "\"]");
+			if (error != null) {
+				throw new MojoFailureException("Lime benchmark run failure: " + error);
+			}
+			return (String) browserSession.evaluate("() => window[\"" + RESULT_GLOBAL + "\"]");
+		} catch (MojoFailureException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MojoExecutionException("Fatal error running Lime benchmarks", e);
+		} finally {
+			if (browserSession != null) {
+				browserSession.close();
+			}
+			releaseBrowser();
+			if (httpServer != null) {
+				httpServer.stop(0);
+			}
+		}
+	}
+
+	private String runNativeBenchmarks() throws MojoExecutionException, MojoFailureException {
+		Commandline commandLine = createLimeCommandLine("run");
+		commandLine.createArg().setValue("--app-path=" + benchmarkBuildDirectory.getAbsolutePath());
+		commandLine.createArg().setValue("--app-file=BenchmarkMain");
+
+		WriterStreamConsumer logOut = new WriterStreamConsumer(
+				new OutputStreamWriter(new LogOutputStream(getLog(), false)));
+		WriterStreamConsumer systemErr = new WriterStreamConsumer(
+				new OutputStreamWriter(new LogOutputStream(getLog(), true)));
+		StringBuilder result = new StringBuilder();
+		StreamConsumer systemOut = line -> {
+			int index = line.indexOf(RESULT_PREFIX);
+			if (index != -1) {
+				result.append(line.substring(index + RESULT_PREFIX.length()));
+				return;
+			}
+			logOut.consumeLine(line);
+		};
+
+		int exitCode = 1;
+		try {
+			exitCode = executeLime(commandLine, systemOut, systemErr);
+		} catch (Exception e) {
+			throw new MojoExecutionException("Fatal error running Lime benchmarks", e);
+		}
+		if (exitCode != 0 || result.length() == 0) {
+			throw new MojoFailureException("Lime benchmark run failure. Process exited with code: " + exitCode);
+		}
+		return result.toString();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void reportResults(String resultJson) throws MojoExecutionException, MojoFailureException {
+		Map<String, Object> results = new LinkedHashMap<>();
+		for (Object item : (List<Object>) Json.parse(resultJson)) {
+			Map<String, Object> benchmark = (Map<String, Object>) item;
+			List<Object> samples = (List<Object>) benchmark.get("samples");
+			double[] values = samples.stream().mapToDouble(sample -> ((Number) sample).doubleValue()).toArray();
+			if (values.length == 0) {
+				throw new MojoFailureException("Lime benchmark run failure. No samples reported: " + benchmark.get("name"));
+			}
+			results.put((String) benchmark.get("name"), getStatistics(values));
+		}
+
+		Map<String, Object> baselines = new LinkedHashMap<>();
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("target", target);
+		report.put("unit", "ns/op");
+		report.put("benchmarks", results);
+		try {
+			FileUtils.write(new File(reportsDirectory, "benchmark-results.json"), Json.stringify(report),
+					Charset.forName("utf-8"));
+			if (benchmarkBaselineFile.exists()) {
+				baselines = (Map<String, Object>) Json.parse(
+						FileUtils.readFileToString(benchmarkBaselineFile, Charset.forName("utf-8")));
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			throw new MojoExecutionException("Fatal error reading or writing benchmark results", e);
+		}
+		Map<String, Object> baseline = (Map<String, Object>) baselines.get(target);
+
+		List<String> regressions = new ArrayList<>();
+		for (Map.Entry<String, Object> entry : results.entrySet()) {
+			double median = (Double) ((Map<String, Object>) entry.getValue()).get("median");
+			StringBuilder message = new StringBuilder()
+					.append(entry.getKey())
+					.append(": ")
+					.append(String.format("%.1f", median))
+					.append(" ns/op");
+			Map<String, Object> baselineResult = baseline != null
+					? (Map<String, Object>) baseline.get(entry.getKey())
+					: null;
+			if (baselineResult != null) {
+				double baselineMedian = ((Number) baselineResult.get("median")).doubleValue();
+				if (baselineMedian > 0.0) {
+					double change = (median - baselineMedian) / baselineMedian * 100.0;
+					message.append(String.format(" (baseline %.1f ns/op, %+.1f%%)", baselineMedian, change));
+					if (change > benchmarkRegressionThreshold) {
+						regressions.add(message.toString());
+					}
+				} else {
+					// a percentage of zero is meaningless, and the benchmark
+					// is probably optimized away
+					message.append(String.format(" (baseline %.1f ns/op, not compared)", baselineMedian));
+				}
+			}
+			getLog().info(message.toString());
+		}
+
+		if (benchmarkUpdateBaseline) {
+			baselines.put(target, results);
+			try {
+				FileUtils.write(benchmarkBaselineFile, Json.stringify(baselines), Charset.forName("utf-8"));
+			} catch (IOException e) {
+				throw new MojoExecutionException("Fatal error writing benchmark baseline", e);
+			}
+			getLog().info("Updated benchmark baseline: " + benchmarkBaselineFile.getAbsolutePath());
+			return;
+		}
+		if (baseline == null) {
+			getLog().info("No benchmark baseline for target " + target
+					+ ". Set benchmarkUpdateBaseline to create one.");
+		}
+		if (regressions.size() > 0) {
+			throw new MojoFailureException("Benchmark regressions greater than " + benchmarkRegressionThreshold
+					+ "%:\n" + String.join("\n", regressions));
+		}
+	}
+
+	private static Map<String, Object> getStatistics(double[] samples) {
+		double[] sorted = Arrays.copyOf(samples, samples.length);
+		Arrays.sort(sorted);
+		double mean = Arrays.stream(sorted).average().orElse(0.0);
+		double variance = Arrays.stream(sorted).map(sample -> (sample - mean) * (sample - mean)).sum()
+				/ Math.max(1, sorted.length - 1);
+		double median = sorted.length % 2 == 1
+				? sorted[sorted.length / 2]
+				: (sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2.0;
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("median", median);
+		result.put("mean", mean);
+		result.put("min", sorted.length > 0 ? sorted[0] : 0.0);
+		result.put("max", sorted.length > 0 ? sorted[sorted.length - 1] : 0.0);
+		result.put("stddev", Math.sqrt(variance));
+		result.put("samples", sorted.length);
+		return result;
+	}
+}
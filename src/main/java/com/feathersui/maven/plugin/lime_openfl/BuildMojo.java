@@ -17,18 +17,42 @@ limitations under the License.
 package com.feathersui.maven.plugin.lime_openfl;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import com.feathersui.maven.plugin.minifier.JsCompiler;
+import com.feathersui.maven.plugin.utils.BuildManifest;
+import com.feathersui.maven.plugin.utils.BundleAnalyzer;
+import com.feathersui.maven.plugin.utils.CompileThreadPool;
+import com.feathersui.maven.plugin.utils.CompileTimesStreamConsumer;
+import com.feathersui.maven.plugin.utils.ContentHasher;
+import com.feathersui.maven.plugin.utils.GzipPrecompressor;
+import com.feathersui.maven.plugin.utils.JsMinifier;
+import com.feathersui.maven.plugin.utils.Json;
 import com.feathersui.maven.plugin.utils.LogOutputStream;
+import com.feathersui.maven.plugin.utils.ServiceWorkerGenerator;
+import com.feathersui.maven.plugin.utils.TraceRecorder;
 
+import org.apache.commons.io.FileUtils;
+
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 import org.codehaus.plexus.util.cli.WriterStreamConsumer;
+import org.w3c.dom.Element;
 
 /**
  * Builds a <a href="https://lime.software/">Lime</a>,
@@ -41,6 +65,13 @@ import org.codehaus.plexus.util.cli.WriterStreamConsumer;
  */
 @Mojo(name = "build", defaultPhase = LifecyclePhase.COMPILE)
 public class BuildMojo extends BaseBuildMojo {
+	private static final String BUILD_MANIFEST_PREFIX = "lime-build-manifest-";
+	private static final String[] CODE_ELEMENTS = { "source", "classpath" };
+	private static final String[] ASSET_ELEMENTS = { "assets", "icon", "launchImage", "splashScreen" };
+	private static final String[] OTHER_INPUT_ELEMENTS = { "template", "java", "dependency" };
+	private static final Set<String> ASSET_UPDATE_TARGETS = new HashSet<>(
+			Arrays.asList("html5", "windows", "mac", "macos", "linux", "neko", "hl"));
+
 	/**
 	 * Optionally sets the name of the output file using the {@code --app-file}
 	 * command line option.
@@ -48,60 +79,565 @@ public class BuildMojo extends BaseBuildMojo {
 	@Parameter
 	public String outputFileName;
 
+	/**
+	 * For the <em>html5</em> target, generates a source map with the
+	 * JavaScript output, and writes a <em>bundle-size</em> report to the
+	 * <em>lime-reports</em> directory that lists the largest files in the
+	 * <em>bin</em> directory, and the number of JavaScript bytes that were
+	 * compiled from each Haxe package and library.
+	 */
+	@Parameter(defaultValue = "false", property = "lime.bundleReport")
+	public boolean bundleReport;
+
+	/**
+	 * For the <em>html5</em> target, the maximum sizes of files in the
+	 * <em>bin</em> directory. The build fails if any budget is exceeded.
+	 * 
+	 * <pre>
+	 * {@code
+	 * <bundleBudgets>
+	 *   <bundleBudget>
+	 *     <path>*.js</path>
+	 *     <maxSize>512</maxSize>
+	 *     <gzip>true</gzip>
+	 *   </bundleBudget>
+	 * </bundleBudgets>
+	 * }
+	 * </pre>
+	 */
+	@Parameter
+	public BundleBudget[] bundleBudgets;
+
+	/**
+	 * For the <em>html5</em> target, the maximum total gzip-compressed size
+	 * of all files in the <em>bin</em> directory, in kilobytes. The build
+	 * fails if the budget is exceeded.
+	 */
+	@Parameter(property = "lime.bundleMaxTotalSize")
+	public Long bundleMaxTotalSize;
+
+	/**
+	 * For <em>html5</em> builds with {@link #isFinal} enabled, specify if the
+	 * JavaScript output should be minified with the Closure Compiler, which
+	 * runs inside the Maven process instead of requiring external tools.
+	 * Lime's own minification is disabled with the {@code -nominify} command
+	 * line option. A source map is generated with the output, and updated to
+	 * map the minified code to the original Haxe sources.
+	 */
+	@Parameter(defaultValue = "false", property = "lime.minify")
+	public boolean minify;
+
+	/**
+	 * The Closure Compiler compilation level, if {@link #minify} is enabled.
+	 * May be {@code WHITESPACE_ONLY}, {@code SIMPLE_OPTIMIZATIONS}, or
+	 * {@code ADVANCED_OPTIMIZATIONS}. Advanced optimizations rename
+	 * properties, which may break code that uses reflection or calls
+	 * JavaScript libraries without externs.
+	 */
+	@Parameter(defaultValue = "SIMPLE_OPTIMIZATIONS", property = "lime.minifyCompilationLevel")
+	public String minifyCompilationLevel;
+
+	/**
+	 * Optionally specify a custom location for the cache of minified
+	 * JavaScript, if {@link #minify} is enabled. JavaScript output that hasn't
+	 * changed since it was last minified is restored from the cache.
+	 */
+	@Parameter(defaultValue = "${user.home}/.lime-openfl-maven-plugin/minify-cache", property = "lime.minifyCacheDirectory")
+	public File minifyCacheDirectory;
+
+	/**
+	 * The maximum size of the cache of minified JavaScript, in megabytes.
+	 */
+	@Parameter(defaultValue = "512", property = "lime.minifyCacheMaxSize")
+	public long minifyCacheMaxSize;
+
+	/**
+	 * For the <em>html5</em> target, specify if JavaScript files, asset
+	 * manifests, assets, and library bundles should be renamed to include a
+	 * hash of their contents, such as <em>App.3f9a1c07d2.js</em>. References
+	 * in <em>index.html</em>, JavaScript files, and asset manifests are
+	 * updated to use the new names, and a <em>content-hashes.json</em> file
+	 * that maps the original names to the new names is written next to the
+	 * <em>bin</em> directory. Every renamed file may be served with
+	 * {@code Cache-Control: immutable}, and only <em>index.html</em> needs to
+	 * be revalidated. Files that aren't referenced by another file keep their
+	 * names. Asset-only updates are disabled, because changing an asset
+	 * changes the manifest that references it.
+	 */
+	@Parameter(defaultValue = "false", property = "lime.contentHash")
+	public boolean contentHash;
+
+	/**
+	 * For the <em>html5</em> target, specify if a service worker should be
+	 * generated and registered in <em>index.html</em>. It precaches the app
+	 * shell and every asset library that is preloaded, so that repeat visits
+	 * and offline starts load without the network. Asset libraries with
+	 * {@code preload="false"} are cached when they are first loaded. Each
+	 * precached file has a revision computed from its contents, so a new
+	 * build only downloads the files that have changed.
+	 */
+	@Parameter(defaultValue = "false", property = "lime.serviceWorker")
+	public boolean serviceWorker;
+
+	/**
+	 * The name of the generated service worker file in the <em>bin</em>
+	 * directory, if {@link #serviceWorker} is enabled.
+	 */
+	@Parameter(defaultValue = "service-worker.js", property = "lime.serviceWorkerFileName")
+	public String serviceWorkerFileName;
+
+	/**
+	 * Specify if the inputs of the build should be compared to the inputs of
+	 * the previous build, to skip work that isn't needed. If only the
+	 * contents of existing assets have changed, assets are copied with the
+	 * {@code lime update} command, and the code is not compiled again. Adding
+	 * or removing assets, changing any other input, and embedded assets
+	 * always require a full build. Asset-only updates are supported for the
+	 * <em>html5</em>, <em>windows</em>, <em>mac</em>, <em>linux</em>,
+	 * <em>neko</em>, and <em>hl</em> targets, where assets are not packaged
+	 * into an archive.
+	 */
+	@Parameter(defaultValue = "true", property = "lime.incremental")
+	public boolean incremental;
+
 	@Parameter(defaultValue = "${project.build.directory}", required = true, readonly = true)
-	private File buildDirectory;
+	protected File buildDirectory;
 
 	@Override
-	protected void build() throws CommandLineException, MojoFailureException {
+	protected void build() throws CommandLineException, MojoExecutionException, MojoFailureException {
 		getLog().debug("Building project: " + basedir.getName());
-		Commandline commandLine = new Commandline();
-		commandLine.setWorkingDirectory(basedir);
-		commandLine.setExecutable(getHaxelibPath());
-		commandLine.createArg().setValue("run");
-		commandLine.createArg().setValue("lime");
-		commandLine.createArg().setValue("build");
-		commandLine.createArg().setValue(projectFile.getAbsolutePath());
-		commandLine.createArg().setValue(target);
-		if (isDebug) {
-			commandLine.createArg().setValue("-debug");
-		}
-		if (isFinal) {
-			commandLine.createArg().setValue("-final");
+
+		File outputDirectory = new File(buildDirectory, getTargetOutputDirectoryName());
+		List<String> extraValues = Arrays.asList(outputFileName != null ? outputFileName : "",
+				Boolean.toString(bundleReport), isMinifyEnabled() ? "minify:" + minifyCompilationLevel : "",
+				isContentHashEnabled() ? "contentHash" : "",
+				isServiceWorkerEnabled() ? "serviceWorker:" + serviceWorkerFileName : "");
+		String buildCacheKey = getBuildCacheKey(Collections.emptyList(), extraValues);
+
+		File manifestFile = new File(buildDirectory, BUILD_MANIFEST_PREFIX + getTargetOutputDirectoryName() + ".json");
+		BuildManifest manifest = createBuildManifest(extraValues);
+		BuildManifest previousManifest = BuildManifest.read(manifestFile);
+		// if the build fails, the next build must be a full build
+		FileUtils.deleteQuietly(manifestFile);
+
+		if (restoreFromBuildCache(buildCacheKey, outputDirectory)) {
+			writeBuildManifest(manifest, manifestFile);
+			buildContext.refresh(outputDirectory);
+			analyzeBundle();
+			return;
 		}
+
+		String command = "build";
+		if (manifest != null && outputDirectory.isDirectory()) {
+			BuildManifest.Change change = manifest.compare(previousManifest);
+			getLog().debug("Changes since previous build: " + change);
+			if (BuildManifest.Change.ASSETS_ONLY.equals(change) && canUpdateAssetsOnly()) {
+				getLog().info("Only assets have changed. Updating assets without compiling.");
+				command = "update";
+			}
+		}
+		boolean compiling = "build".equals(command);
+
+		Commandline commandLine = createLimeCommandLine(command);
+		addBuildArgs(commandLine);
 		commandLine.createArg().setValue("--app-path=" + buildDirectory.getAbsolutePath());
 		if (outputFileName != null) {
 			commandLine.createArg().setValue("--app-file=" + outputFileName);
 		}
-		if (additionalSources != null) {
-			for (String current : additionalSources) {
-				commandLine.createArg().setValue("--source=" + current);
+
+		if (isMinifyEnabled()) {
+			commandLine.createArg().setValue("-nominify");
+		}
+		if ((bundleReport || isMinifyEnabled()) && "html5".equals(target)) {
+			commandLine.createArg().setValue("--haxedef=source-map");
+		}
+
+		addProfileCompileArgs(commandLine);
+		configureCompileCache(commandLine);
+		configureBuild(commandLine);
+
+		CompileTimesStreamConsumer systemOut = new CompileTimesStreamConsumer(new WriterStreamConsumer(
+				new OutputStreamWriter(new LogOutputStream(getLog(), false))));
+		CompileTimesStreamConsumer systemErr = new CompileTimesStreamConsumer(new WriterStreamConsumer(
+				new OutputStreamWriter(new LogOutputStream(getLog(), true))));
+
+		long startTime = 0;
+		int exitCode = 1;
+		try (CompileThreadPool.Lease compileThreadsLease = acquireCompileThreads(commandLine)) {
+			startTime = System.currentTimeMillis();
+			exitCode = executeLime(commandLine, systemOut, systemErr);
+		}
+		if (profileCompile && compiling && exitCode == 0) {
+			writeCompileTimesReport("compile-times", System.currentTimeMillis() - startTime, systemOut, systemErr);
+		}
+		cleanCompileCache();
+		if (exitCode != 0) {
+			throw new MojoFailureException("Lime build failure. Process exited with code: " + exitCode);
+		}
+
+		if (compiling) {
+			minifyOutput();
+		}
+		hashOutput();
+		generateServiceWorker();
+		precompressOutput(new File(buildDirectory, "html5/bin"));
+		storeInBuildCache(buildCacheKey, outputDirectory);
+		writeBuildManifest(manifest, manifestFile);
+		buildContext.refresh(outputDirectory);
+		analyzeBundle();
+	}
+
+	/**
+	 * Records the inputs of the build, grouped by whether they are code,
+	 * assets, or something else. Returns {@code null} if
+	 * {@link #incremental} is disabled.
+	 */
+	private BuildManifest createBuildManifest(List<String> extraValues) throws MojoExecutionException {
+		if (!incremental) {
+			return null;
+		}
+		BuildManifest manifest = new BuildManifest(getBuildConfigHash(extraValues));
+		try {
+			List<File> codePaths = getProjectPaths(getProjectElements(CODE_ELEMENTS));
+			if (additionalSources != null) {
+				for (String current : additionalSources) {
+					File file = new File(current);
+					codePaths.add(file.isAbsolute() ? file : new File(basedir, current));
+				}
+			}
+			// libraries installed with haxelib dev may change between builds
+			for (String classPath : haxelibClassPaths.keySet()) {
+				codePaths.add(new File(classPath));
 			}
+			addBuildManifestInputs(manifest, BuildManifest.Kind.CODE, codePaths);
+			addBuildManifestInputs(manifest, BuildManifest.Kind.ASSETS,
+					getProjectPaths(getProjectElements(ASSET_ELEMENTS)));
+			addBuildManifestInputs(manifest, BuildManifest.Kind.OTHER,
+					getProjectPaths(getProjectElements(OTHER_INPUT_ELEMENTS)));
+		} catch (Exception e) {
+			throw new MojoExecutionException("Fatal error reading build inputs", e);
+		}
+		return manifest;
+	}
+
+	private void addBuildManifestInputs(BuildManifest manifest, BuildManifest.Kind kind, List<File> paths)
+			throws IOException {
+		for (File path : paths) {
+			manifest.addInputs(kind, toCacheKeyPath(path), path);
+		}
+	}
+
+	private void writeBuildManifest(BuildManifest manifest, File manifestFile) {
+		if (manifest == null) {
+			return;
+		}
+		try {
+			manifest.write(manifestFile);
+		} catch (IOException e) {
+			// the next build will be a full build
+			getLog().warn("Failed to write build manifest: " + e.getMessage());
 		}
-		if (additionalDependencies != null) {
-			for (String current : additionalDependencies) {
-				commandLine.createArg().setValue("--dependency=" + current);
+	}
+
+	/**
+	 * Returns {@code true} if assets may be updated without compiling.
+	 * Embedded assets are compiled into the code, and some targets package
+	 * assets into an archive during the build.
+	 */
+	private boolean canUpdateAssetsOnly() throws MojoExecutionException {
+		if (!ASSET_UPDATE_TARGETS.contains(target) || isContentHashEnabled()) {
+			return false;
+		}
+		try {
+			for (Element element : getProjectElements("assets", "library")) {
+				if ("true".equals(element.getAttribute("embed"))) {
+					return false;
+				}
 			}
+		} catch (Exception e) {
+			throw new MojoExecutionException("Fatal error reading Lime project file", e);
 		}
-		if (additionalHaxedefs != null) {
-			for (String current : additionalHaxedefs) {
-				commandLine.createArg().setValue("--haxedef=" + current);
+		return true;
+	}
+
+	private boolean isMinifyEnabled() {
+		return minify && isFinal && "html5".equals(target);
+	}
+
+	private void minifyOutput() throws MojoExecutionException, MojoFailureException {
+		try (TraceRecorder.Span span = traceSpan("output", "minify")) {
+			if (!isMinifyEnabled()) {
+				return;
+			}
+			// libraries in subdirectories are copied from Lime's templates, and
+			// they are usually minified already
+			File[] jsFiles = new File(buildDirectory, "html5/bin").listFiles(
+					file -> file.isFile() && file.getName().endsWith(".js") && !file.getName().endsWith(".min.js"));
+			if (jsFiles == null) {
+				return;
+			}
+			JsCompiler compiler = null;
+			try {
+				compiler = loadJsCompiler();
+			} catch (IOException e) {
+				throw new MojoExecutionException("Fatal error loading JavaScript minifier", e);
+			}
+			JsMinifier minifier = new JsMinifier(compiler, minifyCompilationLevel, minifyCacheDirectory,
+					minifyCacheMaxSize * 1024L * 1024L);
+			for (File jsFile : jsFiles) {
+				long startTime = System.currentTimeMillis();
+				long originalSize = jsFile.length();
+				boolean cached = false;
+				try {
+					cached = minifier.minify(jsFile);
+				} catch (IllegalArgumentException e) {
+					throw new MojoFailureException(e.getMessage());
+				} catch (IOException e) {
+					throw new MojoFailureException("JavaScript minification failure. " + e.getMessage(), e);
+				}
+				getLog().info(String.format("Minified %s from %d KB to %d KB%s in %.3fs", jsFile.getName(),
+						originalSize / 1024L, jsFile.length() / 1024L, cached ? " (cached)" : "",
+						(System.currentTimeMillis() - startTime) / 1000.0));
 			}
 		}
-		if (additionalHaxelibs != null) {
-			for (String current : additionalHaxelibs) {
-				commandLine.createArg().setValue("--haxelib=" + current);
+	}
+
+	private boolean isContentHashEnabled() {
+		return contentHash && "html5".equals(target);
+	}
+
+	private void hashOutput() throws MojoExecutionException {
+		try (TraceRecorder.Span span = traceSpan("output", "content hash")) {
+			if (!"html5".equals(target)) {
+				return;
+			}
+			File binDirectory = new File(buildDirectory, "html5/bin");
+			ContentHasher hasher = new ContentHasher(binDirectory);
+			if (isServiceWorkerEnabled()) {
+				// the previous build's worker is replaced after hashing, and
+				// its list of precached files isn't a real reference
+				File serviceWorkerFile = new File(binDirectory, serviceWorkerFileName);
+				FileUtils.deleteQuietly(serviceWorkerFile);
+				FileUtils.deleteQuietly(new File(serviceWorkerFile.getPath() + GzipPrecompressor.EXTENSION));
+				hasher.exclude(serviceWorkerFileName);
+			}
+			if (!contentHash) {
+				// stale mappings would make the dev server cache files forever
+				FileUtils.deleteQuietly(hasher.getMappingFile());
+				return;
 			}
+			Map<String, String> mapping = null;
+			try {
+				mapping = hasher.hash();
+			} catch (IOException e) {
+				throw new MojoExecutionException("Fatal error hashing html5 output", e);
+			}
+			span.arg("files", mapping.size());
+			getLog().info("Renamed " + mapping.size() + " files with content hashes: "
+					+ hasher.getMappingFile().getAbsolutePath());
 		}
+	}
 
-		WriterStreamConsumer systemOut = new WriterStreamConsumer(
-				new OutputStreamWriter(new LogOutputStream(getLog(), false)));
-		WriterStreamConsumer systemErr = new WriterStreamConsumer(
-				new OutputStreamWriter(new LogOutputStream(getLog(), true)));
+	private boolean isServiceWorkerEnabled() {
+		return serviceWorker && "html5".equals(target);
+	}
 
-		int exitCode = CommandLineUtils.executeCommandLine(commandLine, systemOut, systemErr);
-		if (exitCode == 0) {
-			return;
+	private void generateServiceWorker() throws MojoExecutionException {
+		try (TraceRecorder.Span span = traceSpan("output", "service worker")) {
+			if (!isServiceWorkerEnabled()) {
+				return;
+			}
+			File binDirectory = new File(buildDirectory, "html5/bin");
+			List<String> precachedPaths = null;
+			try {
+				Map<String, String> hashedPaths = isContentHashEnabled()
+						? ContentHasher.readMapping(new ContentHasher(binDirectory).getMappingFile())
+						: Collections.emptyMap();
+				ServiceWorkerGenerator generator = new ServiceWorkerGenerator(binDirectory, serviceWorkerFileName);
+				precachedPaths = generator.generate(getLazyLibraries(), hashedPaths);
+			} catch (MojoExecutionException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new MojoExecutionException("Fatal error generating service worker", e);
+			}
+			span.arg("files", precachedPaths.size());
+			getLog().info("Generated service worker that precaches " + precachedPaths.size() + " files: "
+					+ new File(binDirectory, serviceWorkerFileName).getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Returns the names of the asset libraries that are not preloaded.
+	 */
+	private Set<String> getLazyLibraries() throws Exception {
+		Set<String> result = new HashSet<>();
+		Set<String> preloaded = new HashSet<>();
+		for (Element element : getProjectElements("assets", "library")) {
+			if ("assets".equals(element.getTagName())) {
+				if (element.hasAttribute("library")) {
+					result.add(element.getAttribute("library"));
+				}
+				continue;
+			}
+			String name = element.hasAttribute("name") ? element.getAttribute("name") : element.getAttribute("id");
+			if ("true".equals(element.getAttribute("preload"))) {
+				preloaded.add(name);
+			} else {
+				result.add(name);
+			}
+		}
+		result.removeAll(preloaded);
+		return result;
+	}
+
+	private void analyzeBundle() throws MojoExecutionException, MojoFailureException {
+		try (TraceRecorder.Span span = traceSpan("output", "analyze bundle")) {
+			boolean hasBudgets = (bundleBudgets != null && bundleBudgets.length > 0) || bundleMaxTotalSize != null;
+			if (!"html5".equals(target) || (!bundleReport && !hasBudgets)) {
+				return;
+			}
+			File binDirectory = new File(buildDirectory, "html5/bin");
+			List<BundleAnalyzer.FileSize> fileSizes = null;
+			try {
+				fileSizes = BundleAnalyzer.measureFiles(binDirectory);
+			} catch (Exception e) {
+				throw new MojoExecutionException("Fatal error measuring bundle size", e);
+			}
+			if (bundleReport) {
+				writeBundleReport(binDirectory, fileSizes);
+			}
+			checkBundleBudgets(fileSizes);
+		}
+	}
+
+	private void writeBundleReport(File binDirectory, List<BundleAnalyzer.FileSize> fileSizes)
+			throws MojoExecutionException {
+		long totalBytes = 0;
+		long totalGzipBytes = 0;
+		for (BundleAnalyzer.FileSize fileSize : fileSizes) {
+			totalBytes += fileSize.bytes;
+			totalGzipBytes += fileSize.gzipBytes;
+		}
+
+		StringBuilder textBuilder = new StringBuilder();
+		textBuilder.append(String.format("Total size: %d bytes (%d bytes gzip)\n", totalBytes, totalGzipBytes));
+		textBuilder.append("\n");
+		textBuilder.append(String.format("%12s %12s  %s\n", "bytes", "gzip", "file"));
+		List<Map<String, Object>> jsonFiles = new ArrayList<>();
+		for (BundleAnalyzer.FileSize fileSize : fileSizes) {
+			textBuilder.append(String.format("%12d %12d  %s\n", fileSize.bytes, fileSize.gzipBytes, fileSize.path));
+
+			Map<String, Object> jsonFile = new LinkedHashMap<>();
+			jsonFile.put("path", fileSize.path);
+			jsonFile.put("bytes", fileSize.bytes);
+			jsonFile.put("gzipBytes", fileSize.gzipBytes);
+			jsonFiles.add(jsonFile);
+		}
+
+		Map<String, Object> jsonScripts = new LinkedHashMap<>();
+		try {
+			BundleAnalyzer analyzer = new BundleAnalyzer(getBundleClassPaths());
+			for (BundleAnalyzer.FileSize fileSize : fileSizes) {
+				if (!fileSize.path.endsWith(".js")) {
+					continue;
+				}
+				Map<String, Map<String, Long>> attribution = analyzer.attribute(new File(binDirectory, fileSize.path));
+				if (attribution == null) {
+					continue;
+				}
+				jsonScripts.put(fileSize.path, attribution);
+				for (Map.Entry<String, Map<String, Long>> group : attribution.entrySet()) {
+					textBuilder.append("\n");
+					textBuilder.append(String.format("%12s %6s  %s (%s)\n", "bytes", "%", group.getKey(), fileSize.path));
+					for (Map.Entry<String, Long> entry : group.getValue().entrySet()) {
+						double percent = fileSize.bytes > 0 ? (entry.getValue() * 100.0) / fileSize.bytes : 0.0;
+						textBuilder.append(String.format("%12d %6.1f  %s\n", entry.getValue(), percent, entry.getKey()));
+					}
+				}
+			}
+		} catch (Exception e) {
+			throw new MojoExecutionException("Fatal error reading source map", e);
+		}
+		if (jsonScripts.size() == 0) {
+			getLog().warn("No source maps found in html5 output. Bundle report will not include Haxe packages.");
+		}
+
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("totalBytes", totalBytes);
+		json.put("totalGzipBytes", totalGzipBytes);
+		json.put("files", jsonFiles);
+		json.put("scripts", jsonScripts);
+
+		File textFile = new File(reportsDirectory, "bundle-size.txt");
+		File jsonFile = new File(reportsDirectory, "bundle-size.json");
+		try {
+			FileUtils.write(textFile, textBuilder.toString(), Charset.forName("utf-8"));
+			FileUtils.write(jsonFile, Json.stringify(json), Charset.forName("utf-8"));
+		} catch (Exception e) {
+			throw new MojoExecutionException("Fatal error writing bundle size report", e);
+		}
+		getLog().info("Bundle size report: " + textFile.getAbsolutePath());
+	}
+
+	private Map<String, String> getBundleClassPaths() throws Exception {
+		Map<String, String> result = new LinkedHashMap<>();
+		for (Map.Entry<String, String> entry : haxelibClassPaths.entrySet()) {
+			result.put(new File(entry.getKey()).getAbsoluteFile().toPath().normalize().toString(), entry.getValue());
 		}
-		throw new MojoFailureException("Lime build failure. Process exited with code: " + exitCode);
+		for (File sourcePath : getProjectPaths(getProjectElements("source", "classpath"))) {
+			result.put(sourcePath.getAbsoluteFile().toPath().normalize().toString(), BundleAnalyzer.PROJECT_LABEL);
+		}
+		if (additionalSources != null) {
+			for (String current : additionalSources) {
+				File sourcePath = new File(current);
+				if (!sourcePath.isAbsolute()) {
+					sourcePath = new File(basedir, current);
+				}
+				result.put(sourcePath.getAbsoluteFile().toPath().normalize().toString(), BundleAnalyzer.PROJECT_LABEL);
+			}
+		}
+		return result;
+	}
+
+	private void checkBundleBudgets(List<BundleAnalyzer.FileSize> fileSizes) throws MojoFailureException {
+		List<String> violations = new ArrayList<>();
+		if (bundleBudgets != null) {
+			for (BundleBudget budget : bundleBudgets) {
+				if (budget.path == null || budget.maxSize == null) {
+					throw new MojoFailureException("Bundle budget requires path and maxSize");
+				}
+				boolean gzip = budget.gzip != null && budget.gzip;
+				for (BundleAnalyzer.FileSize fileSize : fileSizes) {
+					if (!BundleAnalyzer.matchesGlob(budget.path, fileSize.path)) {
+						continue;
+					}
+					long bytes = gzip ? fileSize.gzipBytes : fileSize.bytes;
+					if (bytes > budget.maxSize * 1024) {
+						violations.add(String.format("%s is %.1f KB%s, which exceeds the budget of %d KB for %s",
+								fileSize.path, bytes / 1024.0, gzip ? " gzip" : "", budget.maxSize, budget.path));
+					}
+				}
+			}
+		}
+		if (bundleMaxTotalSize != null) {
+			long totalGzipBytes = 0;
+			for (BundleAnalyzer.FileSize fileSize : fileSizes) {
+				totalGzipBytes += fileSize.gzipBytes;
+			}
+			if (totalGzipBytes > bundleMaxTotalSize * 1024) {
+				violations.add(String.format("Total size is %.1f KB gzip, which exceeds the budget of %d KB",
+						totalGzipBytes / 1024.0, bundleMaxTotalSize));
+			}
+		}
+		if (violations.size() > 0) {
+			throw new MojoFailureException("Bundle size budget exceeded:\n" + String.join("\n", violations));
+		}
+	}
+
+	/**
+	 * Subclasses may add arguments or environment variables to the
+	 * {@code lime build} command.
+	 */
+	protected void configureBuild(Commandline commandLine) {
 	}
-}
\ No newline at end of file
+}
@@ -22,12 +22,21 @@ import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import com.feathersui.maven.plugin.utils.CompileThreadPool;
+import com.feathersui.maven.plugin.utils.CompileTimesStreamConsumer;
 import com.feathersui.maven.plugin.utils.LogOutputStream;
+import com.feathersui.maven.plugin.utils.TraceRecorder;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -36,9 +45,9 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 import org.codehaus.plexus.util.cli.WriterStreamConsumer;
+import org.w3c.dom.Element;
 
 /**
  * Detects and builds the <a href="https://lib.haxe.org/p/utest/">utest</a>
@@ -57,6 +66,9 @@ public class BuildTestsMojo extends BaseBuildMojo {
 			.compile("\\bclass\\s+\\w+\\s+extends\\s+(?:utest\\.)?Test\\b");
 	private static final Pattern extendsPatternWithoutImport = Pattern
 			.compile("\\bclass\\s+\\w+\\s+extends\\s+utest\\.Test\\b");
+	private static final Pattern limeTestPattern = Pattern.compile("@:limeTest\\b");
+	// display libraries that can't be used without a Lime target
+	private static final List<String> INTERP_EXCLUDED_HAXELIBS = Arrays.asList("lime", "openfl");
 
 	@Parameter(defaultValue = "${project.build.directory}", required = true, readonly = true)
 	private File buildDirectory;
@@ -76,12 +88,40 @@ public class BuildTestsMojo extends BaseBuildMojo {
 	@Parameter(property = "maven.test.skip", readonly = true)
 	private boolean skip;
 
+	/**
+	 * Specifies how tests are built and run. The default, <em>lime</em>,
+	 * builds the tests as a Lime app for the current target. With
+	 * <em>interp</em>, tests are compiled with plain Haxe and run on the
+	 * Haxe interpreter ({@code haxe --interp}), and with <em>hl</em>, they
+	 * are compiled to HashLink bytecode, which skips asset processing, the
+	 * app template, and the browser.
+	 *
+	 * <p>
+	 * In <em>interp</em> and <em>hl</em> modes, the <em>lime</em> and
+	 * <em>openfl</em> libraries aren't available, and {@code <source>},
+	 * {@code <haxelib>}, and {@code <haxedef>} elements of the
+	 * <em>project.xml</em> file with {@code if} or {@code unless} conditions
+	 * are ignored. Test classes that need Lime should be marked with
+	 * {@code @:limeTest} metadata, and they are still built and run as a
+	 * Lime app.
+	 * </p>
+	 */
+	@Parameter(defaultValue = "lime", property = "lime.testMode")
+	public String testMode;
+
 	@Override
 	protected void checkHaxelibs() throws Exception {
 		super.checkHaxelibs();
 		checkHaxelib("utest", null);
 	}
 
+	@Override
+	protected List<File> getIncrementalInputs() throws Exception {
+		List<File> result = super.getIncrementalInputs();
+		result.add(testSrcDirectory);
+		return result;
+	}
+
 	@Override
 	protected void build() throws CommandLineException, MojoFailureException, MojoExecutionException {
 		if (skip) {
@@ -89,89 +129,102 @@ public class BuildTestsMojo extends BaseBuildMojo {
 			return;
 		}
 
-		try {
-			boolean hasTests = generateTestSources();
-			if (!hasTests) {
-				project.getProperties().setProperty("maven.test.skip", "true");
-				return;
-			}
+		Map<String, Boolean> testClasses = null;
+		try (TraceRecorder.Span span = traceSpan("tests", "discover tests")) {
+			testClasses = findTestClasses();
+			span.arg("testClasses", testClasses.size());
 		} catch (Exception e) {
 			throw new MojoFailureException("Failed to generate Lime tests sources");
 		}
+		if (testClasses.size() == 0) {
+			project.getProperties().setProperty("maven.test.skip", "true");
+			return;
+		}
+
+		List<String> limeTestClasses = new ArrayList<>(testClasses.keySet());
+		if (isInterpTestMode()) {
+			List<String> interpTestClasses = testClasses.entrySet().stream().filter(entry -> !entry.getValue())
+					.map(Map.Entry::getKey).collect(Collectors.toList());
+			limeTestClasses = testClasses.entrySet().stream().filter(Map.Entry::getValue).map(Map.Entry::getKey)
+					.collect(Collectors.toList());
+			buildInterpTests(interpTestClasses);
+			project.getProperties().setProperty(TestMojo.LIME_SUITE_PROPERTY,
+					Boolean.toString(limeTestClasses.size() > 0));
+			if (limeTestClasses.size() == 0) {
+				return;
+			}
+		}
+		generateTestSources(limeTestClasses);
 
 		getLog().debug("Building tests: " + basedir.getName());
 
-		Commandline commandLine = new Commandline();
-		commandLine.setWorkingDirectory(basedir);
-		commandLine.setExecutable(getHaxelibPath());
-		commandLine.createArg().setValue("run");
-		commandLine.createArg().setValue("lime");
-		commandLine.createArg().setValue("build");
-		commandLine.createArg().setValue(projectFile.getAbsolutePath());
-		commandLine.createArg().setValue(target);
-		if (isDebug) {
-			commandLine.createArg().setValue("-debug");
-		}
-		if (isFinal) {
-			commandLine.createArg().setValue("-final");
+		File outputDirectory = new File(testBuildDirectory, getTargetOutputDirectoryName());
+		String buildCacheKey = getBuildCacheKey(Arrays.asList(testSrcDirectory, testGeneratedSrcDirectory),
+				Collections.emptyList());
+		if (restoreFromBuildCache(buildCacheKey, outputDirectory)) {
+			return;
 		}
+
+		Commandline commandLine = createLimeCommandLine("build");
+		addBuildArgs(commandLine);
 		commandLine.createArg().setValue("--source=" + testSrcDirectory.getAbsolutePath());
 		commandLine.createArg().setValue("--source=" + testGeneratedSrcDirectory.getAbsolutePath());
 		commandLine.createArg().setValue("--app-path=" + testBuildDirectory.getAbsolutePath());
 		commandLine.createArg().setValue("--app-file=TestsMain");
 		commandLine.createArg().setValue("--app-main=TestsMain");
 		commandLine.createArg().setValue("--haxelib=utest");
-		if (additionalSources != null) {
-			for (String current : additionalSources) {
-				commandLine.createArg().setValue("--source=" + current);
-			}
-		}
-		if (additionalDependencies != null) {
-			for (String current : additionalDependencies) {
-				commandLine.createArg().setValue("--dependency=" + current);
-			}
-		}
-		if (additionalHaxedefs != null) {
-			for (String current : additionalHaxedefs) {
-				commandLine.createArg().setValue("--haxedef=" + current);
-			}
-		}
-		if (additionalHaxelibs != null) {
-			for (String current : additionalHaxelibs) {
-				commandLine.createArg().setValue("--haxelib=" + current);
-			}
-		}
 
-		WriterStreamConsumer systemOut = new WriterStreamConsumer(
-				new OutputStreamWriter(new LogOutputStream(getLog(), false)));
-		WriterStreamConsumer systemErr = new WriterStreamConsumer(
-				new OutputStreamWriter(new LogOutputStream(getLog(), true)));
+		addProfileCompileArgs(commandLine);
+		configureCompileCache(commandLine);
+
+		CompileTimesStreamConsumer systemOut = new CompileTimesStreamConsumer(new WriterStreamConsumer(
+				new OutputStreamWriter(new LogOutputStream(getLog(), false))));
+		CompileTimesStreamConsumer systemErr = new CompileTimesStreamConsumer(new WriterStreamConsumer(
+				new OutputStreamWriter(new LogOutputStream(getLog(), true))));
 
-		int exitCode = CommandLineUtils.executeCommandLine(commandLine, systemOut, systemErr);
+		long startTime = 0;
+		int exitCode = 1;
+		try (CompileThreadPool.Lease compileThreadsLease = acquireCompileThreads(commandLine)) {
+			startTime = System.currentTimeMillis();
+			exitCode = executeLime(commandLine, systemOut, systemErr);
+		}
+		if (profileCompile && exitCode == 0) {
+			writeCompileTimesReport("test-compile-times", System.currentTimeMillis() - startTime, systemOut, systemErr);
+		}
+		cleanCompileCache();
 		if (exitCode != 0) {
 			throw new MojoFailureException("Lime test build failure. Process exited with code: " + exitCode);
 		}
 
 		if ("html5".equals(target)) {
 			generateTestIndex();
+			precompressOutput(new File(testBuildDirectory, "html5/bin"));
 		}
+		storeInBuildCache(buildCacheKey, outputDirectory);
+		buildContext.refresh(outputDirectory);
 	}
 
-	protected boolean generateTestSources() throws MojoExecutionException, IOException {
+	/**
+	 * Returns the qualified names of the test classes, and whether each one
+	 * has {@code @:limeTest} metadata.
+	 */
+	protected Map<String, Boolean> findTestClasses() throws IOException {
+		Map<String, Boolean> result = new LinkedHashMap<>();
 		if (!testSrcDirectory.exists()) {
-			return false;
+			return result;
 		}
 		Path testSrcDirectoryPath = testSrcDirectory.toPath();
-		List<String> testQualifiedNames = Files.walk(testSrcDirectoryPath).map(Path::toFile).filter((File file) -> {
-			if (!file.getName().endsWith(".hx")) {
-				return false;
-			}
-
+		List<File> testFiles = null;
+		try (Stream<Path> stream = Files.walk(testSrcDirectoryPath)) {
+			testFiles = stream.map(Path::toFile).filter(file -> file.getName().endsWith(".hx")).sorted()
+					.collect(Collectors.toList());
+		}
+		for (File file : testFiles) {
 			String fileText;
 			try {
 				fileText = FileUtils.readFileToString(file, Charset.forName("utf-8"));
 			} catch (IOException e) {
-				return false;
+				continue;
 			}
 
 			Matcher importMatcher = importPattern.matcher(fileText);
@@ -187,17 +240,17 @@ public class BuildTestsMojo extends BaseBuildMojo {
 			}
 
 			if (!hasExtends) {
-				return false;
+				continue;
 			}
 
-			return true;
-		}).map(File::toPath).map(path -> testSrcDirectoryPath.relativize(path).toString().replace("/", ".")
-				.replace("\\", ".").replace(".hx", "")).collect(Collectors.toList());
-
-		if (testQualifiedNames.size() == 0) {
-			return false;
+			String qualifiedName = testSrcDirectoryPath.relativize(file.toPath()).toString().replace("/", ".")
+					.replace("\\", ".").replace(".hx", "");
+			result.put(qualifiedName, limeTestPattern.matcher(fileText).find());
 		}
+		return result;
+	}
 
+	protected void generateTestSources(List<String> testQualifiedNames) throws MojoExecutionException {
 		StringBuilder mainBuilder = new StringBuilder()
 				.append("import openfl.display.Sprite;\n")
 				.append("import utest.Runner;\n")
@@ -231,8 +284,146 @@ public class BuildTestsMojo extends BaseBuildMojo {
 		} catch (Exception e) {
 			throw new MojoExecutionException("Fatal error generating Lime tests project file", e);
 		}
+	}
+
+	private boolean isInterpTestMode() throws MojoFailureException {
+		switch (testMode) {
+			case "lime":
+				return false;
+			case "interp":
+			case "hl":
+				return true;
+			default:
+				throw new MojoFailureException("Unknown testMode: " + testMode);
+		}
+	}
 
-		return true;
+	/**
+	 * Generates a <em>.hxml</em> file that compiles the tests with plain
+	 * Haxe, without Lime. In <em>hl</em> mode, the bytecode is compiled
+	 * immediately. In <em>interp</em> mode, compiling and running are a
+	 * single step, so the test goal runs the <em>.hxml</em> file.
+	 */
+	private void buildInterpTests(List<String> testQualifiedNames)
+			throws CommandLineException, MojoExecutionException, MojoFailureException {
+		File interpBuildDirectory = new File(testBuildDirectory, TestMojo.INTERP_DIRECTORY_NAME);
+		File interpSrcDirectory = new File(interpBuildDirectory, "src");
+		File hxmlFile = new File(interpBuildDirectory, TestMojo.INTERP_HXML_FILE_NAME);
+		if (testQualifiedNames.size() == 0) {
+			try {
+				FileUtils.deleteDirectory(interpBuildDirectory);
+			} catch (IOException e) {
+				throw new MojoExecutionException("Fatal error cleaning Haxe tests", e);
+			}
+			return;
+		}
+
+		StringBuilder mainBuilder = new StringBuilder()
+				.append("import utest.Runner;\n")
+				.append("class InterpTestsMain {\n")
+				.append("  public static function main():Void {\n")
+				.append("    var runner = new Runner();\n");
+		for (String qualifiedName : testQualifiedNames) {
+			mainBuilder.append("    runner.addCase(new ")
+					.append(qualifiedName)
+					.append("());\n");
+		}
+		mainBuilder
+				.append("    new utest.ui.text.PrintReport(runner);\n")
+				.append("    var aggregator = new utest.ui.common.ResultAggregator(runner, true);\n")
+				.append("    aggregator.onComplete.add(function(result:utest.ui.common.PackageResult):Void {\n")
+				.append("      Sys.exit(result.stats.isOk ? 0 : 1);\n")
+				.append("    });\n")
+				.append("    runner.run();\n")
+				.append("  }\n")
+				.append("}\n");
+
+		StringBuilder hxmlBuilder = new StringBuilder();
+		try {
+			hxmlBuilder.append("-cp ").append(interpSrcDirectory.getAbsolutePath()).append("\n");
+			hxmlBuilder.append("-cp ").append(testSrcDirectory.getAbsolutePath()).append("\n");
+			List<Element> elements = getProjectElements("source", "classpath", "haxelib", "haxedef");
+			elements = elements.stream()
+					.filter(element -> !element.hasAttribute("if") && !element.hasAttribute("unless"))
+					.collect(Collectors.toList());
+			for (File sourcePath : getProjectPaths(elements)) {
+				if (sourcePath.isDirectory()) {
+					hxmlBuilder.append("-cp ").append(sourcePath.getAbsolutePath()).append("\n");
+				}
+			}
+			if (additionalSources != null) {
+				for (String current : additionalSources) {
+					File file = new File(current);
+					file = file.isAbsolute() ? file : new File(basedir, current);
+					hxmlBuilder.append("-cp ").append(file.getAbsolutePath()).append("\n");
+				}
+			}
+			List<String> haxelibs = new ArrayList<>();
+			for (Element element : elements) {
+				String name = element.getAttribute("name");
+				if (name.length() == 0) {
+					continue;
+				}
+				if ("haxelib".equals(element.getTagName())) {
+					String version = element.getAttribute("version");
+					haxelibs.add(version.length() > 0 ? name + ":" + version : name);
+				} else if ("haxedef".equals(element.getTagName())) {
+					String value = element.getAttribute("value");
+					hxmlBuilder.append("-D ").append(value.length() > 0 ? name + "=" + value : name).append("\n");
+				}
+			}
+			haxelibs.add("utest");
+			if (additionalHaxelibs != null) {
+				haxelibs.addAll(Arrays.asList(additionalHaxelibs));
+			}
+			for (String haxelib : haxelibs) {
+				if (INTERP_EXCLUDED_HAXELIBS.contains(haxelib.split(":")[0])) {
+					continue;
+				}
+				hxmlBuilder.append("-lib ").append(haxelib).append("\n");
+			}
+			if (additionalHaxedefs != null) {
+				for (String current : additionalHaxedefs) {
+					hxmlBuilder.append("-D ").append(current).append("\n");
+				}
+			}
+			if (isDebug) {
+				hxmlBuilder.append("--debug\n");
+			}
+			hxmlBuilder.append("-main InterpTestsMain\n");
+			if ("hl".equals(testMode)) {
+				hxmlBuilder.append("--hl ").append(TestMojo.INTERP_HL_FILE_NAME).append("\n");
+			} else {
+				hxmlBuilder.append("--interp\n");
+			}
+
+			FileUtils.deleteDirectory(interpSrcDirectory);
+			FileUtils.write(new File(interpSrcDirectory, "InterpTestsMain.hx"), mainBuilder.toString(),
+					Charset.forName("utf-8"));
+			FileUtils.write(hxmlFile, hxmlBuilder.toString(), Charset.forName("utf-8"));
+		} catch (Exception e) {
+			throw new MojoExecutionException("Fatal error generating Haxe tests", e);
+		}
+
+		if (!"hl".equals(testMode)) {
+			return;
+		}
+
+		getLog().debug("Building HashLink tests: " + basedir.getName());
+		Commandline commandLine = new Commandline();
+		commandLine.setWorkingDirectory(interpBuildDirectory);
+		commandLine.setExecutable(getHaxePath());
+		configureHaxelibRepository(commandLine);
+		commandLine.createArg().setValue(hxmlFile.getName());
+
+		WriterStreamConsumer systemOut = new WriterStreamConsumer(
+				new OutputStreamWriter(new LogOutputStream(getLog(), false)));
+		WriterStreamConsumer systemErr = new WriterStreamConsumer(
+				new OutputStreamWriter(new LogOutputStream(getLog(), true)));
+		int exitCode = executeCommandLine("haxe " + hxmlFile.getName(), commandLine, systemOut, systemErr);
+		if (exitCode != 0) {
+			throw new MojoFailureException("Haxe test build failure. Process exited with code: " + exitCode);
+		}
 	}
 
 	private void generateTestIndex() throws MojoExecutionException {
@@ -0,0 +1,54 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.lime_openfl;
+
+/**
+ * A maximum size for the files in the html5 output directory that match a
+ * path pattern.
+ * 
+ * <pre>
+ * {@code
+ * <bundleBudgets>
+ *   <bundleBudget>
+ *     <path>*.js</path>
+ *     <maxSize>512</maxSize>
+ *     <gzip>true</gzip>
+ *   </bundleBudget>
+ * </bundleBudgets>
+ * }
+ * </pre>
+ * 
+ * @see BuildMojo#bundleBudgets
+ */
+public class BundleBudget {
+	/**
+	 * A glob pattern, relative to the <em>bin</em> directory, where
+	 * {@code **} matches any directories, {@code *} matches any characters
+	 * in a file or directory name, and {@code ?} matches one character.
+	 */
+	public String path = null;
+
+	/**
+	 * The maximum size of each matching file, in kilobytes.
+	 */
+	public Long maxSize = null;
+
+	/**
+	 * Specify if the budget applies to the gzip-compressed size of the file,
+	 * as it is transferred over the network, instead of its size on disk.
+	 */
+	public Boolean gzip = null;
+}
@@ -0,0 +1,107 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.feathersui.maven.plugin.lime_openfl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+
+import com.feathersui.maven.plugin.utils.BuildCacheHttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Starts a file-backed server for the shared build cache, which may be used
+ * by builds that set the {@code remoteBuildCacheUrl} parameter. Runs until
+ * the process is stopped.
+ */
+@Mojo(name = "cache-server", requiresProject = false)
+public class CacheServerMojo extends AbstractMojo {
+	/**
+	 * The host name or IP address where the server listens for connections.
+	 * Only the local machine may connect by default. To share the cache with
+	 * other machines, set to {@code 0.0.0.0} and set a
+	 * {@link #cacheServerToken}.
+	 */
+	@Parameter(defaultValue = "127.0.0.1", property = "lime.cacheServerHost")
+	public String cacheServerHost;
+
+	/**
+	 * The port where the server listens for connections.
+	 */
+	@Parameter(defaultValue = "5071", property = "lime.cacheServerPort")
+	public int cacheServerPort;
+
+	/**
+	 * The directory where the server stores build output archives.
+	 */
+	@Parameter(defaultValue = "${user.home}/.lime-openfl-maven-plugin/remote-build-cache", property = "lime.cacheServerDirectory")
+	public File cacheServerDirectory;
+
+	/**
+	 * The maximum size of the stored archives, in megabytes. The least
+	 * recently used archives are removed when the cache is larger.
+	 */
+	@Parameter(defaultValue = "16384", property = "lime.cacheServerMaxSize")
+	public long cacheServerMaxSize;
+
+	/**
+	 * Optionally specify a token that clients must send to upload archives,
+	 * with the {@code remoteBuildCacheToken} parameter. If not set, only
+	 * clients on the local machine may upload, and the cache is read-only
+	 * for everyone else.
+	 */
+	@Parameter(property = "lime.cacheServerToken")
+	public String cacheServerToken;
+
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		HttpServer httpServer = null;
+		try {
+			httpServer = HttpServer.create(new InetSocketAddress(cacheServerHost, cacheServerPort), 0);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Fatal error starting build cache server", e);
+		}
+		httpServer.createContext("/",
+				new BuildCacheHttpHandler(cacheServerDirectory, cacheServerMaxSize * 1024L * 1024L, cacheServerToken));
+		httpServer.setExecutor(Executors.newCachedThreadPool());
+		httpServer.start();
+		getLog().info("Build cache server listening on http://" + cacheServerHost + ":" + cacheServerPort + "/");
+		getLog().info("Storing archives in " + cacheServerDirectory.getAbsolutePath());
+		if (cacheServerToken == null) {
+			getLog().info("No cache server token. Accepting uploads from the local machine only.");
+		}
+		getLog().info("Press Ctrl+C to stop");
+		try {
+			Object lock = new Object();
+			synchronized (lock) {
+				while (true) {
+					lock.wait();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			httpServer.stop(0);
+		}
+	}
+}
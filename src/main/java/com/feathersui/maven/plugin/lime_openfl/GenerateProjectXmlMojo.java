@@ -16,18 +16,29 @@ limitations under the License.
 package com.feathersui.maven.plugin.lime_openfl;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.feathersui.maven.plugin.utils.TraceRecorder;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Organization;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
+import org.sonatype.plexus.build.incremental.BuildContext;
 
 /**
  * Generates a <em>project.xml</em> file for a
@@ -128,6 +139,97 @@ public class GenerateProjectXmlMojo extends AbstractMojo {
 	@Parameter(defaultValue = "${basedir}", required = true, readonly = true)
 	protected File basedir;
 
+	/**
+	 * The maximum width and height of a texture atlas page, in pixels, for
+	 * {@code <assets>} elements that specify {@link Assets#atlas}. If the
+	 * images don't fit on one page, additional pages are created.
+	 */
+	@Parameter(defaultValue = "2048", property = "lime.atlasMaxSize")
+	public int atlasMaxSize;
+
+	/**
+	 * The number of transparent pixels between images in a texture atlas.
+	 */
+	@Parameter(defaultValue = "2", property = "lime.atlasPadding")
+	public int atlasPadding;
+
+	/**
+	 * Optionally specify a custom location for the cache of packed texture
+	 * atlases and optimized PNG files. Results are keyed by the hash of their
+	 * inputs, so the same directory may be shared by multiple projects.
+	 */
+	@Parameter(defaultValue = "${user.home}/.lime-openfl-maven-plugin/asset-cache", property = "lime.assetCacheDirectory")
+	public File assetCacheDirectory;
+
+	/**
+	 * The maximum size of the cache of packed texture atlases and optimized
+	 * PNG files, in megabytes. The least recently used results are removed
+	 * when the cache grows larger.
+	 */
+	@Parameter(defaultValue = "1024", property = "lime.assetCacheMaxSize")
+	public long assetCacheMaxSize;
+
+	/**
+	 * Specify if the files of {@code <assets>} elements without a
+	 * {@code library} should be split between the default library, which is
+	 * preloaded before the first frame, and libraries with
+	 * {@code preload="false"}, which the app loads on demand with
+	 * {@code Assets.loadLibrary()}. Files that were requested during a run
+	 * recorded in {@link #assetUsageFile} stay preloaded, and so do files
+	 * smaller than {@link #splitAssetsLazyMinSize}. Everything else is moved
+	 * to a library named after its top-level directory, or <em>lazy</em> for
+	 * files at the root of the directory. Embedded assets, and assets that
+	 * are packed into an atlas or optimized, are never split.
+	 *
+	 * @see PerfTraceMojo#recordAssetUsage
+	 */
+	@Parameter(defaultValue = "false", property = "lime.splitAssets")
+	public boolean splitAssets;
+
+	/**
+	 * The minimum size of a file, in kilobytes, that may be moved to a lazy
+	 * library, if {@link #splitAssets} is enabled.
+	 */
+	@Parameter(defaultValue = "64", property = "lime.splitAssetsLazyMinSize")
+	public long splitAssetsLazyMinSize;
+
+	/**
+	 * The file that lists the assets that were requested during a recorded
+	 * run of the app, if {@link #splitAssets} is enabled.
+	 *
+	 * @see PerfTraceMojo#recordAssetUsage
+	 */
+	@Parameter(defaultValue = "${basedir}/asset-usage.json", property = "lime.assetUsageFile")
+	public File assetUsageFile;
+
+	/**
+	 * Specify if generating the project should be recorded on the timeline of
+	 * the plugin's activities.
+	 *
+	 * @see BaseMojo#trace
+	 */
+	@Parameter(defaultValue = "false", property = "lime.trace")
+	public boolean trace;
+
+	/**
+	 * @see BaseMojo#traceFile
+	 */
+	@Parameter(defaultValue = "${session.executionRootDirectory}/target/lime-trace.json", property = "lime.traceFile")
+	public File traceFile;
+
+	@Parameter(defaultValue = "${session}", required = true, readonly = true)
+	private MavenSession session;
+
+	@Component
+	private BuildContext buildContext;
+
+	private AssetProcessor assetProcessor;
+	private int processedAssetsCount = 0;
+	private AssetSplitter assetSplitter;
+	private Set<String> lazyLibraryNames = new HashSet<>();
+	private long preloadedAssetsBytes = 0L;
+	private long lazyAssetsBytes = 0L;
+
 	/**
 	 * Generates the Lime <em>project.xml</em> file.
 	 */
@@ -148,16 +250,77 @@ public class GenerateProjectXmlMojo extends AbstractMojo {
 			throw new MojoFailureException("Cannot set both projectFile parameter and limeProject parameters");
 		}
 
+		File generatedProjectFile = new File(buildDirectory, "project.xml");
+		if (generatedProjectFile.exists() && !hasIncrementalChanges()) {
+			getLog().debug("Skipping generate-project-xml because no inputs have changed: " + basedir.getName());
+			project.getProperties().setProperty("lime.projectFile", generatedProjectFile.getAbsolutePath());
+			return;
+		}
+
+		TraceRecorder recorder = BaseMojo.getTraceRecorder(trace, traceFile, session);
+		TraceRecorder.Span span = recorder != null
+				? recorder.begin(project.getId(), "goal", "lime:generate-project-xml")
+				: TraceRecorder.Span.DISABLED;
 		try {
+			processedAssetsCount = 0;
+			assetSplitter = null;
+			lazyLibraryNames.clear();
+			preloadedAssetsBytes = 0L;
+			lazyAssetsBytes = 0L;
 			String contents = generateProjectXML();
-			File projectFile = new File(buildDirectory, "project.xml");
-			FileUtils.write(projectFile, contents, Charset.forName("utf-8"));
-			project.getProperties().setProperty("lime.projectFile", projectFile.getAbsolutePath());
+			span.arg("processedAssets", processedAssetsCount);
+			if (splitAssets) {
+				span.arg("lazyLibraries", lazyLibraryNames.size());
+				getLog().info(String.format("Split assets: %d KB preloaded, %d KB in %d lazy libraries %s",
+						preloadedAssetsBytes / 1024L, lazyAssetsBytes / 1024L, lazyLibraryNames.size(),
+						new TreeSet<>(lazyLibraryNames)));
+			}
+			// an unchanged file shouldn't trigger another build in an IDE
+			if (!generatedProjectFile.exists() || !contents
+					.equals(FileUtils.readFileToString(generatedProjectFile, Charset.forName("utf-8")))) {
+				FileUtils.write(generatedProjectFile, contents, Charset.forName("utf-8"));
+				buildContext.refresh(generatedProjectFile);
+			}
+			project.getProperties().setProperty("lime.projectFile", generatedProjectFile.getAbsolutePath());
 		} catch (Exception e) {
 			throw new MojoExecutionException("Fatal error generating Lime project file", e);
+		} finally {
+			span.close();
+			if (recorder != null) {
+				try {
+					recorder.write();
+				} catch (IOException e) {
+					getLog().warn("Failed to write trace: " + e.getMessage());
+				}
+			}
 		}
 	}
 
+	/**
+	 * Returns {@code false} during an incremental build in an IDE, such as
+	 * Eclipse with m2e, if neither the <em>pom.xml</em> file nor any assets
+	 * that are processed by this goal have changed.
+	 */
+	private boolean hasIncrementalChanges() {
+		if (buildContext == null || !buildContext.isIncremental()) {
+			return true;
+		}
+		if (project.getFile() != null && buildContext.hasDelta(project.getFile())) {
+			return true;
+		}
+		if (splitAssets && assetUsageFile != null && buildContext.hasDelta(assetUsageFile)) {
+			return true;
+		}
+		if (limeProject.assets != null) {
+			for (Assets assets : limeProject.assets) {
+				if (assets.path != null && buildContext.hasDelta(assets.path)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	private String generateProjectXML() throws MojoFailureException {
 		StringBuilder builder = new StringBuilder()
 				.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
@@ -240,6 +403,127 @@ public class GenerateProjectXmlMojo extends AbstractMojo {
 		return builder.toString();
 	}
 
+	private void generateAssetsXML(Assets assets, String path, String include, String exclude, String rename,
+			StringBuilder builder) {
+		builder.append("<assets path=\"")
+				.append(path)
+				.append("\"");
+		if (include != null) {
+			builder.append(" include=\"")
+					.append(include)
+					.append("\"");
+		}
+		if (exclude != null) {
+			builder.append(" exclude=\"")
+					.append(exclude)
+					.append("\"");
+		}
+		if (rename != null) {
+			builder.append(" rename=\"")
+					.append(rename)
+					.append("\"");
+		}
+		if (assets.type != null) {
+			builder.append(" type=\"")
+					.append(assets.type)
+					.append("\"");
+		}
+		if (assets.embed != null) {
+			builder.append(" embed=\"")
+					.append(assets.embed)
+					.append("\"");
+		}
+		if (assets.library != null) {
+			builder.append(" library=\"")
+					.append(assets.library)
+					.append("\"");
+		}
+		if (assets.glyphs != null) {
+			builder.append(" glyphs=\"")
+					.append(assets.glyphs)
+					.append("\"");
+		}
+		builder.append("/>\n");
+	}
+
+	private void generateProcessedAssetsXML(Assets assets, StringBuilder builder) throws MojoFailureException {
+		String originalPath = assets.path.getAbsolutePath();
+		// the processed files must have the same asset IDs as the originals
+		String rename = assets.rename != null ? assets.rename : originalPath;
+		String processedId = Integer.toString(processedAssetsCount++) + "-" + assets.path.getName();
+		File processedDirectory;
+		String pngExclude;
+		try {
+			processedDirectory = getAssetProcessor().process(assets, processedId);
+			pngExclude = AssetProcessor.getPngExcludeFilter(assets);
+		} catch (Exception e) {
+			throw new MojoFailureException("Failed to process assets: " + originalPath, e);
+		}
+		// everything except PNG files is copied from the original directory
+		String exclude = assets.exclude != null ? assets.exclude + "|" + pngExclude : pngExclude;
+		generateAssetsXML(assets, originalPath, assets.include, exclude, assets.rename, builder);
+		generateAssetsXML(assets, processedDirectory.getAbsolutePath(), null, null, rename, builder);
+	}
+
+	private void generateSplitAssetsXML(Assets assets, StringBuilder builder) throws MojoFailureException {
+		AssetSplitter.Split split;
+		try {
+			split = getAssetSplitter().split(assets);
+		} catch (IOException e) {
+			throw new MojoFailureException("Failed to split assets: " + assets.path.getAbsolutePath(), e);
+		}
+		preloadedAssetsBytes += split.preloadedBytes;
+		lazyAssetsBytes += split.lazyBytes;
+		if (split.lazyLibraries.isEmpty()) {
+			generateAssetsXML(assets, assets.path.getAbsolutePath(), assets.include, assets.exclude, assets.rename,
+					builder);
+			return;
+		}
+		for (AssetSplitter.Entry entry : split.preloaded) {
+			generateAssetsXML(assets, entry.file.getAbsolutePath(), null, null, entry.targetPath, builder);
+		}
+		for (Map.Entry<String, List<AssetSplitter.Entry>> library : split.lazyLibraries.entrySet()) {
+			String libraryName = library.getKey();
+			if (lazyLibraryNames.add(libraryName)) {
+				builder.append("<library name=\"")
+						.append(libraryName)
+						.append("\" preload=\"false\"/>\n");
+			}
+			Assets lazyAssets = new Assets();
+			lazyAssets.type = assets.type;
+			lazyAssets.glyphs = assets.glyphs;
+			lazyAssets.library = libraryName;
+			for (AssetSplitter.Entry entry : library.getValue()) {
+				generateAssetsXML(lazyAssets, entry.file.getAbsolutePath(), null, null, entry.targetPath, builder);
+			}
+		}
+	}
+
+	private AssetSplitter getAssetSplitter() throws MojoFailureException {
+		if (assetSplitter == null) {
+			List<String> usedPaths;
+			try {
+				usedPaths = AssetSplitter.readUsage(assetUsageFile);
+			} catch (IOException e) {
+				throw new MojoFailureException(e.getMessage(), e);
+			}
+			if (usedPaths.isEmpty()) {
+				getLog().info("No recorded asset usage. Splitting assets by size only: "
+						+ (assetUsageFile != null ? assetUsageFile.getAbsolutePath() : ""));
+			}
+			assetSplitter = new AssetSplitter(usedPaths, splitAssetsLazyMinSize * 1024L);
+		}
+		return assetSplitter;
+	}
+
+	private AssetProcessor getAssetProcessor() {
+		if (assetProcessor == null) {
+			assetProcessor = new AssetProcessor(new File(buildDirectory, "lime-assets"), assetCacheDirectory,
+					assetCacheMaxSize * 1024L * 1024L, atlasMaxSize, atlasPadding, getLog());
+		}
+		return assetProcessor;
+	}
+
 	private void generateSectionXML(Section section, StringBuilder builder) throws MojoFailureException {
 		builder.append("<section");
 		if (section.ifCondition != null) {
@@ -619,45 +903,16 @@ public class GenerateProjectXmlMojo extends AbstractMojo {
 		}
 		if (section != null && section.assets != null) {
 			for (Assets assets : section.assets) {
-				builder.append("<assets path=\"")
-						.append(assets.path.getAbsolutePath())
-						.append("\"");
-				if (assets.include != null) {
-					builder.append(" include=\"")
-							.append(assets.include)
-							.append("\"");
+				if (AssetProcessor.needsProcessing(assets)) {
+					generateProcessedAssetsXML(assets, builder);
+					continue;
 				}
-				if (assets.exclude != null) {
-					builder.append(" exclude=\"")
-							.append(assets.exclude)
-							.append("\"");
+				if (splitAssets && AssetSplitter.canSplit(assets)) {
+					generateSplitAssetsXML(assets, builder);
+					continue;
 				}
-				if (assets.rename != null) {
-					builder.append(" rename=\"")
-							.append(assets.rename)
-							.append("\"");
-				}
-				if (assets.type != null) {
-					builder.append(" type=\"")
-							.append(assets.type)
-							.append("\"");
-				}
-				if (assets.embed != null) {
-					builder.append(" embed=\"")
-							.append(assets.embed)
-							.append("\"");
-				}
-				if (assets.library != null) {
-					builder.append(" library=\"")
-							.append(assets.library)
-							.append("\"");
-				}
-				if (assets.glyphs != null) {
-					builder.append(" glyphs=\"")
-							.append(assets.glyphs)
-							.append("\"");
-				}
-				builder.append("/>\n");
+				generateAssetsXML(assets, assets.path.getAbsolutePath(), assets.include, assets.exclude,
+						assets.rename, builder);
 			}
 		}
 		if (section != null && section.libraries != null) {
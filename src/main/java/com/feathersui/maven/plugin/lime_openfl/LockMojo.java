@@ -0,0 +1,128 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.feathersui.maven.plugin.lime_openfl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.feathersui.maven.plugin.utils.HaxelibLock;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Execute;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.codehaus.plexus.util.cli.Commandline;
+
+/**
+ * Resolves the Haxelib libraries of a
+ * <a href="https://lime.software/">Lime</a>,
+ * <a href="https://openfl.org/">OpenFL</a>, or
+ * <a href="https://feathersui.com/">Feathers UI</a> project, including
+ * dependencies, and writes their exact versions, locations in the Haxelib
+ * repository, and checksums to a lockfile.
+ *
+ * <p>
+ * Builds that set the {@code haxelibLocked} parameter verify the libraries
+ * against the lockfile instead of asking Haxelib which versions are
+ * installed.
+ * </p>
+ */
+@Mojo(name = "lock")
+@Execute(phase = LifecyclePhase.GENERATE_RESOURCES)
+public class LockMojo extends BaseBuildMojo {
+	@Override
+	protected void checkHaxelibs() throws Exception {
+		// the lockfile is being replaced, so always ask Haxelib
+		Map<String, String> requiredHaxelibs = getRequiredHaxelibs();
+		// libraries that are installed during the check are resolved again
+		// with haxelib path, so their class paths are already recorded
+		for (Map.Entry<String, String> entry : requiredHaxelibs.entrySet()) {
+			checkHaxelib(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	protected void configureHaxelibRepository(Commandline commandLine) {
+		// the lockfile is created from the usual Haxelib repository, because
+		// the project's view of the Haxelib store is created from the lockfile
+	}
+
+	@Override
+	protected void build() throws CommandLineException, MojoExecutionException, MojoFailureException {
+		HaxelibLock lock = new HaxelibLock();
+		try {
+			File repository = getHaxelibRepository();
+			for (Map.Entry<String, String> entry : resolvedHaxelibs.entrySet()) {
+				String name = entry.getKey();
+				List<String> classPaths = new ArrayList<>();
+				for (Map.Entry<String, String> classPathEntry : haxelibClassPaths.entrySet()) {
+					if (name.equals(classPathEntry.getValue())) {
+						classPaths.add(classPathEntry.getKey());
+					}
+				}
+				File libraryDirectory = null;
+				if (classPaths.size() > 0) {
+					libraryDirectory = HaxelibLock.findLibraryDirectory(new File(classPaths.get(0)));
+				}
+				if (libraryDirectory == null) {
+					libraryDirectory = getHaxelibLibraryDirectory(name);
+				}
+				if (libraryDirectory == null) {
+					throw new MojoFailureException("Lime build failure. Failed to find directory of Haxelib: " + name);
+				}
+				lock.getLibraries().put(name,
+						HaxelibLock.createLibrary(entry.getValue(), libraryDirectory, classPaths, repository));
+			}
+			lock.write(haxelibLockFile);
+		} catch (MojoFailureException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MojoExecutionException("Fatal error writing Haxelib lockfile", e);
+		}
+		getLog().info("Haxelib lockfile: " + haxelibLockFile.getAbsolutePath());
+		for (Map.Entry<String, HaxelibLock.Library> entry : lock.getLibraries().entrySet()) {
+			getLog().info("  " + entry.getKey() + " " + entry.getValue().version);
+		}
+	}
+
+	/**
+	 * For libraries without class paths, asks Haxelib where the library is
+	 * installed.
+	 */
+	private File getHaxelibLibraryDirectory(String name) throws CommandLineException {
+		Commandline commandLine = new Commandline();
+		commandLine.setWorkingDirectory(basedir);
+		commandLine.setExecutable(getHaxelibPath());
+		commandLine.createArg().setValue("libpath");
+		commandLine.createArg().setValue(name);
+
+		CommandLineUtils.StringStreamConsumer systemOut = new CommandLineUtils.StringStreamConsumer();
+		CommandLineUtils.StringStreamConsumer systemErr = new CommandLineUtils.StringStreamConsumer();
+
+		int exitCode = executeCommandLine("haxelib libpath " + name, commandLine, systemOut, systemErr);
+		String[] lines = systemOut.getOutput().trim().split("\\r?\\n");
+		if (exitCode != 0 || lines[lines.length - 1].trim().length() == 0) {
+			return null;
+		}
+		return HaxelibLock.findLibraryDirectory(new File(lines[lines.length - 1].trim()));
+	}
+}
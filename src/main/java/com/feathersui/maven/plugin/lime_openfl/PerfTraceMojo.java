@@ -0,0 +1,476 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.feathersui.maven.plugin.lime_openfl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.feathersui.maven.plugin.browser.BrowserSession;
+import com.feathersui.maven.plugin.utils.ContentHasher;
+import com.feathersui.maven.plugin.utils.Json;
+import com.feathersui.maven.plugin.utils.StaticFileHandler;
+import com.feathersui.maven.plugin.utils.TraceRecorder;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Execute;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Loads the html5 build of a <a href="https://lime.software/">Lime</a>,
+ * <a href="https://openfl.org/">OpenFL</a>, or
+ * <a href="https://feathersui.com/">Feathers UI</a> project in headless
+ * Chromium, records a Chrome DevTools performance trace while it runs, and
+ * summarizes its frame times, long tasks, garbage collection pauses, and
+ * JavaScript heap growth.
+ *
+ * <p>
+ * The raw trace is written to <em>target/lime-reports/perf-trace.json</em>,
+ * which may be opened in the Performance panel of Chrome DevTools. The
+ * summary is written to <em>perf-trace-summary.json</em> in the same
+ * directory. If any budgets are set, the build fails when they are exceeded.
+ * </p>
+ */
+@Mojo(name = "perf-trace")
+@Execute(phase = LifecyclePhase.COMPILE)
+public class PerfTraceMojo extends BaseMojo {
+	private static final List<String> TRACE_CATEGORIES = Arrays.asList("devtools.timeline", "v8",
+			"disabled-by-default-devtools.timeline", "blink.user_timing");
+	private static final List<String> GC_EVENT_NAMES = Arrays.asList("MinorGC", "MajorGC");
+	private static final String COLLECTOR_SCRIPT = "(() => {\n"
+			+ "  const perf = window.__limePerfTrace = { frames: [], longTasks: [] };\n"
+			+ "  const onFrame = (time) => {\n"
+			+ "    perf.frames.push(time);\n"
+			+ "    requestAnimationFrame(onFrame);\n"
+			+ "  };\n"
+			+ "  requestAnimationFrame(onFrame);\n"
+			+ "  try {\n"
+			+ "    new PerformanceObserver((list) => {\n"
+			+ "      for (const entry of list.getEntries()) {\n"
+			+ "        perf.longTasks.push({ start: entry.startTime, duration: entry.duration });\n"
+			+ "      }\n"
+			+ "    }).observe({ entryTypes: ['longtask'] });\n"
+			+ "  } catch (e) {}\n"
+			+ "})();\n";
+	private static final String START_MARK_NAME = "lime-perf-trace-start";
+	private static final String END_MARK_NAME = "lime-perf-trace-end";
+	private static final String MARK_SCRIPT = "() => { performance.mark('%s'); return { time: performance.now(), "
+			+ "heap: performance.memory ? performance.memory.usedJSHeapSize : null }; }";
+
+	/**
+	 * Optionally specify a JavaScript file that drives the app, such as by
+	 * dispatching input events. It's evaluated as the body of an
+	 * {@code async} function after the app has loaded, and the trace stops
+	 * when it returns. If not set, the app runs for
+	 * {@link #perfTraceDuration} seconds.
+	 */
+	@Parameter(property = "lime.perfTraceScenario")
+	public File perfTraceScenario;
+
+	/**
+	 * The number of seconds to record, if {@link #perfTraceScenario} isn't
+	 * set.
+	 */
+	@Parameter(defaultValue = "10", property = "lime.perfTraceDuration")
+	public double perfTraceDuration;
+
+	/**
+	 * The number of seconds to wait after the page loads before measuring,
+	 * so that startup work isn't counted.
+	 */
+	@Parameter(defaultValue = "1", property = "lime.perfTraceSettleTime")
+	public double perfTraceSettleTime;
+
+	/**
+	 * Optionally fail the build if the 95th percentile frame time is longer
+	 * than this number of milliseconds.
+	 */
+	@Parameter(property = "lime.perfBudgetFrameTimeP95")
+	public Double perfBudgetFrameTimeP95;
+
+	/**
+	 * Optionally fail the build if the 99th percentile frame time is longer
+	 * than this number of milliseconds.
+	 */
+	@Parameter(property = "lime.perfBudgetFrameTimeP99")
+	public Double perfBudgetFrameTimeP99;
+
+	/**
+	 * Optionally fail the build if there are more long tasks (tasks longer
+	 * than 50 milliseconds) than this number.
+	 */
+	@Parameter(property = "lime.perfBudgetLongTasks")
+	public Integer perfBudgetLongTasks;
+
+	/**
+	 * Optionally fail the build if the longest garbage collection pause is
+	 * longer than this number of milliseconds.
+	 */
+	@Parameter(property = "lime.perfBudgetGcPause")
+	public Double perfBudgetGcPause;
+
+	/**
+	 * Optionally fail the build if the JavaScript heap grows by more than
+	 * this number of megabytes.
+	 */
+	@Parameter(property = "lime.perfBudgetHeapGrowth")
+	public Double perfBudgetHeapGrowth;
+
+	/**
+	 * Specify if the files that the app requests while the trace is recorded
+	 * should be written to {@link #assetUsageFile}, so that the
+	 * {@code generate-project-xml} goal keeps them preloaded when it splits
+	 * assets into lazy libraries. Record a scenario that visits the first
+	 * screens of the app.
+	 *
+	 * @see GenerateProjectXmlMojo#splitAssets
+	 */
+	@Parameter(defaultValue = "false", property = "lime.recordAssetUsage")
+	public boolean recordAssetUsage;
+
+	/**
+	 * @see GenerateProjectXmlMojo#assetUsageFile
+	 */
+	@Parameter(defaultValue = "${basedir}/asset-usage.json", property = "lime.assetUsageFile")
+	public File assetUsageFile;
+
+	@Parameter(defaultValue = "${project.build.directory}", required = true, readonly = true)
+	private File buildDirectory;
+
+	@Parameter(defaultValue = "${project.build.directory}/lime-reports", required = true, readonly = true)
+	private File reportsDirectory;
+
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		try (TraceRecorder.Span span = traceGoal()) {
+			recordPerfTrace();
+		} finally {
+			writeTrace();
+		}
+	}
+
+	private void recordPerfTrace() throws MojoExecutionException, MojoFailureException {
+		if (!"html5".equals(target)) {
+			throw new MojoFailureException("The perf-trace goal requires the html5 target. Current target: " + target);
+		}
+		File binDirectory = new File(buildDirectory, "html5/bin");
+		if (!binDirectory.isDirectory()) {
+			throw new MojoFailureException("html5 build output not found: " + binDirectory.getAbsolutePath());
+		}
+
+		File perfTraceFile = new File(reportsDirectory, "perf-trace.json");
+		Set<String> requestedPaths = Collections.synchronizedSet(new LinkedHashSet<>());
+		Map<String, Object> summary = null;
+		HttpServer httpServer = null;
+		BrowserSession browserSession = null;
+		try {
+			try (TraceRecorder.Span span = traceSpan("server", "start server")) {
+				httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+				httpServer.createContext("/", new StaticFileHandler(binDirectory));
+				httpServer.start();
+			}
+			browserSession = newBrowserSession();
+			browserSession.addInitScript(COLLECTOR_SCRIPT);
+			browserSession.onConsoleMessage((type, text) -> getLog().debug(text));
+			String origin = "http://localhost:" + httpServer.getAddress().getPort() + "/";
+			if (recordAssetUsage) {
+				browserSession.onRequest(url -> {
+					if (url.startsWith(origin)) {
+						requestedPaths.add(url.substring(origin.length()));
+					}
+				});
+			}
+			FileUtils.forceMkdir(reportsDirectory);
+			browserSession.startTracing(TRACE_CATEGORIES);
+			byte[] trace = null;
+			Map<String, Object> start = null;
+			Map<String, Object> end = null;
+			try {
+				browserSession.navigate(origin);
+				browserSession.waitForTimeout(perfTraceSettleTime * 1000.0);
+				start = toMap(browserSession.evaluate(String.format(MARK_SCRIPT, START_MARK_NAME)));
+				if (perfTraceScenario != null) {
+					String scenario = FileUtils.readFileToString(perfTraceScenario, Charset.forName("utf-8"));
+					browserSession.evaluate("async () => {\n" + scenario + "\n}");
+				} else {
+					browserSession.waitForTimeout(perfTraceDuration * 1000.0);
+				}
+				end = toMap(browserSession.evaluate(String.format(MARK_SCRIPT, END_MARK_NAME)));
+			} finally {
+				trace = browserSession.stopTracing();
+			}
+			Files.write(perfTraceFile.toPath(), trace);
+			if (recordAssetUsage) {
+				writeAssetUsage(binDirectory, requestedPaths);
+			}
+
+			Map<String, Object> collected = toMap(browserSession.evaluate("() => window.__limePerfTrace"));
+			summary = summarize(collected, start, end, new String(trace, Charset.forName("utf-8")));
+			FileUtils.write(new File(reportsDirectory, "perf-trace-summary.json"), Json.stringify(summary),
+					Charset.forName("utf-8"));
+		} catch (Exception e) {
+			throw new MojoExecutionException("Fatal error recording performance trace", e);
+		} finally {
+			if (browserSession != null) {
+				browserSession.close();
+			}
+			releaseBrowser();
+			if (httpServer != null) {
+				httpServer.stop(0);
+			}
+		}
+
+		getLog().info("Performance trace: " + perfTraceFile.getAbsolutePath());
+		logSummary(summary);
+		checkBudgets(summary);
+	}
+
+	/**
+	 * Writes the requested files that exist in the <em>bin</em> directory,
+	 * using their names from before they were renamed with content hashes.
+	 */
+	private void writeAssetUsage(File binDirectory, Set<String> requestedPaths) throws IOException {
+		Map<String, String> originalPaths = new HashMap<>();
+		for (Map.Entry<String, String> entry : ContentHasher
+				.readMapping(new ContentHasher(binDirectory).getMappingFile()).entrySet()) {
+			originalPaths.put(entry.getValue(), entry.getKey());
+		}
+		Set<String> usedPaths = new LinkedHashSet<>();
+		synchronized (requestedPaths) {
+			for (String requestedPath : requestedPaths) {
+				String path = requestedPath.replaceAll("[?#].*$", "");
+				path = URLDecoder.decode(path.replace("+", "%2B"), "utf-8");
+				if (path.length() == 0 || !new File(binDirectory, path).isFile()) {
+					continue;
+				}
+				usedPaths.add(originalPaths.getOrDefault(path, path));
+			}
+		}
+		AssetSplitter.writeUsage(assetUsageFile, usedPaths);
+		getLog().info("Asset usage: " + usedPaths.size() + " files requested: " + assetUsageFile.getAbsolutePath());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> toMap(Object value) {
+		if (value instanceof Map) {
+			return (Map<String, Object>) value;
+		}
+		return new HashMap<>();
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> summarize(Map<String, Object> collected, Map<String, Object> start,
+			Map<String, Object> end, String traceJson) {
+		double startTime = ((Number) start.get("time")).doubleValue();
+		double endTime = ((Number) end.get("time")).doubleValue();
+
+		List<Double> frameTimes = new ArrayList<>();
+		Double previousFrame = null;
+		for (Object frame : (List<Object>) collected.getOrDefault("frames", Collections.emptyList())) {
+			double time = ((Number) frame).doubleValue();
+			if (time < startTime || time > endTime) {
+				continue;
+			}
+			if (previousFrame != null) {
+				frameTimes.add(time - previousFrame);
+			}
+			previousFrame = time;
+		}
+		Collections.sort(frameTimes);
+		Map<String, Object> frames = new LinkedHashMap<>();
+		frames.put("count", frameTimes.size());
+		double windowTime = endTime - startTime;
+		frames.put("fps", windowTime > 0.0 ? frameTimes.size() / (windowTime / 1000.0) : 0.0);
+		frames.put("p50", percentile(frameTimes, 50.0));
+		frames.put("p95", percentile(frameTimes, 95.0));
+		frames.put("p99", percentile(frameTimes, 99.0));
+		frames.put("max", frameTimes.size() > 0 ? frameTimes.get(frameTimes.size() - 1) : 0.0);
+
+		int longTaskCount = 0;
+		double longTaskTotal = 0.0;
+		double longTaskMax = 0.0;
+		for (Object item : (List<Object>) collected.getOrDefault("longTasks", Collections.emptyList())) {
+			Map<String, Object> longTask = (Map<String, Object>) item;
+			double taskStart = ((Number) longTask.get("start")).doubleValue();
+			if (taskStart < startTime || taskStart > endTime) {
+				continue;
+			}
+			double duration = ((Number) longTask.get("duration")).doubleValue();
+			longTaskCount++;
+			longTaskTotal += duration;
+			longTaskMax = Math.max(longTaskMax, duration);
+		}
+		Map<String, Object> longTasks = new LinkedHashMap<>();
+		longTasks.put("count", longTaskCount);
+		longTasks.put("totalTime", longTaskTotal);
+		longTasks.put("max", longTaskMax);
+
+		Map<String, Object> gc = summarizeGc(traceJson);
+
+		Map<String, Object> heap = new LinkedHashMap<>();
+		Object startHeap = start.get("heap");
+		Object endHeap = end.get("heap");
+		if (startHeap instanceof Number && endHeap instanceof Number) {
+			heap.put("start", ((Number) startHeap).doubleValue() / (1024.0 * 1024.0));
+			heap.put("end", ((Number) endHeap).doubleValue() / (1024.0 * 1024.0));
+			heap.put("growth", (((Number) endHeap).doubleValue() - ((Number) startHeap).doubleValue())
+					/ (1024.0 * 1024.0));
+		}
+
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("duration", endTime - startTime);
+		result.put("frameTime", frames);
+		result.put("longTasks", longTasks);
+		result.put("gc", gc);
+		result.put("heapMB", heap);
+		return result;
+	}
+
+	/**
+	 * Finds garbage collection events in the trace. They are either complete
+	 * events with a duration, or separate begin and end events. Only pauses
+	 * that start between the marks added by {@link #MARK_SCRIPT} are counted,
+	 * like frames and long tasks. The marks' timestamps in the trace are used
+	 * instead of {@code performance.now()}, because the trace uses a
+	 * different clock.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> summarizeGc(String traceJson) {
+		Object parsed = Json.parse(traceJson);
+		List<Object> events = parsed instanceof Map
+				? (List<Object>) ((Map<String, Object>) parsed).getOrDefault("traceEvents", Collections.emptyList())
+				: (List<Object>) parsed;
+		double startTimestamp = Double.NEGATIVE_INFINITY;
+		double endTimestamp = Double.POSITIVE_INFINITY;
+		for (Object item : events) {
+			Map<String, Object> event = (Map<String, Object>) item;
+			if (!(event.get("ts") instanceof Number)
+					|| !String.valueOf(event.get("cat")).contains("blink.user_timing")) {
+				continue;
+			}
+			double timestamp = ((Number) event.get("ts")).doubleValue();
+			if (START_MARK_NAME.equals(event.get("name"))) {
+				startTimestamp = timestamp;
+			} else if (END_MARK_NAME.equals(event.get("name"))) {
+				endTimestamp = timestamp;
+			}
+		}
+		if (Double.isInfinite(startTimestamp) || Double.isInfinite(endTimestamp)) {
+			getLog().warn("Performance marks not found in trace. Counting garbage collection for the whole trace.");
+		}
+		List<Double> pauses = new ArrayList<>();
+		Map<String, Double> begins = new HashMap<>();
+		for (Object item : events) {
+			Map<String, Object> event = (Map<String, Object>) item;
+			if (!GC_EVENT_NAMES.contains(event.get("name"))) {
+				continue;
+			}
+			String phase = String.valueOf(event.get("ph"));
+			double timestamp = event.get("ts") instanceof Number ? ((Number) event.get("ts")).doubleValue() : 0.0;
+			String threadKey = event.get("pid") + ":" + event.get("tid") + ":" + event.get("name");
+			if ("X".equals(phase) && event.get("dur") instanceof Number) {
+				if (timestamp >= startTimestamp && timestamp <= endTimestamp) {
+					pauses.add(((Number) event.get("dur")).doubleValue() / 1000.0);
+				}
+			} else if ("B".equals(phase)) {
+				begins.put(threadKey, timestamp);
+			} else if ("E".equals(phase) && begins.containsKey(threadKey)) {
+				double beginTimestamp = begins.remove(threadKey);
+				if (beginTimestamp >= startTimestamp && beginTimestamp <= endTimestamp) {
+					pauses.add((timestamp - beginTimestamp) / 1000.0);
+				}
+			}
+		}
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("count", pauses.size());
+		result.put("totalTime", pauses.stream().mapToDouble(Double::doubleValue).sum());
+		result.put("max", pauses.stream().mapToDouble(Double::doubleValue).max().orElse(0.0));
+		return result;
+	}
+
+	private static double percentile(List<Double> sortedValues, double percentile) {
+		if (sortedValues.size() == 0) {
+			return 0.0;
+		}
+		int index = (int) Math.ceil(percentile / 100.0 * sortedValues.size()) - 1;
+		return sortedValues.get(Math.max(0, Math.min(index, sortedValues.size() - 1)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void logSummary(Map<String, Object> summary) {
+		Map<String, Object> frames = (Map<String, Object>) summary.get("frameTime");
+		Map<String, Object> longTasks = (Map<String, Object>) summary.get("longTasks");
+		Map<String, Object> gc = (Map<String, Object>) summary.get("gc");
+		Map<String, Object> heap = (Map<String, Object>) summary.get("heapMB");
+		getLog().info(String.format("Frames: %d (%.1f fps), frame time p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, "
+				+ "max %.1f ms", frames.get("count"), frames.get("fps"), frames.get("p50"), frames.get("p95"),
+				frames.get("p99"), frames.get("max")));
+		getLog().info(String.format("Long tasks: %d (total %.1f ms, max %.1f ms)", longTasks.get("count"),
+				longTasks.get("totalTime"), longTasks.get("max")));
+		getLog().info(String.format("GC pauses: %d (total %.1f ms, max %.1f ms)", gc.get("count"),
+				gc.get("totalTime"), gc.get("max")));
+		if (heap.containsKey("growth")) {
+			getLog().info(String.format("JS heap: %.1f MB -> %.1f MB (%+.1f MB)", heap.get("start"), heap.get("end"),
+					heap.get("growth")));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void checkBudgets(Map<String, Object> summary) throws MojoFailureException {
+		Map<String, Object> frames = (Map<String, Object>) summary.get("frameTime");
+		Map<String, Object> longTasks = (Map<String, Object>) summary.get("longTasks");
+		Map<String, Object> gc = (Map<String, Object>) summary.get("gc");
+		Map<String, Object> heap = (Map<String, Object>) summary.get("heapMB");
+		List<String> violations = new ArrayList<>();
+		checkBudget(violations, "Frame time p95 (ms)", (Double) frames.get("p95"), perfBudgetFrameTimeP95);
+		checkBudget(violations, "Frame time p99 (ms)", (Double) frames.get("p99"), perfBudgetFrameTimeP99);
+		checkBudget(violations, "Long tasks", ((Integer) longTasks.get("count")).doubleValue(),
+				perfBudgetLongTasks != null ? perfBudgetLongTasks.doubleValue() : null);
+		checkBudget(violations, "GC pause (ms)", (Double) gc.get("max"), perfBudgetGcPause);
+		if (heap.containsKey("growth")) {
+			checkBudget(violations, "JS heap growth (MB)", (Double) heap.get("growth"), perfBudgetHeapGrowth);
+		} else if (perfBudgetHeapGrowth != null) {
+			getLog().warn("JS heap size is not available. Skipping heap growth budget.");
+		}
+		if (violations.size() > 0) {
+			throw new MojoFailureException("Performance budgets exceeded:\n" + String.join("\n", violations));
+		}
+	}
+
+	private void checkBudget(List<String> violations, String name, double value, Double budget) {
+		if (budget == null || value <= budget) {
+			return;
+		}
+		violations.add(String.format("%s: %.1f (budget %.1f)", name, value, budget));
+	}
+}
@@ -0,0 +1,107 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.feathersui.maven.plugin.lime_openfl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.feathersui.maven.plugin.utils.DevServerHandler;
+import com.feathersui.maven.plugin.utils.TraceRecorder;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Execute;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.cli.CommandLineException;
+
+/**
+ * Builds an html5 <a href="https://lime.software/">Lime</a>,
+ * <a href="https://openfl.org/">OpenFL</a>, or
+ * <a href="https://feathersui.com/">Feathers UI</a> project, and serves its
+ * output on a local web server. Like the <em>watch</em> goal, the project is
+ * built again after every change, and then any open pages reload
+ * automatically. Runs until the process is stopped.
+ */
+@Mojo(name = "serve")
+@Execute(phase = LifecyclePhase.GENERATE_RESOURCES)
+public class ServeMojo extends WatchMojo {
+	/**
+	 * The host name or IP address where the server listens for connections.
+	 */
+	@Parameter(defaultValue = "localhost", property = "lime.serveHost")
+	public String serveHost;
+
+	/**
+	 * The port where the server listens for connections.
+	 */
+	@Parameter(defaultValue = "3000", property = "lime.servePort")
+	public int servePort;
+
+	private DevServerHandler devServerHandler;
+
+	@Override
+	protected void build() throws CommandLineException, MojoExecutionException, MojoFailureException {
+		if (!"html5".equals(target)) {
+			throw new MojoFailureException("The serve goal requires the html5 target. Current target: " + target);
+		}
+		// a service worker would serve cached files instead of rebuilt ones
+		serviceWorker = false;
+		devServerHandler = new DevServerHandler(new File(buildDirectory, "html5/bin"));
+		// hold the first requests until the first build is done
+		devServerHandler.beginBuild();
+		HttpServer httpServer = null;
+		ExecutorService executor = null;
+		try (TraceRecorder.Span span = traceSpan("server", "start server")) {
+			try {
+				httpServer = HttpServer.create(new InetSocketAddress(serveHost, servePort), 0);
+			} catch (IOException e) {
+				throw new MojoExecutionException("Fatal error starting server", e);
+			}
+			httpServer.createContext("/", devServerHandler);
+			// live reload connections stay open, so each needs its own thread
+			executor = Executors.newCachedThreadPool();
+			httpServer.setExecutor(executor);
+			httpServer.start();
+		}
+		getLog().info("Serving html5 output on http://" + serveHost + ":" + servePort + "/");
+		try {
+			super.build();
+		} finally {
+			devServerHandler.close();
+			httpServer.stop(0);
+			executor.shutdownNow();
+		}
+	}
+
+	@Override
+	protected boolean rebuild() throws CommandLineException, MojoExecutionException {
+		devServerHandler.beginBuild();
+		boolean success = false;
+		try {
+			success = super.rebuild();
+		} finally {
+			devServerHandler.endBuild(success);
+		}
+		return success;
+	}
+}
@@ -16,25 +16,14 @@ limitations under the License.
 
 package com.feathersui.maven.plugin.lime_openfl;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.InetSocketAddress;
-import java.util.HashMap;
-import java.util.Map;
 
+import com.feathersui.maven.plugin.browser.BrowserSession;
 import com.feathersui.maven.plugin.utils.LogOutputStream;
-import com.microsoft.playwright.Browser;
-import com.microsoft.playwright.JSHandle;
-import com.microsoft.playwright.Page;
-import com.microsoft.playwright.Playwright;
-import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
+import com.feathersui.maven.plugin.utils.StaticFileHandler;
+import com.feathersui.maven.plugin.utils.TraceRecorder;
 import com.sun.net.httpserver.HttpServer;
 
 import org.apache.maven.plugin.MojoExecutionException;
@@ -42,7 +31,6 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 import org.codehaus.plexus.util.cli.WriterStreamConsumer;
 
@@ -54,6 +42,15 @@ import org.codehaus.plexus.util.cli.WriterStreamConsumer;
  */
 @Mojo(name = "test", defaultPhase = LifecyclePhase.TEST)
 public class TestMojo extends BaseMojo {
+	static final String INTERP_DIRECTORY_NAME = "interp";
+	static final String INTERP_HXML_FILE_NAME = "tests.hxml";
+	static final String INTERP_HL_FILE_NAME = "tests.hl";
+	/**
+	 * Set by the <em>test-build</em> goal in <em>interp</em> and <em>hl</em>
+	 * test modes to indicate if any tests need to run as a Lime app.
+	 */
+	static final String LIME_SUITE_PROPERTY = "lime.testLimeSuite";
+
 	@Parameter(defaultValue = "${project.build.directory}/utest", required = true, readonly = true)
 	private File testBuildDirectory;
 
@@ -63,151 +60,95 @@ public class TestMojo extends BaseMojo {
 	@Parameter(defaultValue = "${maven.test.skip}", readonly = true)
 	private boolean skip;
 
+	/**
+	 * Specifies how tests are run. Must match the value used by the
+	 * <em>test-build</em> goal.
+	 *
+	 * @see BuildTestsMojo#testMode
+	 */
+	@Parameter(defaultValue = "lime", property = "lime.testMode")
+	public String testMode;
+
+	/**
+	 * Optionally specify a custom location for the HashLink executable, used
+	 * to run tests if {@link #testMode} is <em>hl</em>.
+	 */
+	@Parameter(property = "lime.hl")
+	public File hlExecutable;
+
 	public void execute() throws MojoExecutionException, MojoFailureException {
+		try (TraceRecorder.Span span = traceGoal()) {
+			runTests();
+		} finally {
+			writeTrace();
+		}
+	}
+
+	private void runTests() throws MojoExecutionException, MojoFailureException {
 		if (skip) {
 			getLog().info("Not running tests");
 			return;
 		}
 
+		if (!"lime".equals(testMode)) {
+			runInterpTests();
+			if (!"true".equals(project.getProperties().getProperty(LIME_SUITE_PROPERTY))) {
+				return;
+			}
+		}
+
 		if ("html5".equals(target)) {
+			HttpServer httpServer = null;
+			BrowserSession browserSession = null;
+			Object isOk = null;
 			try {
-				HttpServer httpServer = HttpServer.create(new InetSocketAddress("localhost", 3000), 0);
-				httpServer.createContext("/", new HttpHandler() {
-					private final Map<String, String> MIME_MAP = new HashMap<>();
-					{
-						MIME_MAP.put("css", "text/css");
-						MIME_MAP.put("gif", "image/gif");
-						MIME_MAP.put("htm", "text/html");
-						MIME_MAP.put("html", "text/html");
-						MIME_MAP.put("js", "application/javascript");
-						MIME_MAP.put("json", "application/json");
-						MIME_MAP.put("jpg", "image/jpeg");
-						MIME_MAP.put("jpeg", "image/jpeg");
-						MIME_MAP.put("mp3", "audio/mpeg");
-						MIME_MAP.put("mp4", "video/mp4");
-						MIME_MAP.put("flv", "video/x-flv");
-						MIME_MAP.put("mov", "video/quicktime");
-						MIME_MAP.put("swf", "application/x-shockwave-flash");
-						MIME_MAP.put("pdf", "application/pdf");
-						MIME_MAP.put("doc", "application/msword");
-						MIME_MAP.put("ogg", "application/x-ogg");
-						MIME_MAP.put("png", "image/png");
-						MIME_MAP.put("svg", "image/svg+xml");
-						MIME_MAP.put("xml", "application/xml");
-						MIME_MAP.put("zip", "application/zip");
-						MIME_MAP.put("md", "text/plain");
-						MIME_MAP.put("txt", "text/plain");
-					};
-
-					@Override
-					public void handle(HttpExchange httpExchange) throws IOException {
-						String requestPath = httpExchange.getRequestURI().getPath();
-
-						requestPath = requestPath.substring(1);
-						requestPath = requestPath.replaceAll("//", "/");
-						if (requestPath.length() == 0) {
-							requestPath = "index.html";
-						}
-
-						File testBuildHtml5Directory = new File(testBuildDirectory, "html5/bin");
-						File file = new File(testBuildHtml5Directory, requestPath);
-						if (file.exists()) {
-							byte[] content = readFile(new FileInputStream(file));
-							String extension = null;
-							String fileName = file.getName();
-							int extensionIndex = fileName.lastIndexOf(".");
-							if (extensionIndex != -1) {
-								extension = fileName.substring(extensionIndex + 1);
-							}
-							String mimeType = MIME_MAP.getOrDefault(extension, "application/octet-stream");
-							writeContent(httpExchange, content.length, content, mimeType);
-						} else {
-							writeError(httpExchange, 404, "The requested resource was not found on server");
-						}
-					}
-
-					private byte[] readFile(final InputStream in) throws IOException {
-						ByteArrayOutputStream bout = new ByteArrayOutputStream();
-						OutputStream gout = new DataOutputStream(bout);
-						byte[] bs = new byte[4096];
-						int r;
-						while ((r = in.read(bs)) >= 0) {
-							gout.write(bs, 0, r);
-						}
-						gout.flush();
-						gout.close();
-						in.close();
-						return bout.toByteArray();
-					}
-
-					private void writeContent(HttpExchange httpExchange, int contentLength, byte[] content,
-							String contentType) throws IOException {
-						httpExchange.getResponseHeaders().set("Content-Type", contentType);
-						httpExchange.sendResponseHeaders(200, contentLength);
-						httpExchange.getResponseBody().write(content);
-						httpExchange.getResponseBody().close();
-					}
-
-					private void writeError(HttpExchange httpExchange, int respCode, String errDesc)
-							throws IOException {
-						String message = "HTTP error " + respCode + ": " + errDesc;
-						byte[] messageBytes = message.getBytes("UTF-8");
-
-						httpExchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
-						httpExchange.sendResponseHeaders(respCode, messageBytes.length);
-
-						OutputStream os = httpExchange.getResponseBody();
-						os.write(messageBytes);
-						os.close();
-					}
-				});
-				httpServer.start();
-
-				Playwright playwright = Playwright.create();
-				Browser browser = playwright.chromium().launch();
-				Page page = browser.newPage();
-				page.onConsoleMessage((t) -> {
-					switch (t.type()) {
+				try (TraceRecorder.Span span = traceSpan("server", "start server")) {
+					httpServer = HttpServer.create(new InetSocketAddress("localhost", 3000), 0);
+					httpServer.createContext("/", new StaticFileHandler(new File(testBuildDirectory, "html5/bin")));
+					httpServer.start();
+				}
+				browserSession = newBrowserSession();
+				browserSession.onConsoleMessage((type, text) -> {
+					switch (type) {
 						case "error":
-							getLog().error(t.text());
+							getLog().error(text);
 							break;
 						case "info":
-							getLog().info(t.text());
+							getLog().info(text);
 							break;
 						case "warning":
-							getLog().warn(t.text());
+							getLog().warn(text);
 							break;
 						case "debug":
-							getLog().debug(t.text());
+							getLog().debug(text);
 							break;
 						default:
-							getLog().info(t.text());
+							getLog().info(text);
 					}
 				});
-				page.navigate("http://localhost:3000/");
-				page.evaluate("console.log(navigator.userAgent)");
-				JSHandle resultHandle = page.waitForFunction("() => window[\"utestResult\"]");
-				JSHandle statsHandle = resultHandle.getProperty("stats");
-				JSHandle isOkHandle = statsHandle.getProperty("isOk");
-				Object isOk = isOkHandle.jsonValue();
-				page.close();
-				browser.close();
-				playwright.close();
-				if (!isOk.equals(true)) {
-					throw new MojoFailureException("Lime test run failure. Process exited with code: 1");
+				try (TraceRecorder.Span span = traceSpan("tests", "run html5 tests")) {
+					browserSession.navigate("http://localhost:3000/");
+					browserSession.evaluate("console.log(navigator.userAgent)");
+					browserSession.waitForFunction("() => window[\"utestResult\"]", 30000.0);
+					isOk = browserSession.evaluate("() => window[\"utestResult\"].stats.isOk");
+					span.arg("isOk", isOk);
 				}
 			} catch (Exception e) {
 				throw new MojoExecutionException("Fatal error running Lime tests", e);
+			} finally {
+				if (browserSession != null) {
+					browserSession.close();
+				}
+				releaseBrowser();
+				if (httpServer != null) {
+					httpServer.stop(0);
+				}
+			}
+			if (!Boolean.TRUE.equals(isOk)) {
+				throw new MojoFailureException("Lime test run failure. Process exited with code: 1");
 			}
 		} else {
-			Commandline commandLine = new Commandline();
-			commandLine.setWorkingDirectory(basedir);
-			commandLine.setExecutable(getHaxelibPath());
-			commandLine.createArg().setValue("run");
-			commandLine.createArg().setValue("lime");
-			commandLine.createArg().setValue("run");
-			commandLine.createArg().setValue(projectFile.getAbsolutePath());
-			commandLine.createArg().setValue(target);
+			Commandline commandLine = createLimeCommandLine("run");
 			commandLine.createArg().setValue("--app-path=" + testBuildDirectory.getAbsolutePath());
 			commandLine.createArg().setValue("--app-file=TestsMain");
 
@@ -218,7 +159,7 @@ public class TestMojo extends BaseMojo {
 
 			int exitCode = 1;
 			try {
-				exitCode = CommandLineUtils.executeCommandLine(commandLine, systemOut, systemErr);
+				exitCode = executeLime(commandLine, systemOut, systemErr);
 			} catch (Exception e) {
 				throw new MojoExecutionException("Fatal error running Lime tests", e);
 			}
@@ -227,4 +168,36 @@ public class TestMojo extends BaseMojo {
 			}
 		}
 	}
+
+	private void runInterpTests() throws MojoExecutionException, MojoFailureException {
+		File interpBuildDirectory = new File(testBuildDirectory, INTERP_DIRECTORY_NAME);
+		if (!interpBuildDirectory.exists()) {
+			return;
+		}
+		Commandline commandLine = new Commandline();
+		commandLine.setWorkingDirectory(interpBuildDirectory);
+		if ("hl".equals(testMode)) {
+			commandLine.setExecutable(hlExecutable != null ? hlExecutable.getAbsolutePath() : "hl");
+			commandLine.createArg().setValue(INTERP_HL_FILE_NAME);
+		} else {
+			commandLine.setExecutable(getHaxePath());
+			configureHaxelibRepository(commandLine);
+			commandLine.createArg().setValue(INTERP_HXML_FILE_NAME);
+		}
+
+		WriterStreamConsumer systemOut = new WriterStreamConsumer(
+				new OutputStreamWriter(new LogOutputStream(getLog(), false)));
+		WriterStreamConsumer systemErr = new WriterStreamConsumer(
+				new OutputStreamWriter(new LogOutputStream(getLog(), true)));
+
+		int exitCode = 1;
+		try {
+			exitCode = executeCommandLine("run " + testMode + " tests", commandLine, systemOut, systemErr);
+		} catch (Exception e) {
+			throw new MojoExecutionException("Fatal error running Haxe tests", e);
+		}
+		if (exitCode != 0) {
+			throw new MojoFailureException("Haxe test run failure. Process exited with code: " + exitCode);
+		}
+	}
 }
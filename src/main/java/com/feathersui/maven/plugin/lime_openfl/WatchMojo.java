@@ -0,0 +1,219 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.feathersui.maven.plugin.lime_openfl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import com.feathersui.maven.plugin.utils.FileWatcher;
+import com.feathersui.maven.plugin.utils.LogOutputStream;
+import com.feathersui.maven.plugin.utils.TraceRecorder;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Execute;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamPumper;
+import org.codehaus.plexus.util.cli.WriterStreamConsumer;
+
+/**
+ * Builds a <a href="https://lime.software/">Lime</a>,
+ * <a href="https://openfl.org/">OpenFL</a>, or
+ * <a href="https://feathersui.com/">Feathers UI</a> project, and then
+ * watches its sources, assets, and <em>project.xml</em> file, and builds it
+ * again after every change. Haxelib checks run only once, and compilation
+ * uses a Haxe compilation server that stays warm between builds. Runs until
+ * the process is stopped.
+ *
+ * <p>
+ * The project's <em>generate-resources</em> phase runs once before the first
+ * build, so that a generated <em>project.xml</em> file is up-to-date.
+ * </p>
+ */
+@Mojo(name = "watch")
+@Execute(phase = LifecyclePhase.GENERATE_RESOURCES)
+public class WatchMojo extends BuildMojo {
+	/**
+	 * The number of milliseconds to wait after a change for more changes
+	 * before building, so that saving many files at once results in a single
+	 * build.
+	 */
+	@Parameter(defaultValue = "200", property = "lime.watchDebounce")
+	public long watchDebounce;
+
+	/**
+	 * Specify if a Haxe compilation server should be started with
+	 * {@code haxe --wait} and used for every build, so that unchanged modules
+	 * don't need to be typed again.
+	 *
+	 * @see <a href="https://haxe.org/manual/cr-completion-server.html">Haxe
+	 *      Manual: Completion server</a>
+	 */
+	@Parameter(defaultValue = "true", property = "lime.compileServer")
+	public boolean compileServer;
+
+	/**
+	 * The port used by the Haxe compilation server, if
+	 * {@link #compileServer} is enabled.
+	 */
+	@Parameter(defaultValue = "6000", property = "lime.compileServerPort")
+	public int compileServerPort;
+
+	private static final long COMPILE_SERVER_TIMEOUT = 10L * 1000L;
+
+	private boolean compileServerRunning = false;
+
+	@Override
+	protected void build() throws CommandLineException, MojoExecutionException, MojoFailureException {
+		Process compileServerProcess = startCompileServer();
+		Thread shutdownHook = new Thread(() -> {
+			if (compileServerProcess != null) {
+				compileServerProcess.destroy();
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+		try {
+			while (true) {
+				// start watching before building, so that changes made during
+				// the build aren't missed
+				try (FileWatcher watcher = new FileWatcher(getWatchedPaths())) {
+					rebuild();
+					getLog().info("Watching for changes... Press Ctrl+C to stop");
+					Set<Path> changes = watcher.awaitChanges(watchDebounce);
+					if (changes.size() == 1) {
+						getLog().info("Changed: " + changes.iterator().next());
+					} else {
+						getLog().info("Changed: " + (changes.isEmpty() ? "many" : changes.size()) + " files");
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			throw new MojoExecutionException("Fatal error watching Lime project", e);
+		} finally {
+			if (compileServerProcess != null) {
+				compileServerProcess.destroy();
+			}
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (IllegalStateException e) {
+				// already shutting down
+			}
+		}
+	}
+
+	/**
+	 * Builds the project once. A build failure is reported, but doesn't stop
+	 * watching for changes.
+	 */
+	protected boolean rebuild() throws CommandLineException, MojoExecutionException {
+		try (TraceRecorder.Span span = traceSpan("watch", "rebuild")) {
+			long startTime = System.currentTimeMillis();
+			try {
+				super.build();
+			} catch (MojoFailureException e) {
+				getLog().error(e.getMessage());
+				getLog().error("Build failed after " + (System.currentTimeMillis() - startTime) + " ms");
+				return false;
+			}
+			getLog().info("Build finished in " + (System.currentTimeMillis() - startTime) + " ms");
+			return true;
+		} finally {
+			writeTrace();
+		}
+	}
+
+	@Override
+	protected void configureBuild(Commandline commandLine) {
+		super.configureBuild(commandLine);
+		if (compileServerRunning) {
+			commandLine.createArg().setValue("--haxeflag=--connect " + compileServerPort);
+		}
+	}
+
+	/**
+	 * Returns the files and directories that are watched for changes. The
+	 * list is created again after every build because the
+	 * <em>project.xml</em> file may have changed.
+	 */
+	protected List<Path> getWatchedPaths() throws Exception {
+		List<Path> result = new ArrayList<>();
+		result.add(projectFile.toPath());
+		for (File input : getProjectInputPaths()) {
+			result.add(input.toPath());
+		}
+		if (additionalSources != null) {
+			for (String current : additionalSources) {
+				File file = new File(current);
+				result.add((file.isAbsolute() ? file : new File(basedir, current)).toPath());
+			}
+		}
+		return result;
+	}
+
+	private Process startCompileServer() throws CommandLineException {
+		try (TraceRecorder.Span span = traceSpan("server", "start compile server")) {
+			if (!compileServer) {
+				return null;
+			}
+			Commandline commandLine = new Commandline();
+			commandLine.setWorkingDirectory(basedir);
+			commandLine.setExecutable(getHaxePath());
+			configureHaxelibRepository(commandLine);
+			commandLine.createArg().setValue("--wait");
+			commandLine.createArg().setValue(Integer.toString(compileServerPort));
+			Process process = commandLine.execute();
+			new StreamPumper(process.getInputStream(),
+					new WriterStreamConsumer(new OutputStreamWriter(new LogOutputStream(getLog(), false)))).start();
+			new StreamPumper(process.getErrorStream(),
+					new WriterStreamConsumer(new OutputStreamWriter(new LogOutputStream(getLog(), true)))).start();
+
+			long timeout = System.currentTimeMillis() + COMPILE_SERVER_TIMEOUT;
+			while (System.currentTimeMillis() < timeout && process.isAlive()) {
+				try (Socket socket = new Socket()) {
+					socket.connect(new InetSocketAddress("127.0.0.1", compileServerPort), 500);
+					compileServerRunning = true;
+					getLog().info("Haxe compilation server listening on port " + compileServerPort);
+					return process;
+				} catch (IOException e) {
+					try {
+						Thread.sleep(100);
+					} catch (InterruptedException e2) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+			}
+			process.destroy();
+			getLog().warn("Failed to start Haxe compilation server on port " + compileServerPort
+					+ ". Building without it.");
+			return null;
+		}
+	}
+}
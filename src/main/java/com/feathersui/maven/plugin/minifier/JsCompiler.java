@@ -0,0 +1,41 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.minifier;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Minifies a JavaScript file. The implementation is loaded on demand by
+ * {@link MinifierLoader}, so that its dependencies aren't resolved by builds
+ * that never minify. Implementations must have a public constructor without
+ * arguments.
+ */
+public interface JsCompiler {
+	/**
+	 * Returns the minified contents of a JavaScript file, and its updated
+	 * source map, or {@code null} if it doesn't have one.
+	 *
+	 * @param compilationLevel one of {@code WHITESPACE_ONLY},
+	 *                         {@code SIMPLE_OPTIMIZATIONS}, or
+	 *                         {@code ADVANCED_OPTIMIZATIONS}
+	 * @param hasMap           {@code true} if the file has a <em>.map</em>
+	 *                         file, which is referenced by its
+	 *                         {@code sourceMappingURL} comment
+	 * @throws IllegalArgumentException if the compilation level is unknown
+	 */
+	String[] compile(File jsFile, String compilationLevel, boolean hasMap) throws IOException;
+}
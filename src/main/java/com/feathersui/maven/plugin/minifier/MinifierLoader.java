@@ -0,0 +1,83 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.minifier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Properties;
+
+import com.feathersui.maven.plugin.utils.OnDemandDependencies;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Loads the Closure Compiler implementation on demand. The Closure Compiler
+ * is large, and minification is an optional step of html5 release builds,
+ * so it isn't a dependency of the plugin at runtime. The first build that
+ * minifies resolves it from the project's plugin repositories, and loads it
+ * in a child-first class loader that is shared by the rest of the Maven
+ * session. If the Closure Compiler was added to the plugin's dependencies,
+ * it's used directly instead.
+ */
+public class MinifierLoader {
+	private static final String IMPLEMENTATION_PACKAGE = "com.feathersui.maven.plugin.minifier.closure.";
+	private static final String COMPILER_CLASS_NAME = IMPLEMENTATION_PACKAGE + "ClosureJsCompiler";
+	private static final String CLOSURE_COMPILER_CLASS_NAME = "com.google.javascript.jscomp.Compiler";
+	private static final String PROPERTIES_FILE_NAME = "closure-compiler.properties";
+
+	private static JsCompiler compiler;
+
+	/**
+	 * Returns the shared JavaScript compiler, resolving and loading it first,
+	 * if necessary.
+	 */
+	public static synchronized JsCompiler getCompiler(RepositorySystem repositorySystem,
+			RepositorySystemSession repositorySession, List<RemoteRepository> repositories)
+			throws IOException {
+		if (compiler != null) {
+			return compiler;
+		}
+		ClassLoader classLoader = OnDemandDependencies.createClassLoader(
+				"com.google.javascript:closure-compiler:" + getClosureCompilerVersion(),
+				CLOSURE_COMPILER_CLASS_NAME, IMPLEMENTATION_PACKAGE, repositorySystem, repositorySession,
+				repositories);
+		try {
+			Class<?> compilerClass = Class.forName(COMPILER_CLASS_NAME, true, classLoader);
+			compiler = (JsCompiler) compilerClass.getConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new IOException("Failed to load JavaScript minifier implementation", e);
+		}
+		return compiler;
+	}
+
+	/**
+	 * Returns the version of the Closure Compiler that the plugin was compiled
+	 * with.
+	 */
+	public static String getClosureCompilerVersion() throws IOException {
+		Properties properties = new Properties();
+		try (InputStream stream = MinifierLoader.class.getResourceAsStream(PROPERTIES_FILE_NAME)) {
+			if (stream == null) {
+				throw new IOException("Missing resource: " + PROPERTIES_FILE_NAME);
+			}
+			properties.load(stream);
+		}
+		return properties.getProperty("version");
+	}
+}
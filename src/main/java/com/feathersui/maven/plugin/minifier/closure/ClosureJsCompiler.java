@@ -0,0 +1,135 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.minifier.closure;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.feathersui.maven.plugin.minifier.JsCompiler;
+import com.feathersui.maven.plugin.utils.Json;
+import com.google.javascript.jscomp.CommandLineRunner;
+import com.google.javascript.jscomp.CompilationLevel;
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.JSError;
+import com.google.javascript.jscomp.Result;
+import com.google.javascript.jscomp.SortingErrorManager;
+import com.google.javascript.jscomp.SourceFile;
+
+/**
+ * A {@link JsCompiler} that uses the
+ * <a href="https://github.com/google/closure-compiler">Closure Compiler</a>.
+ * If a file has a <em>.map</em> file, the source map is updated so that it
+ * maps the minified code to the original sources.
+ */
+public class ClosureJsCompiler implements JsCompiler {
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+	private static final String SOURCE_MAPPING_URL_PREFIX = "//# sourceMappingURL=";
+
+	@Override
+	public String[] compile(File jsFile, String compilationLevel, boolean hasMap) throws IOException {
+		CompilationLevel level = CompilationLevel.fromString(compilationLevel);
+		if (level == null) {
+			throw new IllegalArgumentException("Unknown compilation level: " + compilationLevel);
+		}
+		String fileName = jsFile.getName();
+		File directory = jsFile.getAbsoluteFile().getParentFile();
+		CompilerOptions options = new CompilerOptions();
+		level.setOptionsForCompilationLevel(options);
+		options.setLanguageIn(CompilerOptions.LanguageMode.ECMASCRIPT_NEXT);
+		// don't transpile or add polyfills that the original code didn't need
+		options.setLanguageOut(CompilerOptions.LanguageMode.NO_TRANSPILE);
+		options.setEmitUseStrict(false);
+		if (hasMap) {
+			options.setSourceMapOutputPath(fileName + ".map");
+			options.setApplyInputSourceMaps(true);
+			// input source maps passed in the options are discarded before
+			// they are applied, so let the compiler load the map from the
+			// sourceMappingURL comment instead
+			options.setResolveSourceMapAnnotations(true);
+		}
+
+		// collects errors without printing them, because they're reported in
+		// the exception instead
+		SortingErrorManager errorManager = new SortingErrorManager(Collections.emptySet());
+		Compiler compiler = new Compiler();
+		compiler.setErrorManager(errorManager);
+		List<SourceFile> externs = level == CompilationLevel.ADVANCED_OPTIMIZATIONS
+				? CommandLineRunner.getBuiltinExterns(CompilerOptions.Environment.BROWSER)
+				: Collections.emptyList();
+		SourceFile input = SourceFile.fromFile(jsFile.getAbsolutePath(), UTF_8);
+		Result result = compiler.compile(externs, Collections.singletonList(input), options);
+		if (!result.success) {
+			StringBuilder message = new StringBuilder();
+			message.append("Failed to minify ");
+			message.append(fileName);
+			List<JSError> errors = errorManager.getErrors();
+			for (JSError error : errors.size() > 0 ? errors : result.errors) {
+				message.append("\n");
+				message.append(error.toString());
+			}
+			throw new IOException(message.toString());
+		}
+
+		String output = compiler.toSource();
+		String outputMap = null;
+		if (hasMap) {
+			StringBuilder mapBuilder = new StringBuilder();
+			compiler.getSourceMap().appendTo(mapBuilder, fileName);
+			outputMap = relativizeSources(mapBuilder.toString(), directory);
+			output += "\n" + SOURCE_MAPPING_URL_PREFIX + fileName + ".map\n";
+		}
+		return new String[] { output, outputMap };
+	}
+
+	/**
+	 * The compiler resolves the original sources against the absolute path
+	 * of the input, so make them relative to the output directory again.
+	 */
+	@SuppressWarnings("unchecked")
+	private static String relativizeSources(String map, File directory) {
+		Map<String, Object> json = (Map<String, Object>) Json.parse(map);
+		Object sources = json.get("sources");
+		if (!(sources instanceof List)) {
+			return map;
+		}
+		Path directoryPath = directory.toPath().normalize();
+		List<Object> relativeSources = new ArrayList<>();
+		for (Object source : (List<Object>) sources) {
+			Path sourcePath = Paths.get(source.toString());
+			if (sourcePath.isAbsolute() && sourcePath.getRoot().equals(directoryPath.getRoot())) {
+				source = directoryPath.relativize(sourcePath.normalize()).toString().replace('\\', '/');
+			}
+			relativeSources.add(source);
+		}
+		json.put("sources", relativeSources);
+		for (Map.Entry<String, Object> entry : json.entrySet()) {
+			// numbers are parsed as doubles, but fields like version must
+			// remain integers
+			if (entry.getValue() instanceof Double) {
+				entry.setValue(((Double) entry.getValue()).longValue());
+			}
+		}
+		return Json.stringify(json);
+	}
+}
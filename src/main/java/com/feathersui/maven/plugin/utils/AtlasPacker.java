@@ -0,0 +1,181 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs sprites into one or more texture atlas pages using a shelf
+ * algorithm, and generates descriptors in the TexturePacker JSON hash and
+ * Sparrow/Starling XML formats.
+ */
+public class AtlasPacker {
+	public static class Sprite {
+		public Sprite(String name, BufferedImage image) {
+			this.name = name;
+			this.image = image;
+		}
+
+		public String name;
+		public BufferedImage image;
+		public int x;
+		public int y;
+		public int page;
+	}
+
+	public static class Page {
+		public List<Sprite> sprites = new ArrayList<>();
+		public int width;
+		public int height;
+		public BufferedImage image;
+	}
+
+	public AtlasPacker(int maxSize, int padding) {
+		this.maxSize = maxSize;
+		this.padding = padding;
+	}
+
+	private int maxSize;
+	private int padding;
+
+	public List<Page> pack(List<Sprite> sprites) {
+		List<Sprite> sorted = new ArrayList<>(sprites);
+		sorted.sort(Comparator.comparingInt((Sprite sprite) -> sprite.image.getHeight())
+				.thenComparingInt(sprite -> sprite.image.getWidth()).reversed()
+				.thenComparing(sprite -> sprite.name));
+
+		List<Page> pages = new ArrayList<>();
+		Page page = null;
+		int shelfX = 0;
+		int shelfY = 0;
+		int shelfHeight = 0;
+		for (Sprite sprite : sorted) {
+			int width = sprite.image.getWidth();
+			int height = sprite.image.getHeight();
+			if (width > maxSize || height > maxSize) {
+				// too big to share a page, so it gets one of its own
+				Page ownPage = new Page();
+				sprite.page = pages.size();
+				ownPage.sprites.add(sprite);
+				ownPage.width = width;
+				ownPage.height = height;
+				pages.add(ownPage);
+				page = null;
+				continue;
+			}
+			if (page != null && shelfX + width > maxSize) {
+				shelfY += shelfHeight + padding;
+				shelfX = 0;
+				shelfHeight = 0;
+			}
+			if (page == null || shelfY + height > maxSize) {
+				page = new Page();
+				pages.add(page);
+				shelfX = 0;
+				shelfY = 0;
+				shelfHeight = 0;
+			}
+			sprite.x = shelfX;
+			sprite.y = shelfY;
+			sprite.page = pages.indexOf(page);
+			page.sprites.add(sprite);
+			page.width = Math.max(page.width, shelfX + width);
+			page.height = Math.max(page.height, shelfY + height);
+			shelfX += width + padding;
+			shelfHeight = Math.max(shelfHeight, height);
+		}
+
+		for (Page current : pages) {
+			BufferedImage image = new BufferedImage(current.width, current.height, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D graphics = image.createGraphics();
+			for (Sprite sprite : current.sprites) {
+				graphics.drawImage(sprite.image, sprite.x, sprite.y, null);
+			}
+			graphics.dispose();
+			current.image = image;
+		}
+		return pages;
+	}
+
+	public static String toJson(Page page, String imageFileName) {
+		Map<String, Object> frames = new LinkedHashMap<>();
+		for (Sprite sprite : page.sprites) {
+			int width = sprite.image.getWidth();
+			int height = sprite.image.getHeight();
+			Map<String, Object> frame = new LinkedHashMap<>();
+			frame.put("frame", rect(sprite.x, sprite.y, width, height));
+			frame.put("rotated", false);
+			frame.put("trimmed", false);
+			frame.put("spriteSourceSize", rect(0, 0, width, height));
+			Map<String, Object> sourceSize = new LinkedHashMap<>();
+			sourceSize.put("w", width);
+			sourceSize.put("h", height);
+			frame.put("sourceSize", sourceSize);
+			frames.put(sprite.name, frame);
+		}
+		Map<String, Object> size = new LinkedHashMap<>();
+		size.put("w", page.width);
+		size.put("h", page.height);
+		Map<String, Object> meta = new LinkedHashMap<>();
+		meta.put("app", "lime-openfl-maven-plugin");
+		meta.put("image", imageFileName);
+		meta.put("format", "RGBA8888");
+		meta.put("size", size);
+		meta.put("scale", "1");
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("frames", frames);
+		json.put("meta", meta);
+		return Json.stringify(json);
+	}
+
+	public static String toXml(Page page, String imageFileName) {
+		StringBuilder builder = new StringBuilder()
+				.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
+				.append("<TextureAtlas imagePath=\"")
+				.append(escapeXml(imageFileName))
+				.append("\">\n");
+		for (Sprite sprite : page.sprites) {
+			builder.append("  <SubTexture name=\"")
+					.append(escapeXml(sprite.name))
+					.append("\" x=\"").append(sprite.x)
+					.append("\" y=\"").append(sprite.y)
+					.append("\" width=\"").append(sprite.image.getWidth())
+					.append("\" height=\"").append(sprite.image.getHeight())
+					.append("\"/>\n");
+		}
+		builder.append("</TextureAtlas>\n");
+		return builder.toString();
+	}
+
+	private static Map<String, Object> rect(int x, int y, int width, int height) {
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("x", x);
+		result.put("y", y);
+		result.put("w", width);
+		result.put("h", height);
+		return result;
+	}
+
+	private static String escapeXml(String value) {
+		return value.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+}
@@ -0,0 +1,137 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A local cache of build output directories, keyed by a hash of every input
+ * of the build.
+ */
+public class BuildCache {
+	private static final String TEMP_SUFFIX = ".tmp";
+	// entries used in the last few minutes may be restored by another build
+	private static final long MIN_AGE = 10L * 60L * 1000L;
+
+	public BuildCache(File directory, long maxBytes, long maxAgeMillis) {
+		this.cacheDirectory = new LruCacheDirectory(directory);
+		this.maxBytes = maxBytes;
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	private LruCacheDirectory cacheDirectory;
+	private long maxBytes;
+	private long maxAgeMillis;
+
+	public boolean contains(String key) {
+		return Files.isDirectory(cacheDirectory.getRoot().resolve(key));
+	}
+
+	/**
+	 * Replaces the contents of the output directory with a copy of a cached
+	 * entry, if one exists. The files are never linked to the entry, because
+	 * later builds and output processing rewrite them in place.
+	 *
+	 * @return {@code true} if the entry was found and restored
+	 */
+	public boolean restore(String key, File outputDirectory) throws IOException {
+		Path entryPath = cacheDirectory.getRoot().resolve(key);
+		if (!Files.isDirectory(entryPath)) {
+			return false;
+		}
+		// mark as recently used, so that it isn't evicted while restoring
+		cacheDirectory.touch(entryPath);
+		FileUtils.deleteDirectory(outputDirectory);
+		Path outputPath = outputDirectory.toPath();
+		List<Path> files = null;
+		try (Stream<Path> stream = Files.walk(entryPath)) {
+			files = stream.collect(Collectors.toList());
+		}
+		for (Path file : files) {
+			Path target = outputPath.resolve(entryPath.relativize(file).toString());
+			if (Files.isDirectory(file)) {
+				Files.createDirectories(target);
+				continue;
+			}
+			Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+		}
+		return true;
+	}
+
+	/**
+	 * Copies the output directory into the cache. Files and directories named
+	 * in {@code excludedNames} are skipped.
+	 */
+	public void store(String key, File outputDirectory, List<String> excludedNames) throws IOException {
+		Path entryPath = cacheDirectory.getRoot().resolve(key);
+		if (Files.isDirectory(entryPath) || !outputDirectory.isDirectory()) {
+			return;
+		}
+		Files.createDirectories(cacheDirectory.getRoot());
+		Path tempPath = cacheDirectory.getRoot().resolve(key + "-" + UUID.randomUUID() + TEMP_SUFFIX);
+		try {
+			FileUtils.copyDirectory(outputDirectory, tempPath.toFile(),
+					file -> !excludedNames.contains(file.getName()), true);
+			try {
+				Files.move(tempPath, entryPath);
+			} catch (FileAlreadyExistsException e) {
+				// another build stored the same entry first
+			} catch (IOException e) {
+				if (!Files.isDirectory(entryPath)) {
+					throw e;
+				}
+			}
+		} finally {
+			FileUtils.deleteDirectory(tempPath.toFile());
+		}
+	}
+
+	/**
+	 * Removes the least recently used entries, if the cache is larger than
+	 * its maximum size, and entries older than the maximum age. Skipped if
+	 * another build is already doing it.
+	 *
+	 * @return the number of bytes that were deleted
+	 */
+	public long evict() throws IOException {
+		try (Closeable lock = cacheDirectory.tryLock()) {
+			if (lock == null) {
+				return 0;
+			}
+			long now = System.currentTimeMillis();
+			List<Path> entries = cacheDirectory.listEntries().stream().filter(path -> {
+				if (!path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+					return true;
+				}
+				// abandoned by a build that crashed
+				return now - path.toFile().lastModified() > MIN_AGE;
+			}).collect(Collectors.toList());
+			return cacheDirectory.evict(entries, maxBytes, MIN_AGE, maxAgeMillis);
+		}
+	}
+}
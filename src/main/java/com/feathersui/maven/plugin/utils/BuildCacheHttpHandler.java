@@ -0,0 +1,160 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * A file-backed implementation of the server side of the
+ * {@link RemoteBuildCache} protocol.
+ *
+ * <p>
+ * Anyone who can upload archives can change the output that other builds
+ * restore, including native executables. If a token is specified, uploads
+ * must send it with the {@code Authorization: Bearer} header. Otherwise,
+ * uploads are accepted only from the loopback address. An archive that
+ * already exists is never replaced.
+ * </p>
+ */
+public class BuildCacheHttpHandler implements HttpHandler {
+	private static final Pattern KEY_PATTERN = Pattern.compile("^[0-9a-f]{64}\\.zip$");
+	// archives read in the last few minutes may still be downloading
+	private static final long MIN_AGE = 5L * 60L * 1000L;
+	private static final String BEARER_PREFIX = "Bearer ";
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+
+	public BuildCacheHttpHandler(File directory, long maxBytes, String token) {
+		this.cacheDirectory = new LruCacheDirectory(directory);
+		this.maxBytes = maxBytes;
+		this.token = token;
+	}
+
+	private LruCacheDirectory cacheDirectory;
+	private long maxBytes;
+	private String token;
+
+	@Override
+	public void handle(HttpExchange httpExchange) throws IOException {
+		try {
+			if ("HEAD".equals(httpExchange.getRequestMethod())) {
+				// HttpServer can't reuse a connection after a HEAD response, so
+				// tell the client not to try
+				httpExchange.getResponseHeaders().set("Connection", "close");
+			}
+			String path = httpExchange.getRequestURI().getPath();
+			String fileName = path.substring(path.lastIndexOf('/') + 1);
+			if (!KEY_PATTERN.matcher(fileName).matches()) {
+				sendStatus(httpExchange, 404);
+				return;
+			}
+			Path file = cacheDirectory.getRoot().resolve(fileName);
+			switch (httpExchange.getRequestMethod()) {
+				case "GET":
+				case "HEAD":
+					handleGet(httpExchange, file);
+					break;
+				case "PUT":
+					if (!isUploadAllowed(httpExchange)) {
+						sendStatus(httpExchange, 403);
+						break;
+					}
+					handlePut(httpExchange, file);
+					break;
+				default:
+					sendStatus(httpExchange, 405);
+			}
+		} finally {
+			httpExchange.close();
+		}
+	}
+
+	private void handleGet(HttpExchange httpExchange, Path file) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			sendStatus(httpExchange, 404);
+			return;
+		}
+		boolean head = "HEAD".equals(httpExchange.getRequestMethod());
+		httpExchange.getResponseHeaders().set("Content-Type", "application/zip");
+		if (head) {
+			httpExchange.sendResponseHeaders(200, -1);
+			return;
+		}
+		cacheDirectory.touch(file);
+		httpExchange.sendResponseHeaders(200, Files.size(file));
+		try (OutputStream output = httpExchange.getResponseBody()) {
+			Files.copy(file, output);
+		}
+	}
+
+	private boolean isUploadAllowed(HttpExchange httpExchange) {
+		if (token == null) {
+			InetAddress address = httpExchange.getRemoteAddress().getAddress();
+			return address != null && address.isLoopbackAddress();
+		}
+		String authorization = httpExchange.getRequestHeaders().getFirst("Authorization");
+		if (authorization == null || !authorization.startsWith(BEARER_PREFIX)) {
+			return false;
+		}
+		// compare in constant time, so the token can't be guessed by timing
+		return MessageDigest.isEqual(token.getBytes(UTF_8),
+				authorization.substring(BEARER_PREFIX.length()).getBytes(UTF_8));
+	}
+
+	private void handlePut(HttpExchange httpExchange, Path file) throws IOException {
+		if (Files.exists(file)) {
+			// the key is a hash of the build's inputs, so an existing archive
+			// is never replaced by a different one
+			sendStatus(httpExchange, 204);
+			return;
+		}
+		Files.createDirectories(cacheDirectory.getRoot());
+		Path tempFile = cacheDirectory.getRoot().resolve(file.getFileName() + "-" + UUID.randomUUID() + ".tmp");
+		try {
+			try (InputStream input = httpExchange.getRequestBody()) {
+				Files.copy(input, tempFile);
+			}
+			try {
+				Files.move(tempFile, file);
+			} catch (FileAlreadyExistsException e) {
+				// another build uploaded the same key first
+			}
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+		sendStatus(httpExchange, 201);
+		synchronized (this) {
+			cacheDirectory.evict(cacheDirectory.listEntries(), maxBytes, MIN_AGE, 0);
+		}
+	}
+
+	private void sendStatus(HttpExchange httpExchange, int status) throws IOException {
+		httpExchange.sendResponseHeaders(status, -1);
+	}
+}
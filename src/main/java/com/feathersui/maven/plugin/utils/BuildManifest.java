@@ -0,0 +1,182 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Records the size and last modified time of every input file of a build,
+ * grouped by kind, so that the next build can determine which kinds of
+ * inputs have changed.
+ */
+public class BuildManifest {
+	// change when the format of the manifest changes
+	private static final String VERSION = "1";
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+
+	public enum Kind {
+		CODE, ASSETS, OTHER
+	}
+
+	public enum Change {
+		/**
+		 * No inputs have changed.
+		 */
+		NONE,
+		/**
+		 * Only the contents of existing assets have changed.
+		 */
+		ASSETS_ONLY,
+		/**
+		 * Only code has changed.
+		 */
+		CODE_ONLY,
+		/**
+		 * Multiple kinds of inputs have changed, the configuration has
+		 * changed, or assets have been added or removed.
+		 */
+		MIXED
+	}
+
+	/**
+	 * @param config a hash of the build's configuration. If it changes,
+	 *               every input is considered changed.
+	 */
+	public BuildManifest(String config) {
+		this.config = config;
+		for (Kind kind : Kind.values()) {
+			files.put(kind, new TreeMap<>());
+		}
+	}
+
+	private String config;
+	private Map<Kind, Map<String, String>> files = new LinkedHashMap<>();
+
+	/**
+	 * Adds every file in a directory, or a single file, to the manifest.
+	 *
+	 * @param name a name for the root that doesn't depend on the location
+	 *             of the project, such as a relative path
+	 */
+	public void addInputs(Kind kind, String name, File root) throws IOException {
+		if (!root.exists()) {
+			return;
+		}
+		Map<String, String> kindFiles = files.get(kind);
+		if (root.isFile()) {
+			kindFiles.put(name, fingerprint(root.toPath()));
+			return;
+		}
+		Path rootPath = root.toPath();
+		List<Path> paths = null;
+		try (Stream<Path> stream = Files.walk(rootPath)) {
+			paths = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+		for (Path path : paths) {
+			kindFiles.put(name + "/" + rootPath.relativize(path).toString().replace('\\', '/'), fingerprint(path));
+		}
+	}
+
+	/**
+	 * Compares the inputs to the inputs of a previous build.
+	 *
+	 * @param previous the manifest of the previous build, or {@code null} if
+	 *                 there was no previous build
+	 */
+	public Change compare(BuildManifest previous) {
+		if (previous == null || !config.equals(previous.config)) {
+			return Change.MIXED;
+		}
+		if (!files.get(Kind.OTHER).equals(previous.files.get(Kind.OTHER))) {
+			return Change.MIXED;
+		}
+		Map<String, String> assets = files.get(Kind.ASSETS);
+		Map<String, String> previousAssets = previous.files.get(Kind.ASSETS);
+		// the list of assets is compiled into the code
+		if (!assets.keySet().equals(previousAssets.keySet())) {
+			return Change.MIXED;
+		}
+		boolean codeChanged = !files.get(Kind.CODE).equals(previous.files.get(Kind.CODE));
+		boolean assetsChanged = !assets.equals(previousAssets);
+		if (codeChanged && assetsChanged) {
+			return Change.MIXED;
+		}
+		if (codeChanged) {
+			return Change.CODE_ONLY;
+		}
+		if (assetsChanged) {
+			return Change.ASSETS_ONLY;
+		}
+		return Change.NONE;
+	}
+
+	/**
+	 * Reads a manifest written by a previous build, or returns {@code null}
+	 * if it doesn't exist or can't be read.
+	 */
+	@SuppressWarnings("unchecked")
+	public static BuildManifest read(File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			Map<String, Object> json = (Map<String, Object>) Json
+					.parse(new String(Files.readAllBytes(file.toPath()), UTF_8));
+			if (!VERSION.equals(json.get("version"))) {
+				return null;
+			}
+			BuildManifest result = new BuildManifest((String) json.get("config"));
+			Map<String, Object> jsonFiles = (Map<String, Object>) json.get("files");
+			for (Kind kind : Kind.values()) {
+				Map<String, Object> kindFiles = (Map<String, Object>) jsonFiles.get(kind.name().toLowerCase());
+				for (Map.Entry<String, Object> entry : kindFiles.entrySet()) {
+					result.files.get(kind).put(entry.getKey(), (String) entry.getValue());
+				}
+			}
+			return result;
+		} catch (IOException | RuntimeException e) {
+			// treat an unreadable manifest like a missing one
+			return null;
+		}
+	}
+
+	public void write(File file) throws IOException {
+		Map<String, Object> jsonFiles = new LinkedHashMap<>();
+		for (Map.Entry<Kind, Map<String, String>> entry : files.entrySet()) {
+			jsonFiles.put(entry.getKey().name().toLowerCase(), entry.getValue());
+		}
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("version", VERSION);
+		json.put("config", config);
+		json.put("files", jsonFiles);
+		Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+		Files.write(file.toPath(), Json.stringify(json).getBytes(UTF_8));
+	}
+
+	private static String fingerprint(Path path) throws IOException {
+		return Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis();
+	}
+}
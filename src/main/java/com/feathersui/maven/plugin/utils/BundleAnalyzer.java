@@ -0,0 +1,227 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Measures the files in the output directory of an html5 build, and uses
+ * source maps to attribute the bytes of each JavaScript file to the Haxe
+ * packages and libraries that they were compiled from.
+ */
+public class BundleAnalyzer {
+	public static final String PROJECT_LABEL = "(project)";
+	public static final String STD_LABEL = "(haxe std)";
+	public static final String UNMAPPED_LABEL = "(unmapped)";
+	public static final String OTHER_LABEL = "(other)";
+
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+
+	public static class FileSize {
+		public String path;
+		public long bytes;
+		public long gzipBytes;
+	}
+
+	/**
+	 * @param classPaths class path directories, and the names of the
+	 *                   libraries they belong to
+	 */
+	public BundleAnalyzer(Map<String, String> classPaths) {
+		for (Map.Entry<String, String> entry : classPaths.entrySet()) {
+			this.classPaths.put(normalize(entry.getKey()), entry.getValue());
+		}
+	}
+
+	private Map<String, String> classPaths = new LinkedHashMap<>();
+
+	/**
+	 * Returns the size of every file in the directory, except precompressed
+	 * sidecars and source maps, from largest to smallest.
+	 */
+	public static List<FileSize> measureFiles(File directory) throws IOException {
+		Path directoryPath = directory.toPath();
+		List<Path> files = null;
+		try (Stream<Path> stream = Files.walk(directoryPath)) {
+			files = stream.filter(Files::isRegularFile).filter(path -> {
+				String name = path.getFileName().toString();
+				return !name.endsWith(GzipPrecompressor.EXTENSION) && !name.endsWith(".map");
+			}).collect(Collectors.toList());
+		}
+		List<FileSize> result = new ArrayList<>();
+		for (Path file : files) {
+			FileSize fileSize = new FileSize();
+			fileSize.path = directoryPath.relativize(file).toString().replace('\\', '/');
+			byte[] contents = Files.readAllBytes(file);
+			fileSize.bytes = contents.length;
+			fileSize.gzipBytes = gzipSize(contents);
+			result.add(fileSize);
+		}
+		result.sort(Comparator.comparingLong((FileSize fileSize) -> fileSize.bytes).reversed()
+				.thenComparing(fileSize -> fileSize.path));
+		return result;
+	}
+
+	/**
+	 * Attributes the bytes of a JavaScript file to Haxe libraries and
+	 * packages, using its <em>.map</em> file. Returns {@code null} if the
+	 * source map doesn't exist.
+	 *
+	 * @return a map with "libraries" and "packages" keys, and each value is a
+	 *         map of names to bytes, from largest to smallest
+	 */
+	public Map<String, Map<String, Long>> attribute(File jsFile) throws IOException {
+		File mapFile = new File(jsFile.getPath() + ".map");
+		if (!mapFile.isFile()) {
+			return null;
+		}
+		SourceMap sourceMap = new SourceMap(new String(Files.readAllBytes(mapFile.toPath()), UTF_8));
+		long[] bytes = sourceMap.attributeBytes(new String(Files.readAllBytes(jsFile.toPath()), UTF_8));
+		Map<String, Long> libraries = new HashMap<>();
+		Map<String, Long> packages = new HashMap<>();
+		List<String> sources = sourceMap.getSources();
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] == 0) {
+				continue;
+			}
+			String library = UNMAPPED_LABEL;
+			String packageName = UNMAPPED_LABEL;
+			if (i < sources.size()) {
+				String[] labels = labelSource(resolveSource(sources.get(i), mapFile));
+				library = labels[0];
+				packageName = labels[1];
+			}
+			libraries.merge(library, bytes[i], Long::sum);
+			packages.merge(packageName, bytes[i], Long::sum);
+		}
+		Map<String, Map<String, Long>> result = new LinkedHashMap<>();
+		result.put("libraries", sortBySize(libraries));
+		result.put("packages", sortBySize(packages));
+		return result;
+	}
+
+	private static String resolveSource(String source, File mapFile) {
+		if (source.startsWith("file://")) {
+			source = source.substring(7);
+			// file:///C:/path on Windows
+			if (source.matches("^/[A-Za-z]:/.*")) {
+				source = source.substring(1);
+			}
+		}
+		Path path = Paths.get(source);
+		if (!path.isAbsolute()) {
+			path = mapFile.getAbsoluteFile().getParentFile().toPath().resolve(path);
+		}
+		return path.normalize().toString().replace('\\', '/');
+	}
+
+	/**
+	 * Returns the library and package labels of a source file.
+	 */
+	private String[] labelSource(String source) {
+		String bestClassPath = null;
+		for (String classPath : classPaths.keySet()) {
+			if (source.startsWith(classPath)
+					&& (bestClassPath == null || classPath.length() > bestClassPath.length())) {
+				bestClassPath = classPath;
+			}
+		}
+		String library = OTHER_LABEL;
+		String relativePath = null;
+		if (bestClassPath != null) {
+			library = classPaths.get(bestClassPath);
+			relativePath = source.substring(bestClassPath.length());
+		} else {
+			int stdIndex = source.lastIndexOf("/std/");
+			if (stdIndex != -1) {
+				library = STD_LABEL;
+				relativePath = source.substring(stdIndex + 5);
+			}
+		}
+		if (relativePath == null) {
+			return new String[] { library, OTHER_LABEL };
+		}
+		int slashIndex = relativePath.lastIndexOf('/');
+		String packageName = slashIndex == -1 ? "(default package)" : relativePath.substring(0, slashIndex)
+				.replace('/', '.');
+		return new String[] { library, packageName };
+	}
+
+	private static String normalize(String path) {
+		path = path.replace('\\', '/');
+		return path.endsWith("/") ? path : path + "/";
+	}
+
+	private static Map<String, Long> sortBySize(Map<String, Long> sizes) {
+		Map<String, Long> result = new LinkedHashMap<>();
+		sizes.entrySet().stream()
+				.sorted(Map.Entry.<String, Long>comparingByValue().reversed()
+						.thenComparing(Map.Entry.comparingByKey()))
+				.forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+		return result;
+	}
+
+	private static long gzipSize(byte[] contents) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzipOutput = new GZIPOutputStream(output)) {
+			gzipOutput.write(contents);
+		}
+		return output.size();
+	}
+
+	/**
+	 * Returns {@code true} if a path matches a glob pattern, where {@code **}
+	 * matches any directories, {@code *} matches any characters except
+	 * {@code /}, and {@code ?} matches one character.
+	 */
+	public static boolean matchesGlob(String glob, String path) {
+		StringBuilder regex = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (glob.startsWith("**/", i)) {
+				// also matches zero directories
+				regex.append("(?:.*/)?");
+				i += 2;
+			} else if (glob.startsWith("**", i)) {
+				regex.append(".*");
+				i++;
+			} else if (c == '*') {
+				regex.append("[^/]*");
+			} else if (c == '?') {
+				regex.append("[^/]");
+			} else {
+				regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		return path.matches(regex.toString());
+	}
+}
@@ -0,0 +1,96 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Loads classes from its own URLs before asking its parent, so that an
+ * implementation loaded on demand and its dependencies can't conflict with
+ * the classes that Maven or the plugin already loaded. The plugin's own
+ * classes are always loaded by the parent, except for the implementation
+ * package, so that both sides share the same interfaces.
+ *
+ * @see OnDemandDependencies
+ */
+class ChildFirstClassLoader extends URLClassLoader {
+	private static final String PLUGIN_PACKAGE = "com.feathersui.maven.plugin.";
+
+	static {
+		ClassLoader.registerAsParallelCapable();
+	}
+
+	public ChildFirstClassLoader(URL[] urls, ClassLoader parent, String implementationPackage) {
+		super(urls, parent);
+		this.implementationPackage = implementationPackage;
+	}
+
+	private String implementationPackage;
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		synchronized (getClassLoadingLock(name)) {
+			Class<?> result = findLoadedClass(name);
+			if (result == null) {
+				if (isParentFirst(name)) {
+					result = super.loadClass(name, false);
+				} else {
+					try {
+						result = findClass(name);
+					} catch (ClassNotFoundException e) {
+						result = super.loadClass(name, false);
+					}
+				}
+			}
+			if (resolve) {
+				resolveClass(result);
+			}
+			return result;
+		}
+	}
+
+	@Override
+	public URL getResource(String name) {
+		URL result = findResource(name);
+		if (result == null) {
+			result = super.getResource(name);
+		}
+		return result;
+	}
+
+	@Override
+	public Enumeration<URL> getResources(String name) throws IOException {
+		List<URL> result = new ArrayList<>(Collections.list(findResources(name)));
+		ClassLoader parent = getParent();
+		if (parent != null) {
+			result.addAll(Collections.list(parent.getResources(name)));
+		}
+		return Collections.enumeration(result);
+	}
+
+	private boolean isParentFirst(String name) {
+		if (name.startsWith("java.")) {
+			return true;
+		}
+		return name.startsWith(PLUGIN_PACKAGE) && !name.startsWith(implementationPackage);
+	}
+}
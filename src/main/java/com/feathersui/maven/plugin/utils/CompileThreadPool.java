@@ -0,0 +1,170 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+/**
+ * A pool of compile thread tokens shared by every build in the same Maven
+ * session, similar to a make jobserver. Each native build registers when its
+ * goal starts, acquires a share of the idle tokens right before the compiler
+ * starts, and returns them when it finishes, so that parallel reactor builds
+ * don't oversubscribe the machine's cores and memory.
+ *
+ * <p>
+ * The idle tokens are divided between the builds that are registered, but
+ * don't have a lease yet, so a build that runs alone receives every token,
+ * and tokens returned by finished builds go to the builds that start later.
+ * A lease can't grow or shrink while its build runs, because hxcpp reads its
+ * number of threads only when it starts.
+ * </p>
+ */
+public class CompileThreadPool {
+	private static CompileThreadPool instance;
+
+	/**
+	 * Returns the pool shared by the current Maven session. The size of the
+	 * pool is determined from the number of available processors and the
+	 * amount of physical memory. If builds request different amounts of
+	 * memory per thread, the smallest resulting pool size is used.
+	 */
+	public static synchronized CompileThreadPool getInstance(long memoryPerThreadMegabytes) {
+		int totalTokens = calculateTotalTokens(memoryPerThreadMegabytes);
+		if (instance == null) {
+			instance = new CompileThreadPool(totalTokens);
+		} else if (totalTokens < instance.getTotalTokens()) {
+			instance.shrink(totalTokens);
+		}
+		return instance;
+	}
+
+	// getTotalMemorySize() replaces this method, but it requires Java 14
+	@SuppressWarnings("deprecation")
+	private static int calculateTotalTokens(long memoryPerThreadMegabytes) {
+		int tokens = Runtime.getRuntime().availableProcessors();
+		OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+		if (memoryPerThreadMegabytes > 0 && osBean instanceof com.sun.management.OperatingSystemMXBean) {
+			long totalMemory = ((com.sun.management.OperatingSystemMXBean) osBean).getTotalPhysicalMemorySize();
+			long memoryTokens = totalMemory / (memoryPerThreadMegabytes * 1024L * 1024L);
+			tokens = (int) Math.min(tokens, memoryTokens);
+		}
+		return Math.max(1, tokens);
+	}
+
+	public CompileThreadPool(int totalTokens) {
+		this.totalTokens = totalTokens;
+		this.availableTokens = totalTokens;
+	}
+
+	private int totalTokens;
+	private int availableTokens;
+	private int pendingBuilds = 0;
+
+	public synchronized int getTotalTokens() {
+		return totalTokens;
+	}
+
+	private synchronized void shrink(int newTotalTokens) {
+		// may become negative until leases that were already granted are
+		// returned
+		availableTokens -= totalTokens - newTotalTokens;
+		totalTokens = newTotalTokens;
+	}
+
+	/**
+	 * Registers a build that will acquire a lease later, so that builds that
+	 * acquire their leases first leave a share of the idle tokens for it.
+	 * Close the registration when the build completes.
+	 */
+	public synchronized Registration register() {
+		pendingBuilds++;
+		return new Registration();
+	}
+
+	private synchronized Lease acquire() throws InterruptedException {
+		while (availableTokens <= 0) {
+			wait();
+		}
+		// this build is one of the pending builds
+		int granted = (availableTokens + pendingBuilds - 1) / pendingBuilds;
+		availableTokens -= granted;
+		pendingBuilds--;
+		return new Lease(granted);
+	}
+
+	private synchronized void unregister() {
+		pendingBuilds--;
+	}
+
+	private synchronized void release(int tokens) {
+		availableTokens += tokens;
+		notifyAll();
+	}
+
+	public class Registration implements Closeable {
+		private Registration() {
+		}
+
+		private boolean done = false;
+
+		/**
+		 * Waits until at least one token is available, and then acquires a
+		 * share of the idle tokens for each build that is registered without
+		 * a lease, including this one. May be called only once.
+		 */
+		public Lease acquire() throws InterruptedException {
+			if (done) {
+				throw new IllegalStateException("Compile threads already acquired");
+			}
+			Lease result = CompileThreadPool.this.acquire();
+			done = true;
+			return result;
+		}
+
+		@Override
+		public void close() {
+			if (done) {
+				return;
+			}
+			done = true;
+			unregister();
+		}
+	}
+
+	public class Lease implements Closeable {
+		private Lease(int tokens) {
+			this.tokens = tokens;
+		}
+
+		private int tokens;
+		private boolean released = false;
+
+		public int getTokens() {
+			return tokens;
+		}
+
+		@Override
+		public void close() {
+			if (released) {
+				return;
+			}
+			released = true;
+			release(tokens);
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+/**
+ * Captures the timing table printed by the Haxe compiler's {@code --times}
+ * option, and forwards all other lines to another consumer.
+ */
+public class CompileTimesStreamConsumer implements StreamConsumer {
+	private static final Pattern headerPattern = Pattern.compile("^\\s*name\\s*\\|\\s*time\\(s\\)\\s*\\|.*");
+	private static final Pattern separatorPattern = Pattern.compile("^\\s*-{10,}\\s*$");
+
+	public static class Entry {
+		public String name;
+		public String path;
+		public int depth;
+		public double time;
+		public long count;
+		public String info;
+	}
+
+	public CompileTimesStreamConsumer(StreamConsumer delegate) {
+		this.delegate = delegate;
+	}
+
+	private StreamConsumer delegate;
+	private boolean inTable = false;
+	private List<Entry> entries = new ArrayList<>();
+	private List<String> parents = new ArrayList<>();
+	private Entry total;
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	public Entry getTotal() {
+		return total;
+	}
+
+	@Override
+	public void consumeLine(String line) throws IOException {
+		if (!inTable) {
+			if (headerPattern.matcher(line).matches()) {
+				inTable = true;
+				return;
+			}
+			delegate.consumeLine(line);
+			return;
+		}
+		if (separatorPattern.matcher(line).matches()) {
+			return;
+		}
+		Entry entry = parseRow(line);
+		if (entry == null) {
+			// the table ended without a total row, for some reason
+			inTable = false;
+			delegate.consumeLine(line);
+			return;
+		}
+		if (entry.depth == 0 && "total".equals(entry.name)) {
+			total = entry;
+			inTable = false;
+			return;
+		}
+		while (parents.size() > entry.depth) {
+			parents.remove(parents.size() - 1);
+		}
+		while (parents.size() < entry.depth) {
+			parents.add("?");
+		}
+		StringBuilder pathBuilder = new StringBuilder();
+		for (String parent : parents) {
+			pathBuilder.append(parent).append("/");
+		}
+		pathBuilder.append(entry.name);
+		if (entry.info.length() > 0) {
+			pathBuilder.append(" (").append(entry.info).append(")");
+		}
+		entry.path = pathBuilder.toString();
+		parents.add(entry.name);
+		entries.add(entry);
+	}
+
+	private Entry parseRow(String line) {
+		String[] columns = line.split("\\|", -1);
+		if (columns.length < 5) {
+			return null;
+		}
+		String nameColumn = columns[0];
+		int leadingSpaces = 0;
+		while (leadingSpaces < nameColumn.length() && nameColumn.charAt(leadingSpaces) == ' ') {
+			leadingSpaces++;
+		}
+		Entry entry = new Entry();
+		entry.name = nameColumn.trim();
+		entry.depth = leadingSpaces / 2;
+		try {
+			entry.time = Double.parseDouble(columns[1].trim());
+			entry.count = Long.parseLong(columns[4].trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		entry.info = columns.length > 5 ? columns[5].trim() : "";
+		return entry;
+	}
+}
@@ -0,0 +1,343 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Renames the files in the output directory of an html5 build, such as
+ * JavaScript files, asset manifests, assets, and library bundles, so that
+ * their names contain a hash of their contents. References in
+ * <em>index.html</em>, JavaScript files, CSS files, and asset manifests are
+ * updated to use the new names, so every renamed file may be cached forever.
+ *
+ * <p>
+ * Only files that are referenced by another file are renamed, because other
+ * files may be requested by name. HTML files are never renamed.
+ * </p>
+ */
+public class ContentHasher {
+	/**
+	 * The name of the file that maps the original paths to the hashed paths,
+	 * written next to the output directory.
+	 */
+	public static final String MAPPING_FILE_NAME = "content-hashes.json";
+
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+	private static final int HASH_LENGTH = 10;
+	private static final List<String> TEXT_EXTENSIONS = Arrays.asList("js", "json", "css", "html", "htm");
+	private static final List<String> HTML_EXTENSIONS = Arrays.asList("html", "htm");
+	private static final String SOURCE_MAP_EXTENSION = ".map";
+	private static final String SOURCE_MAPPING_URL_PREFIX = "//# sourceMappingURL=";
+	// a quoted path, or a path in a CSS url(), optionally starting with ./,
+	// with the same boundaries that are matched when it's replaced
+	private static final Pattern QUOTED_PATTERN = Pattern
+			.compile("(?:\\\\\"|[\"'(])(?:\\./)?([^\"'()?#\\\\\\r\\n]+)(?=[\"'?#)\\\\])");
+	// the prefix of a string serialized with haxe.Serializer
+	private static final Pattern SERIALIZED_PATTERN = Pattern.compile("y(\\d{1,9}):");
+
+	public ContentHasher(File directory) {
+		this.directory = directory;
+	}
+
+	private File directory;
+	private Set<String> excludedPaths = new HashSet<>();
+
+	/**
+	 * Keeps the name of a file that must be requested by a stable name, such
+	 * as a service worker. References to it are still updated, but its own
+	 * references don't cause other files to be renamed, because a service
+	 * worker left by a previous build lists every file.
+	 */
+	public void exclude(String path) {
+		excludedPaths.add(path);
+	}
+
+	/**
+	 * Returns the file where the mapping of the original paths to the hashed
+	 * paths is stored.
+	 */
+	public File getMappingFile() {
+		return new File(directory.getAbsoluteFile().getParentFile(), MAPPING_FILE_NAME);
+	}
+
+	/**
+	 * Renames the referenced files, updates the references, and writes the
+	 * mapping file. Hashed files from previous builds that are no longer
+	 * used are removed.
+	 *
+	 * @return the original paths, relative to the directory, mapped to the
+	 *         hashed paths
+	 */
+	public Map<String, String> hash() throws IOException {
+		Path root = directory.toPath();
+		List<String> paths = null;
+		try (Stream<Path> stream = Files.walk(root)) {
+			paths = stream.filter(Files::isRegularFile)
+					.map(path -> root.relativize(path).toString().replace('\\', '/'))
+					.filter(path -> !path.endsWith(GzipPrecompressor.EXTENSION) && !path.endsWith(SOURCE_MAP_EXTENSION))
+					.sorted().collect(Collectors.toList());
+		}
+		Map<String, String> previousMapping = readMapping(getMappingFile());
+		Set<String> previousHashedPaths = new HashSet<>(previousMapping.values());
+		// hashed files left by previous builds aren't referenced anymore
+		paths.removeIf(previousHashedPaths::contains);
+
+		Map<String, String> textContents = new HashMap<>();
+		for (String path : paths) {
+			if (TEXT_EXTENSIONS.contains(getExtension(path))) {
+				textContents.put(path, new String(Files.readAllBytes(root.resolve(path)), UTF_8));
+			}
+		}
+		Map<String, Set<String>> references = new HashMap<>();
+		for (Map.Entry<String, String> entry : textContents.entrySet()) {
+			references.put(entry.getKey(), findReferences(entry.getValue()));
+		}
+		Map<String, Set<String>> dependencies = new HashMap<>();
+		Set<String> referenced = new HashSet<>();
+		for (Map.Entry<String, String> entry : textContents.entrySet()) {
+			Set<String> fileDependencies = new HashSet<>();
+			if (excludedPaths.contains(entry.getKey())) {
+				dependencies.put(entry.getKey(), fileDependencies);
+				continue;
+			}
+			Set<String> fileReferences = references.get(entry.getKey());
+			for (String path : paths) {
+				if (!path.equals(entry.getKey()) && !isHtml(path) && containsReference(fileReferences, path)) {
+					fileDependencies.add(path);
+				}
+			}
+			dependencies.put(entry.getKey(), fileDependencies);
+			referenced.addAll(fileDependencies);
+		}
+
+		// rename files before the files that reference them, so that the
+		// hashes of the referencing files include the new names
+		Map<String, String> mapping = new TreeMap<>();
+		Set<String> done = new HashSet<>();
+		List<String> remaining = new ArrayList<>(paths);
+		while (remaining.size() > 0) {
+			List<String> ready = remaining.stream().filter(path -> {
+				Set<String> fileDependencies = dependencies.get(path);
+				return fileDependencies == null || done.containsAll(fileDependencies);
+			}).collect(Collectors.toList());
+			if (ready.isEmpty()) {
+				// files that reference each other can't be hashed
+				ready = remaining;
+				for (String path : ready) {
+					referenced.remove(path);
+				}
+			}
+			for (String path : ready) {
+				String text = textContents.get(path);
+				if (text != null) {
+					text = replaceReferences(text, references.get(path), mapping);
+				}
+				if (referenced.contains(path) && !isHtml(path) && !excludedPaths.contains(path)) {
+					String hashedPath = rename(root, path, text);
+					mapping.put(path, hashedPath);
+				} else if (text != null && !text.equals(textContents.get(path))) {
+					Files.write(root.resolve(path), text.getBytes(UTF_8));
+				}
+				done.add(path);
+			}
+			remaining.removeAll(ready);
+		}
+
+		for (String previousHashedPath : previousHashedPaths) {
+			if (!mapping.containsValue(previousHashedPath)) {
+				Files.deleteIfExists(root.resolve(previousHashedPath));
+				Files.deleteIfExists(root.resolve(previousHashedPath + SOURCE_MAP_EXTENSION));
+				Files.deleteIfExists(root.resolve(previousHashedPath + GzipPrecompressor.EXTENSION));
+			}
+		}
+		writeMapping(getMappingFile(), mapping);
+		return mapping;
+	}
+
+	/**
+	 * Reads a mapping file written by a previous build, or returns an empty
+	 * map if it doesn't exist.
+	 */
+	@SuppressWarnings("unchecked")
+	public static Map<String, String> readMapping(File mappingFile) throws IOException {
+		Map<String, String> result = new TreeMap<>();
+		if (!mappingFile.isFile()) {
+			return result;
+		}
+		Object json = null;
+		try {
+			json = Json.parse(new String(Files.readAllBytes(mappingFile.toPath()), UTF_8));
+		} catch (RuntimeException e) {
+			// treat an invalid file like a missing one
+			return result;
+		}
+		if (json instanceof Map) {
+			for (Map.Entry<String, Object> entry : ((Map<String, Object>) json).entrySet()) {
+				result.put(entry.getKey(), String.valueOf(entry.getValue()));
+			}
+		}
+		return result;
+	}
+
+	private static void writeMapping(File mappingFile, Map<String, String> mapping) throws IOException {
+		Files.write(mappingFile.toPath(), Json.stringify(new LinkedHashMap<>(mapping)).getBytes(UTF_8));
+	}
+
+	private static String rename(Path root, String path, String text) throws IOException {
+		Path file = root.resolve(path);
+		byte[] contents = text != null ? text.getBytes(UTF_8) : Files.readAllBytes(file);
+		String hash = HashUtils.sha256(contents).substring(0, HASH_LENGTH);
+		String hashedPath = insertHash(path, hash);
+		Path hashedFile = root.resolve(hashedPath);
+		Path mapFile = root.resolve(path + SOURCE_MAP_EXTENSION);
+		if (text != null && Files.isRegularFile(mapFile)) {
+			String mapName = mapFile.getFileName().toString();
+			String hashedMapName = hashedFile.getFileName().toString() + SOURCE_MAP_EXTENSION;
+			text = text.replace(SOURCE_MAPPING_URL_PREFIX + mapName, SOURCE_MAPPING_URL_PREFIX + hashedMapName);
+			contents = text.getBytes(UTF_8);
+			Files.move(mapFile, root.resolve(hashedPath + SOURCE_MAP_EXTENSION),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		Files.write(hashedFile, contents);
+		Files.delete(file);
+		Files.deleteIfExists(root.resolve(path + GzipPrecompressor.EXTENSION));
+		return hashedPath;
+	}
+
+	private static String insertHash(String path, String hash) {
+		int slashIndex = path.lastIndexOf('/');
+		int dotIndex = path.lastIndexOf('.');
+		if (dotIndex <= slashIndex + 1) {
+			return path + "." + hash;
+		}
+		return path.substring(0, dotIndex) + "." + hash + path.substring(dotIndex);
+	}
+
+	/**
+	 * Returns every string in a file that may be a path: quoted strings, and
+	 * CSS {@code url()} values, with the same boundaries that
+	 * {@link #replaceReferences(String, Set, Map)} matches, and strings
+	 * serialized with {@code haxe.Serializer}, with their prefixes. Paths are
+	 * looked up in the result, so a path that is only part of a longer path
+	 * isn't a reference, and each file is scanned only once.
+	 */
+	private static Set<String> findReferences(String text) {
+		Set<String> result = new HashSet<>();
+		Matcher quotedMatcher = QUOTED_PATTERN.matcher(text);
+		while (quotedMatcher.find()) {
+			result.add(quotedMatcher.group(1));
+		}
+		Matcher serializedMatcher = SERIALIZED_PATTERN.matcher(text);
+		while (serializedMatcher.find()) {
+			int length = 0;
+			try {
+				length = Integer.parseInt(serializedMatcher.group(1));
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			int endIndex = serializedMatcher.end() + length;
+			if (endIndex <= text.length()) {
+				result.add(serializedMatcher.group() + text.substring(serializedMatcher.end(), endIndex));
+			}
+		}
+		return result;
+	}
+
+	private static boolean containsReference(Set<String> references, String path) {
+		return references.contains(path) || references.contains(serialize(path));
+	}
+
+	/**
+	 * Replaces quoted paths, such as in HTML attributes, JavaScript strings,
+	 * and JSON, and paths in strings serialized with
+	 * {@code haxe.Serializer}, which Lime uses for the list of assets in a
+	 * manifest.
+	 */
+	private static String replaceReferences(String text, Set<String> references, Map<String, String> mapping) {
+		for (Map.Entry<String, String> entry : mapping.entrySet()) {
+			String path = entry.getKey();
+			String hashedPath = entry.getValue();
+			if (!containsReference(references, path)) {
+				continue;
+			}
+			Pattern pattern = Pattern
+					.compile("(?<=[\"'(]|\\\\\"|[\"'(]\\./|\\\\\"\\./)" + Pattern.quote(path) + "(?=[\"'?#)\\\\])");
+			text = pattern.matcher(text).replaceAll(Matcher.quoteReplacement(hashedPath));
+			text = text.replace(serialize(path), serialize(hashedPath));
+		}
+		return text;
+	}
+
+	/**
+	 * Serializes a string the same way as {@code haxe.Serializer}.
+	 */
+	private static String serialize(String value) {
+		String encoded = urlEncode(value);
+		return "y" + encoded.length() + ":" + encoded;
+	}
+
+	/**
+	 * Encodes a string the same way as Haxe's {@code StringTools.urlEncode()}
+	 * and JavaScript's {@code encodeURIComponent()}.
+	 */
+	private static String urlEncode(String value) {
+		StringBuilder result = new StringBuilder();
+		for (byte b : value.getBytes(UTF_8)) {
+			char c = (char) (b & 0xff);
+			if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+					|| "-_.!~*'()".indexOf(c) != -1) {
+				result.append(c);
+			} else {
+				result.append('%');
+				result.append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xf, 16)));
+				result.append(Character.toUpperCase(Character.forDigit(b & 0xf, 16)));
+			}
+		}
+		return result.toString();
+	}
+
+	private static boolean isHtml(String path) {
+		return HTML_EXTENSIONS.contains(getExtension(path));
+	}
+
+	private static String getExtension(String path) {
+		int slashIndex = path.lastIndexOf('/');
+		int dotIndex = path.lastIndexOf('.');
+		if (dotIndex <= slashIndex + 1) {
+			return "";
+		}
+		return path.substring(dotIndex + 1).toLowerCase();
+	}
+}
@@ -0,0 +1,215 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Serves the output of an html5 build during development. A small client
+ * script is injected into HTML pages, which reloads the page when a
+ * rebuild finishes, using server-sent events. While a build is in progress,
+ * requests are held until it finishes, so that the browser never loads
+ * partially written output.
+ *
+ * <p>
+ * Files that were renamed by {@link ContentHasher} are served with an
+ * immutable {@code Cache-Control} header, because their contents can never
+ * change without their names changing too.
+ * </p>
+ */
+public class DevServerHandler extends StaticFileHandler {
+	public static final String CLIENT_PATH = "/__lime/livereload.js";
+	public static final String EVENTS_PATH = "/__lime/events";
+
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+	private static final long MAX_BUILD_WAIT = 5L * 60L * 1000L;
+	private static final String CLIENT_SCRIPT = "(function() {\n"
+			+ "\tvar source = new EventSource(\"" + EVENTS_PATH + "\");\n"
+			+ "\tsource.addEventListener(\"reload\", function() {\n"
+			+ "\t\twindow.location.reload();\n"
+			+ "\t});\n"
+			+ "\tsource.addEventListener(\"build-failed\", function() {\n"
+			+ "\t\tconsole.error(\"Lime build failed. Fix the errors to reload.\");\n"
+			+ "\t});\n"
+			+ "})();\n";
+	private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+	private static final String CLIENT_TAG = "<script src=\"" + CLIENT_PATH + "\"></script>";
+
+	public DevServerHandler(File rootDirectory) {
+		super(rootDirectory);
+	}
+
+	private boolean building = false;
+	private List<HttpExchange> eventClients = new ArrayList<>();
+	private volatile Set<String> hashedPaths = Collections.emptySet();
+
+	/**
+	 * Holds new requests until {@link #endBuild(boolean)} is called.
+	 */
+	public synchronized void beginBuild() {
+		building = true;
+	}
+
+	/**
+	 * Releases held requests, and notifies connected pages that they should
+	 * reload if the build succeeded.
+	 */
+	public void endBuild(boolean success) {
+		if (success) {
+			readHashedPaths();
+		}
+		synchronized (this) {
+			building = false;
+			notifyAll();
+		}
+		sendEvent(success ? "reload" : "build-failed");
+	}
+
+	@Override
+	public void handle(HttpExchange httpExchange) throws IOException {
+		String requestPath = httpExchange.getRequestURI().getPath();
+		if (EVENTS_PATH.equals(requestPath)) {
+			handleEvents(httpExchange);
+			return;
+		}
+		if (CLIENT_PATH.equals(requestPath)) {
+			byte[] content = CLIENT_SCRIPT.getBytes(UTF_8);
+			httpExchange.getResponseHeaders().set("Cache-Control", "no-cache");
+			writeContent(httpExchange, content.length, content, "application/javascript");
+			return;
+		}
+		try {
+			waitForBuild();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			writeError(httpExchange, 503, "The server is shutting down");
+			return;
+		}
+		super.handle(httpExchange);
+	}
+
+	@Override
+	protected void writeFile(HttpExchange httpExchange, File file) throws IOException {
+		if (!"text/html".equals(getMimeType(file))) {
+			super.writeFile(httpExchange, file);
+			return;
+		}
+		String eTag = getETag(file);
+		eTag = eTag.substring(0, eTag.length() - 1) + "-livereload\"";
+		if (writeNotModified(httpExchange, file, eTag)) {
+			return;
+		}
+		String html = FileUtils.readFileToString(file, UTF_8);
+		int bodyIndex = html.toLowerCase().lastIndexOf("</body>");
+		if (bodyIndex != -1) {
+			html = html.substring(0, bodyIndex) + CLIENT_TAG + html.substring(bodyIndex);
+		} else {
+			html += CLIENT_TAG;
+		}
+		byte[] content = html.getBytes(UTF_8);
+		writeContent(httpExchange, content.length, content, "text/html; charset=utf-8");
+	}
+
+	@Override
+	protected String getCacheControl(File file) {
+		Path rootPath = getRootDirectory().toPath().toAbsolutePath().normalize();
+		String path = rootPath.relativize(file.toPath().toAbsolutePath().normalize()).toString().replace('\\', '/');
+		if (hashedPaths.contains(path)) {
+			return IMMUTABLE_CACHE_CONTROL;
+		}
+		return super.getCacheControl(file);
+	}
+
+	private void readHashedPaths() {
+		File mappingFile = new ContentHasher(getRootDirectory()).getMappingFile();
+		Set<String> result = new HashSet<>();
+		try {
+			result.addAll(ContentHasher.readMapping(mappingFile).values());
+		} catch (IOException e) {
+			// without the mapping, every file is revalidated
+		}
+		hashedPaths = result;
+	}
+
+	private synchronized void waitForBuild() throws InterruptedException {
+		long timeout = System.currentTimeMillis() + MAX_BUILD_WAIT;
+		while (building) {
+			long remaining = timeout - System.currentTimeMillis();
+			if (remaining <= 0) {
+				// serve whatever exists rather than hanging forever
+				return;
+			}
+			wait(remaining);
+		}
+	}
+
+	private void handleEvents(HttpExchange httpExchange) throws IOException {
+		httpExchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+		httpExchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		// zero means that the length is unknown, and chunked encoding is used
+		httpExchange.sendResponseHeaders(200, 0);
+		OutputStream output = httpExchange.getResponseBody();
+		output.write(": connected\n\n".getBytes(UTF_8));
+		output.flush();
+		synchronized (eventClients) {
+			eventClients.add(httpExchange);
+		}
+		// the exchange stays open until the client disconnects
+	}
+
+	private void sendEvent(String eventName) {
+		byte[] message = ("event: " + eventName + "\ndata: " + System.currentTimeMillis() + "\n\n").getBytes(UTF_8);
+		synchronized (eventClients) {
+			List<HttpExchange> disconnected = new ArrayList<>();
+			for (HttpExchange client : eventClients) {
+				try {
+					OutputStream output = client.getResponseBody();
+					output.write(message);
+					output.flush();
+				} catch (IOException e) {
+					disconnected.add(client);
+					client.close();
+				}
+			}
+			eventClients.removeAll(disconnected);
+		}
+	}
+
+	/**
+	 * Closes the connections of every page that is listening for events.
+	 */
+	public void close() {
+		synchronized (eventClients) {
+			for (HttpExchange client : eventClients) {
+				client.close();
+			}
+			eventClients.clear();
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a set of files and directories for changes with a
+ * {@link WatchService}. Directories are watched recursively, including new
+ * subdirectories. Individual files are watched through their parent
+ * directory, ignoring changes to the other files there.
+ */
+public class FileWatcher implements Closeable {
+	public FileWatcher(List<Path> roots) throws IOException {
+		watchService = FileSystems.getDefault().newWatchService();
+		for (Path root : roots) {
+			root = root.toAbsolutePath().normalize();
+			this.roots.add(root);
+			if (Files.isDirectory(root)) {
+				registerRecursive(root);
+			} else if (root.getParent() != null && Files.isDirectory(root.getParent())) {
+				register(root.getParent());
+			}
+		}
+	}
+
+	private WatchService watchService;
+	private List<Path> roots = new ArrayList<>();
+	private Map<WatchKey, Path> directories = new HashMap<>();
+
+	/**
+	 * Waits for at least one change, and then keeps collecting changes until
+	 * none have happened for {@code debounceMillis}, so that a burst of
+	 * changes, such as saving many files or switching branches, is reported
+	 * once.
+	 *
+	 * @return the changed paths, or an empty set if changes were lost
+	 */
+	public Set<Path> awaitChanges(long debounceMillis) throws IOException, InterruptedException {
+		Set<Path> changes = new LinkedHashSet<>();
+		boolean overflow = false;
+		WatchKey key = watchService.take();
+		while (key != null) {
+			overflow = collect(key, changes) || overflow;
+			if (changes.isEmpty() && !overflow) {
+				// only unrelated files in a watched file's directory changed
+				key = watchService.take();
+				continue;
+			}
+			key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+		}
+		if (overflow) {
+			changes.clear();
+		}
+		return changes;
+	}
+
+	private boolean collect(WatchKey key, Set<Path> changes) throws IOException {
+		boolean overflow = false;
+		Path directory = directories.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				overflow = true;
+				continue;
+			}
+			if (directory == null) {
+				continue;
+			}
+			Path path = directory.resolve((Path) event.context());
+			if (!isWatched(path)) {
+				continue;
+			}
+			changes.add(path);
+			if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+				registerRecursive(path);
+			}
+		}
+		if (!key.reset()) {
+			directories.remove(key);
+		}
+		return overflow;
+	}
+
+	private boolean isWatched(Path path) {
+		for (Path root : roots) {
+			if (path.startsWith(root)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void registerRecursive(Path directory) throws IOException {
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				register(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void register(Path directory) throws IOException {
+		if (directories.containsValue(directory)) {
+			return;
+		}
+		WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+		directories.put(key, directory);
+	}
+
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+}
@@ -0,0 +1,234 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes precompressed <em>.gz</em> sidecar files next to the compressible
+ * files in a directory, so that they may be served with
+ * {@code Content-Encoding: gzip} without compressing on every request.
+ *
+ * <p>
+ * Files that gzip doesn't make smaller don't get a sidecar. Their sizes and
+ * last modified times are recorded in a file next to the directory, so that
+ * they aren't compressed again until they change.
+ * </p>
+ */
+public class GzipPrecompressor {
+	public static final String EXTENSION = ".gz";
+
+	/**
+	 * The name of the file that records the files that gzip didn't make
+	 * smaller, written next to the directory.
+	 */
+	public static final String SKIPPED_FILE_NAME = "precompress-skipped.json";
+
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+
+	/**
+	 * Returns {@code true} if the sidecar file was created from the current
+	 * contents of the source file. Sidecars are given the same last modified
+	 * time as their source file.
+	 */
+	public static boolean isFresh(File file, File gzipFile) {
+		return gzipFile.isFile() && gzipFile.lastModified() == file.lastModified();
+	}
+
+	public GzipPrecompressor(Set<String> extensions, long minSize) {
+		this.extensions = extensions;
+		this.minSize = minSize;
+	}
+
+	private Set<String> extensions;
+	private long minSize;
+
+	/**
+	 * Compresses every file in the directory that has one of the configured
+	 * extensions and is at least the minimum size, using multiple threads.
+	 * Files with a fresh sidecar are skipped.
+	 *
+	 * @return the number of files that were compressed
+	 */
+	public int precompress(File directory) throws IOException {
+		if (!directory.isDirectory()) {
+			return 0;
+		}
+		List<Path> files = null;
+		try (Stream<Path> stream = Files.walk(directory.toPath())) {
+			files = stream.filter(Files::isRegularFile)
+					.filter(path -> !path.getFileName().toString().endsWith(EXTENSION))
+					.collect(Collectors.toList());
+		}
+
+		Path root = directory.toPath();
+		File skippedFile = new File(directory.getAbsoluteFile().getParentFile(), SKIPPED_FILE_NAME);
+		Map<String, String> previousSkipped = readSkipped(skippedFile);
+		Map<String, String> skipped = new ConcurrentHashMap<>();
+		List<File> pending = new ArrayList<>();
+		for (Path path : files) {
+			File file = path.toFile();
+			File gzipFile = new File(file.getPath() + EXTENSION);
+			if (!isCompressible(file)) {
+				// don't serve a stale sidecar for a file that has shrunk below
+				// the minimum size
+				Files.deleteIfExists(gzipFile.toPath());
+				continue;
+			}
+			if (isFresh(file, gzipFile)) {
+				continue;
+			}
+			String relativePath = root.relativize(path).toString().replace('\\', '/');
+			String stamp = getStamp(file);
+			if (stamp.equals(previousSkipped.get(relativePath))) {
+				skipped.put(relativePath, stamp);
+				continue;
+			}
+			pending.add(file);
+		}
+		if (pending.size() == 0) {
+			writeSkipped(skippedFile, skipped, previousSkipped);
+			return 0;
+		}
+
+		int threads = Math.min(pending.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Boolean>> futures = new ArrayList<>();
+			for (File file : pending) {
+				futures.add(executor.submit(() -> {
+					String stamp = getStamp(file);
+					if (compress(file)) {
+						return true;
+					}
+					skipped.put(root.relativize(file.toPath()).toString().replace('\\', '/'), stamp);
+					return false;
+				}));
+			}
+			int count = 0;
+			for (Future<Boolean> future : futures) {
+				if (future.get()) {
+					count++;
+				}
+			}
+			writeSkipped(skippedFile, skipped, previousSkipped);
+			return count;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing files", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static String getStamp(File file) {
+		return file.length() + ":" + file.lastModified();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, String> readSkipped(File skippedFile) throws IOException {
+		Map<String, String> result = new TreeMap<>();
+		if (!skippedFile.isFile()) {
+			return result;
+		}
+		Object json = null;
+		try {
+			json = Json.parse(new String(Files.readAllBytes(skippedFile.toPath()), UTF_8));
+		} catch (RuntimeException e) {
+			// the files will be compressed again
+			return result;
+		}
+		if (json instanceof Map) {
+			for (Map.Entry<String, Object> entry : ((Map<String, Object>) json).entrySet()) {
+				result.put(entry.getKey(), String.valueOf(entry.getValue()));
+			}
+		}
+		return result;
+	}
+
+	private static void writeSkipped(File skippedFile, Map<String, String> skipped,
+			Map<String, String> previousSkipped) throws IOException {
+		Map<String, String> sortedSkipped = new TreeMap<>(skipped);
+		if (sortedSkipped.equals(previousSkipped)) {
+			return;
+		}
+		if (sortedSkipped.isEmpty()) {
+			Files.deleteIfExists(skippedFile.toPath());
+			return;
+		}
+		Files.write(skippedFile.toPath(), Json.stringify(sortedSkipped).getBytes(UTF_8));
+	}
+
+	private boolean isCompressible(File file) {
+		if (file.length() < minSize) {
+			return false;
+		}
+		String fileName = file.getName();
+		int extensionIndex = fileName.lastIndexOf(".");
+		if (extensionIndex == -1) {
+			return false;
+		}
+		return extensions.contains(fileName.substring(extensionIndex + 1).toLowerCase());
+	}
+
+	private boolean compress(File file) throws IOException {
+		File gzipFile = new File(file.getPath() + EXTENSION);
+		File tempFile = new File(file.getPath() + EXTENSION + ".tmp");
+		long lastModified = file.lastModified();
+		try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(tempFile.toPath())) {
+			{
+				def.setLevel(Deflater.BEST_COMPRESSION);
+			}
+		}) {
+			Files.copy(file.toPath(), output);
+		}
+		if (tempFile.length() >= file.length()) {
+			// compression didn't help, so don't bother
+			Files.delete(tempFile.toPath());
+			Files.deleteIfExists(gzipFile.toPath());
+			return false;
+		}
+		Files.move(tempFile.toPath(), gzipFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		gzipFile.setLastModified(lastModified);
+		return true;
+	}
+}
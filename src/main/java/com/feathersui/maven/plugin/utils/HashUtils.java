@@ -0,0 +1,80 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utilities for calculating content hashes.
+ */
+public class HashUtils {
+	private HashUtils() {
+	}
+
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static String sha256(byte[] bytes) {
+		return toHex(newDigest().digest(bytes));
+	}
+
+	public static String sha256(String value) {
+		return sha256(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static String sha256(File file) throws IOException {
+		MessageDigest digest = newDigest();
+		update(digest, file);
+		return toHex(digest.digest());
+	}
+
+	public static void update(MessageDigest digest, File file) throws IOException {
+		byte[] buffer = new byte[65536];
+		try (InputStream input = Files.newInputStream(file.toPath())) {
+			int count;
+			while ((count = input.read(buffer)) != -1) {
+				digest.update(buffer, 0, count);
+			}
+		}
+	}
+
+	public static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		// separator, so that consecutive values can't run together
+		digest.update((byte) 0);
+	}
+
+	public static String toHex(byte[] bytes) {
+		StringBuilder builder = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+			builder.append(Character.forDigit(b & 0xf, 16));
+		}
+		return builder.toString();
+	}
+}
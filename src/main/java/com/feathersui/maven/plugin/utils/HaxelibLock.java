@@ -0,0 +1,384 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The exact versions of every Haxelib library, including dependencies, that
+ * a project was resolved with, and where they are installed in the Haxelib
+ * repository. Written by the {@code lock} goal, so that later builds can
+ * verify their libraries without running Haxelib.
+ */
+public class HaxelibLock {
+	// change when the format of the lockfile changes
+	private static final String VERSION = "2";
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+	private static final String HAXELIB_JSON_FILE_NAME = "haxelib.json";
+	private static final String CURRENT_FILE_NAME = ".current";
+	private static final String DEV_FILE_NAME = ".dev";
+	private static final String LOCAL_REPOSITORY_NAME = ".haxelib";
+	// version control metadata changes without changing the library
+	private static final List<String> CHECKSUM_EXCLUDED_NAMES = Arrays.asList(".git", ".hg", ".svn");
+
+	public static class Library {
+		/**
+		 * The version, as reported by {@code haxelib path}.
+		 */
+		public String version;
+
+		/**
+		 * The directory where the library is installed, relative to the
+		 * repository, or an absolute path for a development directory
+		 * outside of the repository.
+		 */
+		public String path;
+
+		/**
+		 * The SHA-256 hash of the library's files, calculated by
+		 * {@link HaxelibLock#getChecksum(File)}.
+		 */
+		public String checksum;
+
+		/**
+		 * The class paths of the library, relative to its directory.
+		 */
+		public List<String> classPaths = new ArrayList<>();
+	}
+
+	private Map<String, Library> libraries = new TreeMap<>();
+
+	public Map<String, Library> getLibraries() {
+		return libraries;
+	}
+
+	/**
+	 * Reads a lockfile, or returns {@code null} if it doesn't exist.
+	 */
+	@SuppressWarnings("unchecked")
+	public static HaxelibLock read(File file) throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+		Map<String, Object> json = null;
+		try {
+			json = (Map<String, Object>) Json.parse(new String(Files.readAllBytes(file.toPath()), UTF_8));
+		} catch (RuntimeException e) {
+			throw new IOException("Invalid Haxelib lockfile: " + file.getAbsolutePath(), e);
+		}
+		if (!VERSION.equals(json.get("version"))) {
+			throw new IOException("Unsupported Haxelib lockfile version: " + json.get("version"));
+		}
+		HaxelibLock result = new HaxelibLock();
+		Map<String, Object> jsonLibraries = (Map<String, Object>) json.get("libraries");
+		for (Map.Entry<String, Object> entry : jsonLibraries.entrySet()) {
+			Map<String, Object> jsonLibrary = (Map<String, Object>) entry.getValue();
+			Library library = new Library();
+			library.version = (String) jsonLibrary.get("version");
+			library.path = (String) jsonLibrary.get("path");
+			library.checksum = (String) jsonLibrary.get("checksum");
+			Object classPaths = jsonLibrary.get("classPaths");
+			if (classPaths instanceof List) {
+				for (Object classPath : (List<Object>) classPaths) {
+					library.classPaths.add((String) classPath);
+				}
+			}
+			result.libraries.put(entry.getKey(), library);
+		}
+		return result;
+	}
+
+	public void write(File file) throws IOException {
+		Map<String, Object> jsonLibraries = new LinkedHashMap<>();
+		for (Map.Entry<String, Library> entry : libraries.entrySet()) {
+			Library library = entry.getValue();
+			Map<String, Object> jsonLibrary = new LinkedHashMap<>();
+			jsonLibrary.put("version", library.version);
+			jsonLibrary.put("path", library.path);
+			jsonLibrary.put("checksum", library.checksum);
+			jsonLibrary.put("classPaths", library.classPaths);
+			jsonLibraries.put(entry.getKey(), jsonLibrary);
+		}
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("version", VERSION);
+		json.put("libraries", jsonLibraries);
+		Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+		Files.write(file.toPath(), Json.stringify(json).getBytes(UTF_8));
+	}
+
+	/**
+	 * Returns the directory where a locked library is installed.
+	 */
+	public static File getLibraryDirectory(Library library, File repository) {
+		File file = new File(library.path);
+		if (file.isAbsolute()) {
+			return file;
+		}
+		return new File(repository, library.path);
+	}
+
+	/**
+	 * Returns {@code true} if the library is installed in the repository, its
+	 * files have the locked checksum, and it's the version that Haxelib will
+	 * select. Reads every file of the library.
+	 */
+	public static boolean isInstalled(Library library, File repository) throws IOException {
+		return hasChecksum(library, repository) && isCurrent(library, repository);
+	}
+
+	/**
+	 * Returns {@code true} if the locked version of the library exists in the
+	 * repository, with the locked checksum, whether Haxelib selects it or
+	 * not. Reads every file of the library.
+	 */
+	public static boolean hasChecksum(Library library, File repository) throws IOException {
+		File libraryDirectory = getLibraryDirectory(library, repository);
+		return new File(libraryDirectory, HAXELIB_JSON_FILE_NAME).isFile()
+				&& getChecksum(libraryDirectory).equals(library.checksum);
+	}
+
+	/**
+	 * Returns the SHA-256 hash of every file in a library's directory: the
+	 * relative paths, sorted, and the contents. Version control metadata is
+	 * skipped, so git and hg checkouts of the same commit match. Reads every
+	 * file, so builds should check a {@link HaxelibStamps} first.
+	 */
+	public static String getChecksum(File directory) throws IOException {
+		Path directoryPath = directory.toPath().toAbsolutePath().normalize();
+		MessageDigest digest = HashUtils.newDigest();
+		for (Path file : listFiles(directoryPath)) {
+			HashUtils.update(digest, directoryPath.relativize(file).toString().replace('\\', '/'));
+			// the length separates the contents of consecutive files
+			HashUtils.update(digest, Long.toString(Files.size(file)));
+			HashUtils.update(digest, file.toFile());
+		}
+		return HashUtils.toHex(digest.digest());
+	}
+
+	/**
+	 * Returns a hash of the relative path, size, and modification time of
+	 * every file that {@link #getChecksum(File)} reads, without reading their
+	 * contents.
+	 */
+	public static String getStamp(File directory) throws IOException {
+		Path directoryPath = directory.toPath().toAbsolutePath().normalize();
+		MessageDigest digest = HashUtils.newDigest();
+		for (Path file : listFiles(directoryPath)) {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			HashUtils.update(digest, directoryPath.relativize(file).toString().replace('\\', '/'));
+			HashUtils.update(digest, Long.toString(attributes.size()));
+			HashUtils.update(digest, Long.toString(attributes.lastModifiedTime().toMillis()));
+		}
+		return HashUtils.toHex(digest.digest());
+	}
+
+	private static List<Path> listFiles(Path directoryPath) throws IOException {
+		try (Stream<Path> stream = Files.walk(directoryPath)) {
+			return stream.filter(path -> {
+				for (Path part : directoryPath.relativize(path)) {
+					if (CHECKSUM_EXCLUDED_NAMES.contains(part.toString())) {
+						return false;
+					}
+				}
+				return Files.isRegularFile(path);
+			}).sorted().collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Returns {@code true} if a development directory was set for a library
+	 * with {@code haxelib dev}, which Haxelib selects instead of the locked
+	 * version that is installed in the repository. Selecting a version with
+	 * {@code haxelib set} doesn't remove it.
+	 */
+	public static boolean hasDevDirectory(Library library, File repository) {
+		if (new File(library.path).isAbsolute()) {
+			return false;
+		}
+		File libraryRoot = getLibraryDirectory(library, repository).getParentFile();
+		return new File(libraryRoot, DEV_FILE_NAME).exists();
+	}
+
+	/**
+	 * Returns {@code true} if Haxelib selects the locked version of the
+	 * library. Development directories are always selected, because they
+	 * can't be selected any other way.
+	 */
+	public static boolean isCurrent(Library library, File repository) throws IOException {
+		if (new File(library.path).isAbsolute()) {
+			return true;
+		}
+		if (hasDevDirectory(library, repository)) {
+			return false;
+		}
+		File libraryRoot = getLibraryDirectory(library, repository).getParentFile();
+		File currentFile = new File(libraryRoot, CURRENT_FILE_NAME);
+		if (!currentFile.isFile()) {
+			return false;
+		}
+		String current = new String(Files.readAllBytes(currentFile.toPath()), UTF_8).trim();
+		return toDirectoryName(current).equals(getVersionDirectoryName(library));
+	}
+
+	/**
+	 * Returns {@code true} if the locked version was installed from the
+	 * Haxelib server, and it may be installed again with
+	 * {@code haxelib install}, instead of from git, hg, or a development
+	 * directory.
+	 */
+	public static boolean isReleaseVersion(Library library) {
+		if (new File(library.path).isAbsolute()) {
+			return false;
+		}
+		String directoryName = getVersionDirectoryName(library);
+		return directoryName.equals(toDirectoryName(library.version));
+	}
+
+	/**
+	 * Returns {@code true} if a library's directory is where Haxelib installs
+	 * a release version, and a development directory wasn't set for it, so
+	 * that its contents can't change without changing its version.
+	 */
+	public static boolean isReleaseDirectory(String name, String version, File directory) {
+		if (directory == null || version == null) {
+			return false;
+		}
+		File libraryRoot = directory.getParentFile();
+		return libraryRoot != null && directory.getName().equals(toDirectoryName(version))
+				&& libraryRoot.getName().equalsIgnoreCase(toDirectoryName(name))
+				&& !new File(libraryRoot, DEV_FILE_NAME).exists();
+	}
+
+	/**
+	 * Creates a lockfile entry for a library installed in the specified
+	 * directory.
+	 *
+	 * @param classPaths absolute class paths of the library
+	 */
+	public static Library createLibrary(String version, File directory, List<String> classPaths, File repository)
+			throws IOException {
+		Library library = new Library();
+		library.version = version;
+		library.path = directory.getAbsolutePath();
+		if (repository != null) {
+			String repositoryPath = repository.getCanonicalPath() + File.separator;
+			String directoryPath = directory.getCanonicalPath();
+			if (directoryPath.startsWith(repositoryPath)) {
+				library.path = directoryPath.substring(repositoryPath.length()).replace('\\', '/');
+			}
+		}
+		library.checksum = getChecksum(directory);
+		String directoryPath = directory.getCanonicalPath();
+		for (String classPath : classPaths) {
+			String relativePath = new File(classPath).getCanonicalPath();
+			if (relativePath.equals(directoryPath)) {
+				relativePath = "";
+			} else if (relativePath.startsWith(directoryPath + File.separator)) {
+				relativePath = relativePath.substring(directoryPath.length() + 1).replace('\\', '/');
+			} else {
+				continue;
+			}
+			if (!library.classPaths.contains(relativePath)) {
+				library.classPaths.add(relativePath);
+			}
+		}
+		return library;
+	}
+
+	/**
+	 * Returns the directory of the library that contains a class path, which
+	 * is the nearest directory with a <em>haxelib.json</em> file, or
+	 * {@code null}.
+	 */
+	public static File findLibraryDirectory(File classPath) {
+		File current = classPath.getAbsoluteFile();
+		while (current != null) {
+			if (new File(current, HAXELIB_JSON_FILE_NAME).isFile()) {
+				return current;
+			}
+			current = current.getParentFile();
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the Haxelib repository used for a project without running
+	 * Haxelib, using the same rules: a local <em>.haxelib</em> directory, the
+	 * {@code HAXELIB_PATH} environment variable, or the <em>.haxelib</em>
+	 * config file in the user's home directory or <em>/etc</em>. Returns
+	 * {@code null} if the repository can't be determined this way.
+	 */
+	public static File findRepository(File basedir) throws IOException {
+		File current = basedir.getAbsoluteFile();
+		while (current != null) {
+			File localRepository = new File(current, LOCAL_REPOSITORY_NAME);
+			if (localRepository.isDirectory()) {
+				return localRepository;
+			}
+			current = current.getParentFile();
+		}
+		String envPath = System.getenv("HAXELIB_PATH");
+		if (envPath != null && envPath.length() > 0) {
+			return new File(envPath);
+		}
+		File[] configFiles = { new File(System.getProperty("user.home"), LOCAL_REPOSITORY_NAME),
+				new File("/etc", LOCAL_REPOSITORY_NAME) };
+		for (File configFile : configFiles) {
+			if (configFile.isFile()) {
+				String path = new String(Files.readAllBytes(configFile.toPath()), UTF_8).trim();
+				if (path.length() > 0) {
+					return new File(path);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the version that Haxelib uses to select the locked library, such
+	 * as the release version, or "git".
+	 */
+	public static String getInstalledVersion(Library library) {
+		return getVersionDirectoryName(library).replace(',', '.');
+	}
+
+	private static String getVersionDirectoryName(Library library) {
+		String path = library.path;
+		int slashIndex = path.lastIndexOf('/');
+		return slashIndex == -1 ? path : path.substring(slashIndex + 1);
+	}
+
+	/**
+	 * Haxelib replaces dots with commas in the names of directories.
+	 */
+	private static String toDirectoryName(String name) {
+		return name.replace('.', ',');
+	}
+}
@@ -0,0 +1,104 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the locked libraries that were verified against their
+ * checksums, with a stamp of the size and modification time of each of
+ * their files. Later builds compare the stamps, which only reads file
+ * system metadata, and read the contents of a library again only if one of
+ * its files changed. Stored in the project's build directory.
+ */
+public class HaxelibStamps {
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+	private static final String HAXELIB_JSON_FILE_NAME = "haxelib.json";
+
+	/**
+	 * Reads the stamps from a file, or returns empty stamps if it doesn't
+	 * exist, or it's invalid.
+	 */
+	@SuppressWarnings("unchecked")
+	public static HaxelibStamps read(File file) throws IOException {
+		HaxelibStamps result = new HaxelibStamps(file);
+		if (!file.isFile()) {
+			return result;
+		}
+		Object json = null;
+		try {
+			json = Json.parse(new String(Files.readAllBytes(file.toPath()), UTF_8));
+		} catch (RuntimeException e) {
+			// the libraries will be verified again
+			return result;
+		}
+		if (json instanceof Map) {
+			for (Map.Entry<String, Object> entry : ((Map<String, Object>) json).entrySet()) {
+				result.stamps.put(entry.getKey(), String.valueOf(entry.getValue()));
+			}
+		}
+		return result;
+	}
+
+	private HaxelibStamps(File file) {
+		this.file = file;
+	}
+
+	private File file;
+	private Map<String, String> stamps = new ConcurrentHashMap<>();
+	private volatile boolean changed = false;
+
+	/**
+	 * Returns {@code true} if the locked version of the library exists in the
+	 * repository, with the locked checksum. If its files haven't changed since
+	 * it was last verified, their contents aren't read.
+	 */
+	public boolean hasChecksum(HaxelibLock.Library library, File repository) throws IOException {
+		File libraryDirectory = HaxelibLock.getLibraryDirectory(library, repository);
+		if (!new File(libraryDirectory, HAXELIB_JSON_FILE_NAME).isFile()) {
+			return false;
+		}
+		String key = libraryDirectory.getAbsolutePath() + File.pathSeparator + library.checksum;
+		String stamp = HaxelibLock.getStamp(libraryDirectory);
+		if (stamp.equals(stamps.get(key))) {
+			return true;
+		}
+		if (!HaxelibLock.getChecksum(libraryDirectory).equals(library.checksum)) {
+			return false;
+		}
+		stamps.put(key, stamp);
+		changed = true;
+		return true;
+	}
+
+	/**
+	 * Writes the stamps, if any library was verified since they were read.
+	 */
+	public void write() throws IOException {
+		if (!changed) {
+			return;
+		}
+		Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+		Files.write(file.toPath(), Json.stringify(new TreeMap<>(stamps)).getBytes(UTF_8));
+		changed = false;
+	}
+}
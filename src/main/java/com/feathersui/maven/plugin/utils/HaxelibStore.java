@@ -0,0 +1,252 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A content-addressed store of installed Haxelib libraries, shared between
+ * projects. Each file is stored once, named by the hash of its contents, and
+ * each locked version of a library is a tree of hard links to those files.
+ * A project gets its own Haxelib repository, called a view, where each
+ * library is a symbolic link to a tree in the store.
+ *
+ * <p>
+ * Files in the store must not be modified in place, because they are shared
+ * by every tree that contains the same contents, so they're made read-only
+ * when they're added. Libraries that build files inside their own directory
+ * after they're installed, like running {@code lime rebuild}, or a library
+ * that compiles its own <em>run.n</em> tool, aren't supported, and their
+ * builds will fail to write. Lock a development directory for them instead.
+ * </p>
+ */
+public class HaxelibStore {
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+	private static final String OBJECTS_DIRECTORY_NAME = "objects";
+	private static final String TREES_DIRECTORY_NAME = "trees";
+	private static final String TEMP_DIRECTORY_NAME = "tmp";
+	private static final String CURRENT_FILE_NAME = ".current";
+	private static final String DEV_FILE_NAME = ".dev";
+
+	public HaxelibStore(File directory) {
+		root = directory.toPath().toAbsolutePath().normalize();
+	}
+
+	private Path root;
+
+	/**
+	 * Returns {@code true} if the locked version of the library has been
+	 * added to the store. Development directories are never added.
+	 */
+	public boolean contains(HaxelibLock.Library library) {
+		return new File(library.path).isAbsolute() || Files.isDirectory(getTree(library));
+	}
+
+	/**
+	 * Adds the locked version of a library to the store, from the directory
+	 * where it's installed.
+	 */
+	public void add(HaxelibLock.Library library, File libraryDirectory) throws IOException {
+		Path tree = getTree(library);
+		if (Files.isDirectory(tree)) {
+			return;
+		}
+		Files.createDirectories(tree.getParent());
+		Path tempTree = tree.resolveSibling(tree.getFileName() + "-" + UUID.randomUUID() + ".tmp");
+		try {
+			Path sourcePath = libraryDirectory.toPath();
+			List<Path> files = null;
+			try (Stream<Path> stream = Files.walk(sourcePath)) {
+				files = stream.collect(Collectors.toList());
+			}
+			for (Path file : files) {
+				Path target = tempTree.resolve(sourcePath.relativize(file).toString());
+				if (Files.isDirectory(file)) {
+					Files.createDirectories(target);
+					continue;
+				}
+				Path object = addObject(file);
+				try {
+					Files.createLink(target, object);
+				} catch (IOException | UnsupportedOperationException e) {
+					// different file system, probably
+					Files.copy(object, target, StandardCopyOption.COPY_ATTRIBUTES);
+				}
+			}
+			try {
+				Files.move(tempTree, tree);
+			} catch (FileAlreadyExistsException e) {
+				// another build added the same library first
+			} catch (IOException e) {
+				if (!Files.isDirectory(tree)) {
+					throw e;
+				}
+			}
+		} finally {
+			deleteTree(tempTree);
+		}
+	}
+
+	/**
+	 * Creates an empty directory inside the store, on the same file system,
+	 * which may be used as a temporary Haxelib repository for installing a
+	 * library before adding it. The caller should delete it.
+	 */
+	public File createTempDirectory() throws IOException {
+		Path tempRoot = root.resolve(TEMP_DIRECTORY_NAME);
+		Files.createDirectories(tempRoot);
+		return Files.createTempDirectory(tempRoot, "haxelib").toFile();
+	}
+
+	/**
+	 * Replaces the contents of a view directory with a Haxelib repository
+	 * that contains the locked libraries, and selects the locked versions.
+	 * Each library is a symbolic link to its tree in the store, or a tree of
+	 * hard links, if symbolic links aren't supported.
+	 */
+	public void createView(HaxelibLock lock, File viewDirectory) throws IOException {
+		Path viewPath = viewDirectory.toPath();
+		deleteTree(viewPath);
+		Files.createDirectories(viewPath);
+		for (Map.Entry<String, HaxelibLock.Library> entry : lock.getLibraries().entrySet()) {
+			HaxelibLock.Library library = entry.getValue();
+			if (new File(library.path).isAbsolute()) {
+				// development directories can't be stored, so point to them
+				Path libraryRoot = viewPath.resolve(entry.getKey().replace('.', ','));
+				Files.createDirectories(libraryRoot);
+				Files.write(libraryRoot.resolve(DEV_FILE_NAME), library.path.getBytes(UTF_8));
+				continue;
+			}
+			Path libraryPath = viewPath.resolve(library.path);
+			Files.createDirectories(libraryPath.getParent());
+			Files.write(libraryPath.resolveSibling(CURRENT_FILE_NAME),
+					HaxelibLock.getInstalledVersion(library).getBytes(UTF_8));
+			Path tree = getTree(library);
+			try {
+				Files.createSymbolicLink(libraryPath, tree);
+			} catch (IOException | UnsupportedOperationException e) {
+				// symbolic links may require extra privileges on Windows
+				linkTree(tree, libraryPath);
+			}
+		}
+	}
+
+	private Path getTree(HaxelibLock.Library library) {
+		Path libraryPath = Paths.get(library.path);
+		// the checksum distinguishes releases from git and dev versions
+		// that have the same version number
+		return root.resolve(TREES_DIRECTORY_NAME).resolve(libraryPath.getParent().toString())
+				.resolve(libraryPath.getFileName() + "-" + library.checksum.substring(0, 16));
+	}
+
+	private Path addObject(Path file) throws IOException {
+		Path object = getObject(file);
+		if (Files.exists(object)) {
+			// older stores didn't protect their objects
+			object.toFile().setWritable(false, false);
+			return object;
+		}
+		Files.createDirectories(object.getParent());
+		Path tempObject = object.resolveSibling(object.getFileName() + "-" + UUID.randomUUID() + ".tmp");
+		try {
+			Files.copy(file, tempObject, StandardCopyOption.COPY_ATTRIBUTES);
+			// every hard link shares the permissions, so a library that tries
+			// to modify its files fails instead of changing other trees
+			tempObject.toFile().setWritable(false, false);
+			Files.move(tempObject, object);
+		} catch (FileAlreadyExistsException e) {
+			// another build added the same contents first
+		} finally {
+			Files.deleteIfExists(tempObject);
+		}
+		return object;
+	}
+
+	private Path getObject(Path file) throws IOException {
+		String hash = HashUtils.sha256(file.toFile());
+		if (Files.isExecutable(file)) {
+			// the hard links share permissions too
+			hash += "-x";
+		}
+		return root.resolve(OBJECTS_DIRECTORY_NAME).resolve(hash.substring(0, 2)).resolve(hash);
+	}
+
+	/**
+	 * Deletes a directory that may contain hard links to objects, or
+	 * symbolic links to trees, without following the symbolic links or
+	 * making the objects writable.
+	 */
+	private void deleteTree(Path directory) throws IOException {
+		if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+			return;
+		}
+		List<Path> files = null;
+		try (Stream<Path> stream = Files.walk(directory)) {
+			files = stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+		}
+		for (Path file : files) {
+			try {
+				Files.delete(file);
+			} catch (AccessDeniedException e) {
+				if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+					throw e;
+				}
+				// Windows doesn't delete read-only files, and the attribute
+				// is shared by the object, so protect the object again after
+				Path object = getObject(file);
+				file.toFile().setWritable(true);
+				Files.delete(file);
+				if (Files.exists(object)) {
+					object.toFile().setWritable(false, false);
+				}
+			}
+		}
+	}
+
+	private static void linkTree(Path tree, Path target) throws IOException {
+		List<Path> files = null;
+		try (Stream<Path> stream = Files.walk(tree)) {
+			files = stream.collect(Collectors.toList());
+		}
+		for (Path file : files) {
+			Path targetFile = target.resolve(tree.relativize(file).toString());
+			if (Files.isDirectory(file)) {
+				Files.createDirectories(targetFile);
+				continue;
+			}
+			try {
+				Files.createLink(targetFile, file);
+			} catch (IOException | UnsupportedOperationException e) {
+				Files.copy(file, targetFile, StandardCopyOption.COPY_ATTRIBUTES);
+			}
+		}
+	}
+}
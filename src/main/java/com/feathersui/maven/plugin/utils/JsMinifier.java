@@ -0,0 +1,154 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+
+import com.feathersui.maven.plugin.minifier.JsCompiler;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Minifies JavaScript files with a {@link JsCompiler}, such as the
+ * <a href="https://github.com/google/closure-compiler">Closure Compiler</a>.
+ * If a file has a <em>.map</em> file, the source map is updated so that it
+ * maps the minified code to the original sources.
+ *
+ * <p>
+ * Results are stored in a cache directory, keyed by a hash of the input and
+ * the options, so that output that hasn't changed isn't minified again.
+ * </p>
+ */
+public class JsMinifier {
+	// change when the options passed to the Closure Compiler change
+	private static final String CACHE_VERSION = "1";
+	private static final String CACHED_JS_FILE_NAME = "output.js";
+	private static final String CACHED_MAP_FILE_NAME = "output.js.map";
+	// entries used in the last few minutes may belong to a build that is
+	// still running
+	private static final long CACHE_MIN_AGE = 5L * 60L * 1000L;
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+
+	/**
+	 * @param compilationLevel one of {@code WHITESPACE_ONLY},
+	 *                         {@code SIMPLE_OPTIMIZATIONS}, or
+	 *                         {@code ADVANCED_OPTIMIZATIONS}
+	 */
+	public JsMinifier(JsCompiler compiler, String compilationLevel, File cacheDirectory, long cacheMaxBytes) {
+		this.compiler = compiler;
+		this.compilationLevel = compilationLevel;
+		this.cacheDirectory = cacheDirectory != null ? new LruCacheDirectory(cacheDirectory) : null;
+		this.cacheMaxBytes = cacheMaxBytes;
+	}
+
+	private JsCompiler compiler;
+	private String compilationLevel;
+	private LruCacheDirectory cacheDirectory;
+	private long cacheMaxBytes;
+
+	/**
+	 * Replaces a JavaScript file, and its source map, if it has one, with
+	 * minified versions.
+	 *
+	 * @return {@code true} if the result was restored from the cache
+	 * @throws IllegalArgumentException if the compilation level is unknown
+	 */
+	public boolean minify(File jsFile) throws IOException {
+		File mapFile = new File(jsFile.getPath() + ".map");
+		String js = new String(Files.readAllBytes(jsFile.toPath()), UTF_8);
+		String map = mapFile.isFile() ? new String(Files.readAllBytes(mapFile.toPath()), UTF_8) : null;
+
+		String cacheKey = null;
+		if (cacheDirectory != null) {
+			MessageDigest digest = HashUtils.newDigest();
+			HashUtils.update(digest, "js-minifier:" + CACHE_VERSION);
+			HashUtils.update(digest, compilationLevel);
+			HashUtils.update(digest, jsFile.getName());
+			HashUtils.update(digest, js);
+			HashUtils.update(digest, map != null ? map : "");
+			cacheKey = HashUtils.toHex(digest.digest());
+			if (restoreFromCache(cacheKey, jsFile, mapFile)) {
+				return true;
+			}
+		}
+
+		String[] output = compiler.compile(jsFile, compilationLevel, map != null);
+		write(jsFile, output[0]);
+		if (output[1] != null) {
+			write(mapFile, output[1]);
+		}
+		if (cacheKey != null) {
+			storeInCache(cacheKey, jsFile, output[1] != null ? mapFile : null);
+		}
+		return false;
+	}
+
+	private boolean restoreFromCache(String cacheKey, File jsFile, File mapFile) throws IOException {
+		Path entry = cacheDirectory.getRoot().resolve(cacheKey);
+		Path cachedJsFile = entry.resolve(CACHED_JS_FILE_NAME);
+		Path cachedMapFile = entry.resolve(CACHED_MAP_FILE_NAME);
+		if (!Files.isRegularFile(cachedJsFile)) {
+			return false;
+		}
+		try {
+			Files.copy(cachedJsFile, jsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			if (Files.isRegularFile(cachedMapFile)) {
+				Files.copy(cachedMapFile, mapFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			// evicted by another build while copying
+			return false;
+		}
+		cacheDirectory.touch(entry);
+		return true;
+	}
+
+	private void storeInCache(String cacheKey, File jsFile, File mapFile) throws IOException {
+		Path root = cacheDirectory.getRoot();
+		Path entry = root.resolve(cacheKey);
+		Files.createDirectories(root);
+		Path tempEntry = Files.createTempDirectory(root, cacheKey + ".tmp");
+		try {
+			Files.copy(jsFile.toPath(), tempEntry.resolve(CACHED_JS_FILE_NAME));
+			if (mapFile != null) {
+				Files.copy(mapFile.toPath(), tempEntry.resolve(CACHED_MAP_FILE_NAME));
+			}
+			if (!Files.exists(entry)) {
+				Files.move(tempEntry, entry, StandardCopyOption.ATOMIC_MOVE);
+			}
+		} catch (IOException e) {
+			// another build stored the same entry first
+		} finally {
+			FileUtils.deleteQuietly(tempEntry.toFile());
+		}
+		try (Closeable lock = cacheDirectory.tryLock()) {
+			if (lock != null) {
+				cacheDirectory.evict(cacheDirectory.listEntries(), cacheMaxBytes, CACHE_MIN_AGE, 0);
+			}
+		}
+	}
+
+	private static void write(File file, String contents) throws IOException {
+		Files.write(file.toPath(), contents.getBytes(UTF_8));
+	}
+}
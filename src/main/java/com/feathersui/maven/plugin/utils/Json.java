@@ -0,0 +1,334 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON serialization for the reports and metadata files written by
+ * the plugin. Supports {@code Map}, {@code Collection}, {@code String},
+ * {@code Number}, {@code Boolean}, and {@code null} values.
+ *
+ * <p>
+ * {@link #parse(String)} returns objects as a {@code LinkedHashMap}, arrays
+ * as an {@code ArrayList}, and numbers as a {@code Double}.
+ * </p>
+ *
+ * <p>
+ * JSON can't represent {@code NaN} or infinite numbers, so
+ * {@link #stringify(Object)} writes them as {@code null}, the same as
+ * JavaScript's {@code JSON.stringify()}.
+ * </p>
+ */
+public class Json {
+	private Json() {
+	}
+
+	public static Object parse(String json) {
+		Parser parser = new Parser(json);
+		Object result = parser.readValue();
+		parser.skipWhitespace();
+		if (parser.index < json.length()) {
+			throw parser.error("Unexpected character");
+		}
+		return result;
+	}
+
+	private static class Parser {
+		public Parser(String json) {
+			this.json = json;
+		}
+
+		private String json;
+		public int index = 0;
+
+		public Object readValue() {
+			skipWhitespace();
+			if (index >= json.length()) {
+				throw error("Unexpected end of JSON");
+			}
+			char c = json.charAt(index);
+			switch (c) {
+				case '{':
+					return readObject();
+				case '[':
+					return readArray();
+				case '"':
+					return readString();
+				case 't':
+					return readLiteral("true", Boolean.TRUE);
+				case 'f':
+					return readLiteral("false", Boolean.FALSE);
+				case 'n':
+					return readLiteral("null", null);
+				default:
+					if (c == '-' || (c >= '0' && c <= '9')) {
+						return readNumber();
+					}
+					throw error("Unexpected character");
+			}
+		}
+
+		private Map<String, Object> readObject() {
+			Map<String, Object> result = new LinkedHashMap<>();
+			index++;
+			skipWhitespace();
+			if (peek() == '}') {
+				index++;
+				return result;
+			}
+			while (true) {
+				skipWhitespace();
+				if (peek() != '"') {
+					throw error("Expected string key");
+				}
+				String key = readString();
+				skipWhitespace();
+				expect(':');
+				result.put(key, readValue());
+				skipWhitespace();
+				if (peek() == ',') {
+					index++;
+					continue;
+				}
+				expect('}');
+				return result;
+			}
+		}
+
+		private List<Object> readArray() {
+			List<Object> result = new ArrayList<>();
+			index++;
+			skipWhitespace();
+			if (peek() == ']') {
+				index++;
+				return result;
+			}
+			while (true) {
+				result.add(readValue());
+				skipWhitespace();
+				if (peek() == ',') {
+					index++;
+					continue;
+				}
+				expect(']');
+				return result;
+			}
+		}
+
+		private String readString() {
+			StringBuilder builder = new StringBuilder();
+			index++;
+			while (true) {
+				if (index >= json.length()) {
+					throw error("Unterminated string");
+				}
+				char c = json.charAt(index++);
+				if (c == '"') {
+					return builder.toString();
+				}
+				if (c != '\\') {
+					builder.append(c);
+					continue;
+				}
+				if (index >= json.length()) {
+					throw error("Unterminated string");
+				}
+				char escaped = json.charAt(index++);
+				switch (escaped) {
+					case 'b':
+						builder.append('\b');
+						break;
+					case 'f':
+						builder.append('\f');
+						break;
+					case 'n':
+						builder.append('\n');
+						break;
+					case 'r':
+						builder.append('\r');
+						break;
+					case 't':
+						builder.append('\t');
+						break;
+					case 'u':
+						if (index + 4 > json.length()) {
+							throw error("Invalid unicode escape");
+						}
+						builder.append((char) Integer.parseInt(json.substring(index, index + 4), 16));
+						index += 4;
+						break;
+					default:
+						builder.append(escaped);
+				}
+			}
+		}
+
+		private Double readNumber() {
+			int start = index;
+			while (index < json.length() && "+-0123456789.eE".indexOf(json.charAt(index)) != -1) {
+				index++;
+			}
+			try {
+				return Double.valueOf(json.substring(start, index));
+			} catch (NumberFormatException e) {
+				throw error("Invalid number");
+			}
+		}
+
+		private Object readLiteral(String literal, Object value) {
+			if (!json.startsWith(literal, index)) {
+				throw error("Unexpected character");
+			}
+			index += literal.length();
+			return value;
+		}
+
+		private char peek() {
+			if (index >= json.length()) {
+				throw error("Unexpected end of JSON");
+			}
+			return json.charAt(index);
+		}
+
+		private void expect(char c) {
+			if (peek() != c) {
+				throw error("Expected '" + c + "'");
+			}
+			index++;
+		}
+
+		public void skipWhitespace() {
+			while (index < json.length() && Character.isWhitespace(json.charAt(index))) {
+				index++;
+			}
+		}
+
+		public IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at position " + index);
+		}
+	}
+
+	public static String stringify(Object value) {
+		StringBuilder builder = new StringBuilder();
+		write(value, builder, 0);
+		builder.append("\n");
+		return builder.toString();
+	}
+
+	private static boolean isFinite(Number value) {
+		if (value instanceof Double || value instanceof Float) {
+			double doubleValue = value.doubleValue();
+			return !Double.isNaN(doubleValue) && !Double.isInfinite(doubleValue);
+		}
+		return true;
+	}
+
+	private static void write(Object value, StringBuilder builder, int indent) {
+		if (value == null) {
+			builder.append("null");
+		} else if (value instanceof String) {
+			writeString((String) value, builder);
+		} else if (value instanceof Number) {
+			builder.append(isFinite((Number) value) ? value.toString() : "null");
+		} else if (value instanceof Boolean) {
+			builder.append(value.toString());
+		} else if (value instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			if (map.isEmpty()) {
+				builder.append("{}");
+				return;
+			}
+			builder.append("{\n");
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				if (!first) {
+					builder.append(",\n");
+				}
+				first = false;
+				writeIndent(builder, indent + 1);
+				writeString(String.valueOf(entry.getKey()), builder);
+				builder.append(": ");
+				write(entry.getValue(), builder, indent + 1);
+			}
+			builder.append("\n");
+			writeIndent(builder, indent);
+			builder.append("}");
+		} else if (value instanceof Collection) {
+			Collection<?> collection = (Collection<?>) value;
+			if (collection.isEmpty()) {
+				builder.append("[]");
+				return;
+			}
+			builder.append("[\n");
+			boolean first = true;
+			for (Object item : collection) {
+				if (!first) {
+					builder.append(",\n");
+				}
+				first = false;
+				writeIndent(builder, indent + 1);
+				write(item, builder, indent + 1);
+			}
+			builder.append("\n");
+			writeIndent(builder, indent);
+			builder.append("]");
+		} else {
+			writeString(value.toString(), builder);
+		}
+	}
+
+	private static void writeIndent(StringBuilder builder, int indent) {
+		for (int i = 0; i < indent; i++) {
+			builder.append("  ");
+		}
+	}
+
+	private static void writeString(String value, StringBuilder builder) {
+		builder.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					builder.append("\\\"");
+					break;
+				case '\\':
+					builder.append("\\\\");
+					break;
+				case '\n':
+					builder.append("\\n");
+					break;
+				case '\r':
+					builder.append("\\r");
+					break;
+				case '\t':
+					builder.append("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						builder.append(String.format("\\u%04x", (int) c));
+					} else {
+						builder.append(c);
+					}
+			}
+		}
+		builder.append('"');
+	}
+}
@@ -0,0 +1,232 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A cache directory shared between builds, and possibly between multiple
+ * processes, that may be trimmed to a maximum size by removing the least
+ * recently used entries.
+ */
+public class LruCacheDirectory {
+	private static final String LOCK_FILE_NAME = ".lock";
+	private static final Map<Path, ReentrantLock> jvmLocks = new ConcurrentHashMap<>();
+
+	public LruCacheDirectory(File root) {
+		this.root = root.toPath().toAbsolutePath().normalize();
+	}
+
+	private Path root;
+
+	public Path getRoot() {
+		return root;
+	}
+
+	/**
+	 * Acquires an exclusive lock on the cache directory, waiting for other
+	 * threads and processes to release it, if necessary.
+	 */
+	public Closeable lock() throws IOException {
+		return acquire(true);
+	}
+
+	/**
+	 * Acquires an exclusive lock on the cache directory, or returns
+	 * {@code null} if another thread or process currently holds it.
+	 */
+	public Closeable tryLock() throws IOException {
+		return acquire(false);
+	}
+
+	private Closeable acquire(boolean wait) throws IOException {
+		Files.createDirectories(root);
+		ReentrantLock jvmLock = jvmLocks.computeIfAbsent(root, key -> new ReentrantLock());
+		if (wait) {
+			jvmLock.lock();
+		} else if (!jvmLock.tryLock()) {
+			return null;
+		}
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(root.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE);
+			FileLock fileLock = wait ? channel.lock() : channel.tryLock();
+			if (fileLock == null) {
+				channel.close();
+				jvmLock.unlock();
+				return null;
+			}
+			final FileChannel lockedChannel = channel;
+			return () -> {
+				try {
+					fileLock.release();
+					lockedChannel.close();
+				} finally {
+					jvmLock.unlock();
+				}
+			};
+		} catch (IOException | OverlappingFileLockException e) {
+			if (channel != null) {
+				channel.close();
+			}
+			jvmLock.unlock();
+			if (e instanceof IOException) {
+				throw (IOException) e;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Returns every regular file in the cache directory, except for the lock
+	 * file.
+	 */
+	public List<Path> listFiles() throws IOException {
+		if (!Files.isDirectory(root)) {
+			return new ArrayList<>();
+		}
+		Path lockFile = root.resolve(LOCK_FILE_NAME);
+		try (Stream<Path> stream = Files.walk(root)) {
+			return stream.filter(path -> Files.isRegularFile(path) && !path.equals(lockFile))
+					.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Returns every top-level file and directory in the cache directory,
+	 * except for the lock file.
+	 */
+	public List<Path> listEntries() throws IOException {
+		if (!Files.isDirectory(root)) {
+			return new ArrayList<>();
+		}
+		Path lockFile = root.resolve(LOCK_FILE_NAME);
+		try (Stream<Path> stream = Files.list(root)) {
+			return stream.filter(path -> !path.equals(lockFile)).collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries until the total size of the
+	 * entries is less than or equal to {@code maxBytes}. Entries that were
+	 * used more recently than {@code minAgeMillis} are never deleted because
+	 * another build may be using them. Entries older than
+	 * {@code maxAgeMillis} are always deleted, if it is greater than zero.
+	 *
+	 * <p>
+	 * The caller should hold the lock on the cache directory.
+	 * </p>
+	 *
+	 * @return the number of bytes that were deleted
+	 */
+	public long evict(List<Path> entries, long maxBytes, long minAgeMillis, long maxAgeMillis) throws IOException {
+		List<CacheEntry> cacheEntries = new ArrayList<>();
+		long totalBytes = 0;
+		for (Path path : entries) {
+			CacheEntry entry = new CacheEntry();
+			entry.path = path;
+			try {
+				entry.lastUsed = lastUsed(path);
+				entry.size = sizeOf(path);
+			} catch (IOException e) {
+				// deleted by someone else
+				continue;
+			}
+			totalBytes += entry.size;
+			cacheEntries.add(entry);
+		}
+		cacheEntries.sort(Comparator.comparingLong((CacheEntry entry) -> entry.lastUsed));
+
+		long now = System.currentTimeMillis();
+		long deletedBytes = 0;
+		for (CacheEntry entry : cacheEntries) {
+			long age = now - entry.lastUsed;
+			boolean expired = maxAgeMillis > 0 && age > maxAgeMillis;
+			if (!expired && totalBytes - deletedBytes <= maxBytes) {
+				break;
+			}
+			if (age < minAgeMillis) {
+				continue;
+			}
+			delete(entry.path);
+			deletedBytes += entry.size;
+		}
+		return deletedBytes;
+	}
+
+	/**
+	 * Updates the last modified time of an entry so that it is considered
+	 * recently used, even on file systems that don't track access times.
+	 */
+	public void touch(Path path) {
+		path.toFile().setLastModified(System.currentTimeMillis());
+	}
+
+	public static long sizeOf(Path path) throws IOException {
+		if (!Files.isDirectory(path)) {
+			return Files.size(path);
+		}
+		try (Stream<Path> stream = Files.walk(path)) {
+			return stream.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+		}
+	}
+
+	private static long lastUsed(Path path) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		if (attributes.isDirectory()) {
+			// listing the directory updates its access time
+			return attributes.lastModifiedTime().toMillis();
+		}
+		return Math.max(attributes.lastAccessTime().toMillis(), attributes.lastModifiedTime().toMillis());
+	}
+
+	private static void delete(Path path) throws IOException {
+		if (!Files.isDirectory(path)) {
+			Files.deleteIfExists(path);
+			return;
+		}
+		try (Stream<Path> stream = Files.walk(path)) {
+			List<Path> paths = stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+			for (Path current : paths) {
+				Files.deleteIfExists(current);
+			}
+		}
+	}
+
+	private static class CacheEntry {
+		public Path path;
+		public long size;
+		public long lastUsed;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.DependencyRequest;
+import org.eclipse.aether.resolution.DependencyResolutionException;
+
+/**
+ * Resolves large dependencies that are used only by optional features, such
+ * as a browser or a JavaScript minifier, when a goal first needs them,
+ * instead of making every user of the plugin download them. They are
+ * declared with the {@code provided} scope, and the classes that use them are
+ * kept in a separate implementation package, which is loaded with them in a
+ * {@link ChildFirstClassLoader}.
+ */
+public class OnDemandDependencies {
+	/**
+	 * Returns a class loader for an implementation package and its
+	 * dependency. If the dependency was added to the plugin's dependencies,
+	 * returns the plugin's class loader instead. Otherwise, resolves the
+	 * dependency from the project's plugin repositories.
+	 *
+	 * @param coordinates           the dependency's
+	 *                              <em>groupId:artifactId:version</em>
+	 * @param dependencyClassName   a class in the dependency, which is used to
+	 *                              check if the plugin can load it already
+	 * @param implementationPackage the package of the classes that use the
+	 *                              dependency, with a trailing dot
+	 */
+	public static ClassLoader createClassLoader(String coordinates, String dependencyClassName,
+			String implementationPackage, RepositorySystem repositorySystem,
+			RepositorySystemSession repositorySession, List<RemoteRepository> repositories)
+			throws IOException {
+		ClassLoader pluginClassLoader = OnDemandDependencies.class.getClassLoader();
+		try {
+			Class.forName(dependencyClassName, false, pluginClassLoader);
+			return pluginClassLoader;
+		} catch (ClassNotFoundException e) {
+			// resolve it below
+		}
+		List<URL> urls = new ArrayList<>();
+		urls.add(OnDemandDependencies.class.getProtectionDomain().getCodeSource().getLocation());
+		urls.addAll(resolve(coordinates, repositorySystem, repositorySession, repositories));
+		return new ChildFirstClassLoader(urls.toArray(new URL[urls.size()]), pluginClassLoader,
+				implementationPackage);
+	}
+
+	private static List<URL> resolve(String coordinates, RepositorySystem repositorySystem,
+			RepositorySystemSession repositorySession, List<RemoteRepository> repositories)
+			throws IOException {
+		CollectRequest collectRequest = new CollectRequest(new Dependency(new DefaultArtifact(coordinates), "runtime"),
+				repositories);
+		DependencyRequest dependencyRequest = new DependencyRequest(collectRequest, (node, parents) -> {
+			Dependency dependency = node.getDependency();
+			return dependency == null || (!dependency.isOptional()
+					&& ("compile".equals(dependency.getScope()) || "runtime".equals(dependency.getScope())));
+		});
+		List<URL> result = new ArrayList<>();
+		try {
+			for (ArtifactResult artifactResult : repositorySystem
+					.resolveDependencies(repositorySession, dependencyRequest).getArtifactResults()) {
+				result.add(artifactResult.getArtifact().getFile().toURI().toURL());
+			}
+		} catch (DependencyResolutionException e) {
+			throw new IOException("Failed to resolve " + coordinates, e);
+		}
+		return result;
+	}
+}
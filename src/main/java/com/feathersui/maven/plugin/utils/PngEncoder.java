@@ -0,0 +1,191 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Encodes 8-bit RGB and RGBA PNG images with maximum compression and an
+ * adaptive filter for each row. Ancillary chunks are not written.
+ */
+public class PngEncoder {
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+	private PngEncoder() {
+	}
+
+	/**
+	 * Recompresses a PNG file without changing its pixels. Returns the
+	 * original bytes if the image can't be recompressed losslessly, or if
+	 * recompressing doesn't make it smaller.
+	 */
+	public static byte[] optimize(byte[] original) throws IOException {
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(original));
+		if (image == null || !isLossless(image)) {
+			return original;
+		}
+		byte[] result = encode(image);
+		if (result.length >= original.length) {
+			return original;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns {@code true} if every pixel of the image may be represented in
+	 * 8-bit RGBA without losing any information.
+	 */
+	public static boolean isLossless(BufferedImage image) {
+		ColorModel colorModel = image.getColorModel();
+		for (int size : colorModel.getComponentSize()) {
+			if (size > 8) {
+				return false;
+			}
+		}
+		// grayscale images are converted with a gamma curve by getRGB()
+		return colorModel.getColorSpace().isCS_sRGB();
+	}
+
+	public static byte[] encode(BufferedImage image) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		boolean hasAlpha = image.getColorModel().hasAlpha();
+		int bytesPerPixel = hasAlpha ? 4 : 3;
+		int stride = width * bytesPerPixel;
+
+		int[] argb = new int[width];
+		byte[] previous = new byte[stride];
+		byte[] current = new byte[stride];
+		byte[][] filtered = new byte[5][stride];
+
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		ByteArrayOutputStream idat = new ByteArrayOutputStream();
+		try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(idat, deflater, 65536)) {
+			for (int y = 0; y < height; y++) {
+				image.getRGB(0, y, width, 1, argb, 0, width);
+				int index = 0;
+				for (int x = 0; x < width; x++) {
+					int pixel = argb[x];
+					current[index++] = (byte) (pixel >> 16);
+					current[index++] = (byte) (pixel >> 8);
+					current[index++] = (byte) pixel;
+					if (hasAlpha) {
+						current[index++] = (byte) (pixel >> 24);
+					}
+				}
+				int bestFilter = 0;
+				long bestScore = Long.MAX_VALUE;
+				for (int filter = 0; filter < 5; filter++) {
+					long score = applyFilter(filter, current, previous, filtered[filter], bytesPerPixel);
+					if (score < bestScore) {
+						bestScore = score;
+						bestFilter = filter;
+					}
+				}
+				deflaterStream.write(bestFilter);
+				deflaterStream.write(filtered[bestFilter]);
+				byte[] temp = previous;
+				previous = current;
+				current = temp;
+			}
+		} finally {
+			deflater.end();
+		}
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		output.write(SIGNATURE);
+		ByteArrayOutputStream ihdr = new ByteArrayOutputStream();
+		DataOutputStream ihdrData = new DataOutputStream(ihdr);
+		ihdrData.writeInt(width);
+		ihdrData.writeInt(height);
+		ihdrData.writeByte(8);
+		ihdrData.writeByte(hasAlpha ? 6 : 2);
+		ihdrData.writeByte(0);
+		ihdrData.writeByte(0);
+		ihdrData.writeByte(0);
+		writeChunk(output, "IHDR", ihdr.toByteArray());
+		writeChunk(output, "IDAT", idat.toByteArray());
+		writeChunk(output, "IEND", new byte[0]);
+		return output.toByteArray();
+	}
+
+	private static long applyFilter(int filter, byte[] current, byte[] previous, byte[] result, int bpp) {
+		long score = 0;
+		for (int i = 0; i < current.length; i++) {
+			int x = current[i] & 0xff;
+			int a = i >= bpp ? current[i - bpp] & 0xff : 0;
+			int b = previous[i] & 0xff;
+			int c = i >= bpp ? previous[i - bpp] & 0xff : 0;
+			int value;
+			switch (filter) {
+				case 1:
+					value = x - a;
+					break;
+				case 2:
+					value = x - b;
+					break;
+				case 3:
+					value = x - ((a + b) >> 1);
+					break;
+				case 4:
+					value = x - paeth(a, b, c);
+					break;
+				default:
+					value = x;
+			}
+			result[i] = (byte) value;
+			// minimum sum of absolute differences heuristic
+			score += Math.abs((int) (byte) value);
+		}
+		return score;
+	}
+
+	private static int paeth(int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+		if (pa <= pb && pa <= pc) {
+			return a;
+		}
+		if (pb <= pc) {
+			return b;
+		}
+		return c;
+	}
+
+	private static void writeChunk(ByteArrayOutputStream output, String type, byte[] data) throws IOException {
+		DataOutputStream dataOutput = new DataOutputStream(output);
+		byte[] typeBytes = type.getBytes("US-ASCII");
+		dataOutput.writeInt(data.length);
+		dataOutput.write(typeBytes);
+		dataOutput.write(data);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data);
+		dataOutput.writeInt((int) crc.getValue());
+	}
+}
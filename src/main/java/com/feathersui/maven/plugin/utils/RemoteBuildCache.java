@@ -0,0 +1,280 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A client for a shared build cache that stores compressed build output with
+ * a simple HTTP protocol:
+ *
+ * <ul>
+ * <li>{@code GET <url>/<key>.zip} returns the archive, or 404 if missing.</li>
+ * <li>{@code HEAD <url>/<key>.zip} returns 200 if the archive exists.</li>
+ * <li>{@code PUT <url>/<key>.zip} stores the archive, unless one with the
+ * same key already exists. May require an {@code Authorization: Bearer}
+ * token.</li>
+ * </ul>
+ *
+ * <p>
+ * Each entry of the archive stores the POSIX permissions of its file in an
+ * "ASi Unix" extra field, the same as Info-ZIP and Commons Compress, so that
+ * executables and native libraries can still run after they are restored.
+ * </p>
+ *
+ * @see BuildCacheHttpHandler
+ */
+public class RemoteBuildCache {
+	private static final int CONNECT_TIMEOUT = 10 * 1000;
+	private static final int READ_TIMEOUT = 5 * 60 * 1000;
+	private static final short UNIX_EXTRA_FIELD_ID = 0x756e;
+	private static final int UNIX_EXTRA_FIELD_DATA_LENGTH = 14;
+	private static final int REGULAR_FILE_MODE = 0100000;
+	// in the order of the mode's bits, from the most significant
+	private static final PosixFilePermission[] PERMISSIONS = { PosixFilePermission.OWNER_READ,
+			PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.GROUP_READ,
+			PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.OTHERS_READ,
+			PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE };
+
+	public RemoteBuildCache(String url, String token) {
+		this.url = url.endsWith("/") ? url : url + "/";
+		this.token = token;
+	}
+
+	private String url;
+	private String token;
+
+	/**
+	 * Downloads the archive with the specified key, and replaces the contents
+	 * of the output directory with it.
+	 *
+	 * @return {@code true} if the archive existed and was extracted
+	 */
+	public boolean pull(String key, File outputDirectory) throws IOException {
+		HttpURLConnection connection = openConnection(key, "GET");
+		try {
+			int responseCode = connection.getResponseCode();
+			if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+				return false;
+			}
+			if (responseCode != HttpURLConnection.HTTP_OK) {
+				throw new IOException("Unexpected response from remote build cache: " + responseCode);
+			}
+			File tempDirectory = new File(outputDirectory.getParentFile(),
+					outputDirectory.getName() + "-remote-cache.tmp");
+			FileUtils.deleteDirectory(tempDirectory);
+			try {
+				try (InputStream input = connection.getInputStream()) {
+					unzip(input, tempDirectory);
+				}
+				FileUtils.deleteDirectory(outputDirectory);
+				Files.move(tempDirectory.toPath(), outputDirectory.toPath());
+			} finally {
+				FileUtils.deleteDirectory(tempDirectory);
+			}
+			return true;
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Compresses the output directory and uploads it with the specified key,
+	 * unless an archive with the same key already exists. Files and
+	 * directories named in {@code excludedNames} are skipped.
+	 */
+	public void push(String key, File outputDirectory, List<String> excludedNames) throws IOException {
+		HttpURLConnection headConnection = openConnection(key, "HEAD");
+		try {
+			if (headConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+				return;
+			}
+		} finally {
+			headConnection.disconnect();
+		}
+
+		File archiveFile = File.createTempFile("lime-build-cache-", ".zip");
+		try {
+			zip(outputDirectory, archiveFile, excludedNames);
+			HttpURLConnection connection = openConnection(key, "PUT");
+			try {
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type", "application/zip");
+				connection.setFixedLengthStreamingMode(archiveFile.length());
+				try (OutputStream output = connection.getOutputStream()) {
+					Files.copy(archiveFile.toPath(), output);
+				}
+				int responseCode = connection.getResponseCode();
+				if (responseCode < 200 || responseCode >= 300) {
+					throw new IOException("Unexpected response from remote build cache: " + responseCode);
+				}
+			} finally {
+				connection.disconnect();
+			}
+		} finally {
+			Files.deleteIfExists(archiveFile.toPath());
+		}
+	}
+
+	private HttpURLConnection openConnection(String key, String method) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url + key + ".zip").openConnection();
+		connection.setRequestMethod(method);
+		connection.setConnectTimeout(CONNECT_TIMEOUT);
+		connection.setReadTimeout(READ_TIMEOUT);
+		if (token != null) {
+			connection.setRequestProperty("Authorization", "Bearer " + token);
+		}
+		return connection;
+	}
+
+	public static void zip(File directory, File archiveFile, List<String> excludedNames) throws IOException {
+		Path directoryPath = directory.toPath();
+		List<Path> files = null;
+		try (Stream<Path> stream = Files.walk(directoryPath)) {
+			files = stream.filter(Files::isRegularFile).filter(path -> {
+				for (Path part : directoryPath.relativize(path)) {
+					if (excludedNames.contains(part.toString())) {
+						return false;
+					}
+				}
+				return true;
+			}).sorted().collect(Collectors.toList());
+		}
+		try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(archiveFile.toPath()))) {
+			for (Path file : files) {
+				String name = directoryPath.relativize(file).toString().replace('\\', '/');
+				ZipEntry entry = new ZipEntry(name);
+				entry.setTime(file.toFile().lastModified());
+				Set<PosixFilePermission> permissions = getPermissions(file);
+				if (permissions != null) {
+					entry.setExtra(createUnixExtraField(permissions));
+				}
+				output.putNextEntry(entry);
+				Files.copy(file, output);
+				output.closeEntry();
+			}
+		}
+	}
+
+	public static void unzip(InputStream input, File directory) throws IOException {
+		Path directoryPath = directory.toPath().toAbsolutePath().normalize();
+		Files.createDirectories(directoryPath);
+		try (ZipInputStream zipInput = new ZipInputStream(input)) {
+			ZipEntry entry = null;
+			while ((entry = zipInput.getNextEntry()) != null) {
+				Path target = directoryPath.resolve(entry.getName()).normalize();
+				if (!target.startsWith(directoryPath)) {
+					throw new IOException("Invalid entry in build cache archive: " + entry.getName());
+				}
+				if (entry.isDirectory()) {
+					Files.createDirectories(target);
+					continue;
+				}
+				Files.createDirectories(target.getParent());
+				Files.copy(zipInput, target);
+				Set<PosixFilePermission> permissions = readUnixExtraField(entry.getExtra());
+				if (permissions != null) {
+					setPermissions(target, permissions);
+				}
+				target.toFile().setLastModified(entry.getTime());
+			}
+		}
+	}
+
+	private static Set<PosixFilePermission> getPermissions(Path file) throws IOException {
+		try {
+			return Files.getPosixFilePermissions(file);
+		} catch (UnsupportedOperationException e) {
+			// not a POSIX file system, such as on Windows
+			return null;
+		}
+	}
+
+	private static void setPermissions(Path file, Set<PosixFilePermission> permissions) throws IOException {
+		try {
+			Files.setPosixFilePermissions(file, permissions);
+		} catch (UnsupportedOperationException e) {
+			// not a POSIX file system, such as on Windows
+		}
+	}
+
+	private static byte[] createUnixExtraField(Set<PosixFilePermission> permissions) {
+		int mode = REGULAR_FILE_MODE;
+		for (int i = 0; i < PERMISSIONS.length; i++) {
+			if (permissions.contains(PERMISSIONS[i])) {
+				mode |= 1 << (PERMISSIONS.length - 1 - i);
+			}
+		}
+		// mode, size of the link target, uid, gid
+		ByteBuffer data = ByteBuffer.allocate(UNIX_EXTRA_FIELD_DATA_LENGTH - 4).order(ByteOrder.LITTLE_ENDIAN);
+		data.putShort((short) mode).putInt(0).putShort((short) 0).putShort((short) 0);
+		CRC32 crc = new CRC32();
+		crc.update(data.array());
+		ByteBuffer result = ByteBuffer.allocate(4 + UNIX_EXTRA_FIELD_DATA_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		result.putShort(UNIX_EXTRA_FIELD_ID).putShort((short) UNIX_EXTRA_FIELD_DATA_LENGTH);
+		result.putInt((int) crc.getValue()).put(data.array());
+		return result.array();
+	}
+
+	private static Set<PosixFilePermission> readUnixExtraField(byte[] extra) {
+		if (extra == null) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.remaining() >= 4) {
+			short id = buffer.getShort();
+			int length = buffer.getShort() & 0xffff;
+			if (length > buffer.remaining()) {
+				return null;
+			}
+			if (id != UNIX_EXTRA_FIELD_ID || length < 6) {
+				buffer.position(buffer.position() + length);
+				continue;
+			}
+			// skip the CRC
+			int mode = buffer.getShort(buffer.position() + 4) & 0xffff;
+			Set<PosixFilePermission> result = EnumSet.noneOf(PosixFilePermission.class);
+			for (int i = 0; i < PERMISSIONS.length; i++) {
+				if ((mode & (1 << (PERMISSIONS.length - 1 - i))) != 0) {
+					result.add(PERMISSIONS[i]);
+				}
+			}
+			return result;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,343 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Generates a service worker for the output of an html5 build, which
+ * precaches the app shell and the asset libraries that are preloaded, and
+ * caches every other file from the same origin when it is first requested.
+ * Each precached file has a revision computed from its contents, so a new
+ * build only downloads the files that have changed. Files renamed by
+ * {@link ContentHasher} already have versioned names, so they don't need a
+ * revision.
+ *
+ * <p>
+ * The revisions are stored between builds, and a file is hashed again only
+ * if its size or modification time has changed.
+ * </p>
+ */
+public class ServiceWorkerGenerator {
+	/**
+	 * The name of the file where the revisions of the previous build are
+	 * stored, written next to the output directory.
+	 */
+	public static final String REVISIONS_FILE_NAME = "service-worker-revisions.json";
+
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+	private static final String DEFAULT_LIBRARY_NAME = "default";
+	private static final String MANIFEST_DIRECTORY_NAME = "manifest";
+	private static final String SOURCE_MAP_EXTENSION = ".map";
+	private static final String REGISTER_MARKER = "<!-- lime-service-worker -->";
+	private static final Pattern SERIALIZED_STRING_PATTERN = Pattern.compile("y(\\d+):");
+
+	public ServiceWorkerGenerator(File directory, String fileName) {
+		this.directory = directory;
+		this.fileName = fileName;
+	}
+
+	private File directory;
+	private String fileName;
+
+	/**
+	 * Returns the file where the revisions are stored between builds.
+	 */
+	public File getRevisionsFile() {
+		return new File(directory.getAbsoluteFile().getParentFile(), REVISIONS_FILE_NAME);
+	}
+
+	/**
+	 * Writes the service worker, and registers it in <em>index.html</em>.
+	 *
+	 * @param lazyLibraries the names of asset libraries that are not
+	 *                      preloaded, which are cached at runtime instead of
+	 *                      being precached
+	 * @param hashedPaths   the original paths of the files renamed by
+	 *                      {@link ContentHasher}, mapped to the new paths
+	 * @return the paths of the precached files
+	 */
+	public List<String> generate(Collection<String> lazyLibraries, Map<String, String> hashedPaths)
+			throws IOException {
+		Path root = directory.toPath().toAbsolutePath().normalize();
+		injectRegistration(root.resolve("index.html"));
+
+		Set<String> lazyPaths = new HashSet<>();
+		for (String libraryName : lazyLibraries) {
+			if (DEFAULT_LIBRARY_NAME.equals(libraryName)) {
+				continue;
+			}
+			String manifestPath = MANIFEST_DIRECTORY_NAME + "/" + libraryName + ".json";
+			manifestPath = hashedPaths.getOrDefault(manifestPath, manifestPath);
+			Path manifestFile = root.resolve(manifestPath);
+			if (!Files.isRegularFile(manifestFile)) {
+				continue;
+			}
+			lazyPaths.add(manifestPath);
+			lazyPaths.addAll(getManifestPaths(root, new String(Files.readAllBytes(manifestFile), UTF_8)));
+		}
+
+		Set<String> versionedPaths = new HashSet<>(hashedPaths.values());
+		Map<String, Object> previousRevisions = readRevisions();
+		Map<String, Object> revisions = new TreeMap<>();
+		List<Map<String, Object>> precacheEntries = new ArrayList<>();
+		List<String> paths = null;
+		try (Stream<Path> stream = Files.walk(root)) {
+			paths = stream.filter(Files::isRegularFile)
+					.map(path -> root.relativize(path).toString().replace('\\', '/'))
+					.filter(path -> !path.equals(fileName) && !path.endsWith(GzipPrecompressor.EXTENSION)
+							&& !path.endsWith(SOURCE_MAP_EXTENSION) && !lazyPaths.contains(path))
+					.sorted().collect(Collectors.toList());
+		}
+		for (String path : paths) {
+			Map<String, Object> entry = new LinkedHashMap<>();
+			entry.put("url", path);
+			if (!versionedPaths.contains(path)) {
+				String revision = getRevision(root.resolve(path).toFile(), previousRevisions.get(path));
+				revisions.put(path, createRevision(root.resolve(path).toFile(), revision));
+				entry.put("revision", revision);
+			}
+			precacheEntries.add(entry);
+		}
+		writeRevisions(revisions);
+
+		String precacheManifest = Json.stringify(precacheEntries);
+		String script = createScript(precacheManifest, HashUtils.sha256(precacheManifest).substring(0, 16));
+		Path scriptFile = root.resolve(fileName);
+		// an unchanged service worker doesn't trigger an update in the browser
+		if (!Files.isRegularFile(scriptFile) || !script.equals(new String(Files.readAllBytes(scriptFile), UTF_8))) {
+			Files.write(scriptFile, script.getBytes(UTF_8));
+		}
+		return paths;
+	}
+
+	/**
+	 * Returns the paths of the assets listed in a Lime asset manifest, which
+	 * serializes the list of assets with {@code haxe.Serializer}.
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<String> getManifestPaths(Path root, String manifestText) {
+		List<String> result = new ArrayList<>();
+		Object json = null;
+		try {
+			json = Json.parse(manifestText);
+		} catch (RuntimeException e) {
+			return result;
+		}
+		if (!(json instanceof Map)) {
+			return result;
+		}
+		Map<String, Object> manifest = (Map<String, Object>) json;
+		Object assets = manifest.get("assets");
+		if (!(assets instanceof String)) {
+			return result;
+		}
+		String rootPath = manifest.get("rootPath") instanceof String ? (String) manifest.get("rootPath") : "";
+		String serialized = (String) assets;
+		Matcher matcher = SERIALIZED_STRING_PATTERN.matcher(serialized);
+		int index = 0;
+		while (matcher.find(index)) {
+			int start = matcher.end();
+			int end = start + Integer.parseInt(matcher.group(1));
+			if (end > serialized.length()) {
+				break;
+			}
+			index = end;
+			String value = null;
+			try {
+				value = URLDecoder.decode(serialized.substring(start, end).replace("+", "%2B"), "utf-8");
+			} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+				continue;
+			}
+			// ids, types, and other strings are skipped because they aren't
+			// files in the output directory
+			Path path = null;
+			try {
+				path = root.resolve(rootPath).resolve(value).normalize();
+			} catch (InvalidPathException e) {
+				continue;
+			}
+			if (path.startsWith(root) && Files.isRegularFile(path)) {
+				result.add(root.relativize(path).toString().replace('\\', '/'));
+			}
+		}
+		return result;
+	}
+
+	private static String getRevision(File file, Object previousRevision) throws IOException {
+		if (previousRevision instanceof Map) {
+			Map<?, ?> previous = (Map<?, ?>) previousRevision;
+			if (previous.get("size") instanceof Number && previous.get("lastModified") instanceof Number
+					&& ((Number) previous.get("size")).longValue() == file.length()
+					&& ((Number) previous.get("lastModified")).longValue() == file.lastModified()) {
+				return String.valueOf(previous.get("revision"));
+			}
+		}
+		return HashUtils.sha256(file).substring(0, 16);
+	}
+
+	private static Map<String, Object> createRevision(File file, String revision) {
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("size", file.length());
+		result.put("lastModified", file.lastModified());
+		result.put("revision", revision);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> readRevisions() {
+		File revisionsFile = getRevisionsFile();
+		if (!revisionsFile.isFile()) {
+			return new TreeMap<>();
+		}
+		try {
+			Object json = Json.parse(new String(Files.readAllBytes(revisionsFile.toPath()), UTF_8));
+			if (json instanceof Map) {
+				return (Map<String, Object>) json;
+			}
+		} catch (IOException | RuntimeException e) {
+			// hash every file again
+		}
+		return new TreeMap<>();
+	}
+
+	private void writeRevisions(Map<String, Object> revisions) throws IOException {
+		Files.write(getRevisionsFile().toPath(), Json.stringify(revisions).getBytes(UTF_8));
+	}
+
+	private void injectRegistration(Path indexFile) throws IOException {
+		if (!Files.isRegularFile(indexFile)) {
+			return;
+		}
+		String html = new String(Files.readAllBytes(indexFile), UTF_8);
+		if (html.contains(REGISTER_MARKER)) {
+			return;
+		}
+		String tag = REGISTER_MARKER + "<script>if (\"serviceWorker\" in navigator) { "
+				+ "window.addEventListener(\"load\", function() { navigator.serviceWorker.register(\"" + fileName
+				+ "\"); }); }</script>";
+		int bodyIndex = html.toLowerCase().lastIndexOf("</body>");
+		if (bodyIndex != -1) {
+			html = html.substring(0, bodyIndex) + tag + html.substring(bodyIndex);
+		} else {
+			html += tag;
+		}
+		Files.write(indexFile, html.getBytes(UTF_8));
+	}
+
+	private static String createScript(String precacheManifest, String version) {
+		return "// generated by lime-openfl-maven-plugin\n"
+				+ "var PRECACHE_MANIFEST = " + precacheManifest + ";\n"
+				+ "var CACHE_PREFIX = \"lime-\" + registration.scope + \"-\";\n"
+				+ "var PRECACHE_NAME = CACHE_PREFIX + \"precache-" + version + "\";\n"
+				+ "var RUNTIME_NAME = CACHE_PREFIX + \"runtime\";\n"
+				+ "var precacheKeys = {};\n"
+				+ "PRECACHE_MANIFEST.forEach(function(entry) {\n"
+				+ "\tvar url = new URL(entry.url, registration.scope).href;\n"
+				+ "\tprecacheKeys[url] = entry.revision ? url + \"?__lime_revision=\" + entry.revision : url;\n"
+				+ "});\n"
+				+ "self.addEventListener(\"install\", function(event) {\n"
+				+ "\tevent.waitUntil(caches.open(PRECACHE_NAME).then(function(cache) {\n"
+				+ "\t\treturn Promise.all(Object.keys(precacheKeys).map(function(url) {\n"
+				+ "\t\t\tvar key = precacheKeys[url];\n"
+				+ "\t\t\t// unchanged revisions are copied from the previous precache\n"
+				+ "\t\t\treturn caches.match(key).then(function(response) {\n"
+				+ "\t\t\t\tif (response) {\n"
+				+ "\t\t\t\t\treturn cache.put(key, response);\n"
+				+ "\t\t\t\t}\n"
+				+ "\t\t\t\treturn fetch(new Request(url, { cache: \"reload\" })).then(function(response) {\n"
+				+ "\t\t\t\t\tif (!response.ok) {\n"
+				+ "\t\t\t\t\t\tthrow new Error(\"Failed to precache \" + url + \": \" + response.status);\n"
+				+ "\t\t\t\t\t}\n"
+				+ "\t\t\t\t\treturn cache.put(key, response);\n"
+				+ "\t\t\t\t});\n"
+				+ "\t\t\t});\n"
+				+ "\t\t}));\n"
+				+ "\t}));\n"
+				+ "});\n"
+				+ "self.addEventListener(\"activate\", function(event) {\n"
+				+ "\tevent.waitUntil(caches.keys().then(function(names) {\n"
+				+ "\t\treturn Promise.all(names.filter(function(name) {\n"
+				+ "\t\t\treturn name.indexOf(CACHE_PREFIX) === 0 && name !== PRECACHE_NAME && name !== RUNTIME_NAME;\n"
+				+ "\t\t}).map(function(name) {\n"
+				+ "\t\t\treturn caches.delete(name);\n"
+				+ "\t\t}));\n"
+				+ "\t}).then(function() {\n"
+				+ "\t\treturn self.clients.claim();\n"
+				+ "\t}));\n"
+				+ "});\n"
+				+ "self.addEventListener(\"fetch\", function(event) {\n"
+				+ "\tvar request = event.request;\n"
+				+ "\tif (request.method !== \"GET\") {\n"
+				+ "\t\treturn;\n"
+				+ "\t}\n"
+				+ "\tvar url = new URL(request.url);\n"
+				+ "\tif (url.origin !== self.location.origin) {\n"
+				+ "\t\treturn;\n"
+				+ "\t}\n"
+				+ "\turl.search = \"\";\n"
+				+ "\turl.hash = \"\";\n"
+				+ "\tvar href = url.href;\n"
+				+ "\tif (request.mode === \"navigate\" && href === registration.scope) {\n"
+				+ "\t\thref = new URL(\"index.html\", registration.scope).href;\n"
+				+ "\t}\n"
+				+ "\tvar key = precacheKeys[href];\n"
+				+ "\tif (key) {\n"
+				+ "\t\tevent.respondWith(caches.open(PRECACHE_NAME).then(function(cache) {\n"
+				+ "\t\t\treturn cache.match(key);\n"
+				+ "\t\t}).then(function(response) {\n"
+				+ "\t\t\treturn response || fetch(request);\n"
+				+ "\t\t}));\n"
+				+ "\t\treturn;\n"
+				+ "\t}\n"
+				+ "\t// libraries that aren't preloaded are cached when they are loaded\n"
+				+ "\tevent.respondWith(caches.open(RUNTIME_NAME).then(function(cache) {\n"
+				+ "\t\treturn cache.match(request).then(function(cached) {\n"
+				+ "\t\t\tvar fetched = fetch(request).then(function(response) {\n"
+				+ "\t\t\t\tif (response.ok) {\n"
+				+ "\t\t\t\t\tcache.put(request, response.clone());\n"
+				+ "\t\t\t\t}\n"
+				+ "\t\t\t\treturn response;\n"
+				+ "\t\t\t});\n"
+				+ "\t\t\tif (cached) {\n"
+				+ "\t\t\t\tevent.waitUntil(fetched.catch(function() {}));\n"
+				+ "\t\t\t\treturn cached;\n"
+				+ "\t\t\t}\n"
+				+ "\t\t\treturn fetched;\n"
+				+ "\t\t});\n"
+				+ "\t}));\n"
+				+ "});\n";
+	}
+}
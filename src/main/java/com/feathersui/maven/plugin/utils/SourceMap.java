@@ -0,0 +1,144 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes the mappings of a
+ * <a href="https://sourcemaps.info/spec.html">version 3 source map</a>, and
+ * attributes the bytes of the generated code to the original sources.
+ */
+public class SourceMap {
+	private static final String BASE64_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+
+	/**
+	 * The index used for generated code that isn't mapped to any source.
+	 */
+	public static final int UNMAPPED = -1;
+
+	@SuppressWarnings("unchecked")
+	public SourceMap(String json) {
+		Map<String, Object> map = (Map<String, Object>) Json.parse(json);
+		String sourceRoot = map.get("sourceRoot") instanceof String ? (String) map.get("sourceRoot") : "";
+		for (Object source : (List<Object>) map.get("sources")) {
+			sources.add(sourceRoot + source);
+		}
+		mappings = decodeMappings((String) map.get("mappings"));
+	}
+
+	private List<String> sources = new ArrayList<>();
+	// for each generated line, pairs of generated column and source index
+	private List<int[]> mappings;
+
+	public List<String> getSources() {
+		return sources;
+	}
+
+	/**
+	 * Returns the number of UTF-8 bytes of the generated code that map to
+	 * each source. The last element contains the unmapped bytes, including
+	 * line breaks.
+	 */
+	public long[] attributeBytes(String generatedCode) {
+		long[] result = new long[sources.size() + 1];
+		int unmappedIndex = sources.size();
+		String[] lines = generatedCode.split("\n", -1);
+		for (int lineIndex = 0; lineIndex < lines.length; lineIndex++) {
+			String line = lines[lineIndex];
+			if (lineIndex < lines.length - 1) {
+				result[unmappedIndex]++;
+			}
+			int[] segments = lineIndex < mappings.size() ? mappings.get(lineIndex) : new int[0];
+			int previousColumn = 0;
+			int previousSource = UNMAPPED;
+			for (int i = 0; i <= segments.length; i += 2) {
+				int column = i < segments.length ? Math.min(segments[i], line.length()) : line.length();
+				if (column > previousColumn) {
+					long bytes = line.substring(previousColumn, column).getBytes(UTF_8).length;
+					result[previousSource == UNMAPPED ? unmappedIndex : previousSource] += bytes;
+					previousColumn = column;
+				}
+				if (i < segments.length) {
+					previousSource = segments[i + 1];
+				}
+			}
+		}
+		return result;
+	}
+
+	private List<int[]> decodeMappings(String encoded) {
+		List<int[]> result = new ArrayList<>();
+		int sourceIndex = 0;
+		for (String line : encoded.split(";", -1)) {
+			int column = 0;
+			List<Integer> segments = new ArrayList<>();
+			for (String segment : line.split(",")) {
+				if (segment.length() == 0) {
+					continue;
+				}
+				int[] values = decodeVlq(segment);
+				column += values[0];
+				int source = UNMAPPED;
+				if (values.length >= 4) {
+					sourceIndex += values[1];
+					if (sourceIndex >= 0 && sourceIndex < sources.size()) {
+						source = sourceIndex;
+					}
+				}
+				segments.add(column);
+				segments.add(source);
+			}
+			int[] lineSegments = new int[segments.size()];
+			for (int i = 0; i < lineSegments.length; i++) {
+				lineSegments[i] = segments.get(i);
+			}
+			result.add(lineSegments);
+		}
+		return result;
+	}
+
+	private static int[] decodeVlq(String segment) {
+		List<Integer> values = new ArrayList<>();
+		int value = 0;
+		int shift = 0;
+		for (int i = 0; i < segment.length(); i++) {
+			int digit = BASE64_CHARS.indexOf(segment.charAt(i));
+			if (digit == -1) {
+				throw new IllegalArgumentException("Invalid source map mapping: " + segment);
+			}
+			value += (digit & 31) << shift;
+			if ((digit & 32) != 0) {
+				shift += 5;
+				continue;
+			}
+			boolean negative = (value & 1) == 1;
+			value >>= 1;
+			values.add(negative ? -value : value);
+			value = 0;
+			shift = 0;
+		}
+		int[] result = new int[values.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = values.get(i);
+		}
+		return result;
+	}
+}
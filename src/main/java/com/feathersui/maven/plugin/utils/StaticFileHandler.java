@@ -0,0 +1,221 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Serves the files in a directory, such as the output of an html5 build.
+ *
+ * <p>
+ * If the client accepts gzip encoding, and a precompressed <em>.gz</em>
+ * sidecar file exists for the requested file, the sidecar is served instead.
+ * </p>
+ *
+ * <p>
+ * Responses include {@code ETag} and {@code Last-Modified} headers, and
+ * conditional requests with a matching {@code If-None-Match} header receive
+ * a <em>304 Not Modified</em> response.
+ * </p>
+ */
+public class StaticFileHandler implements HttpHandler {
+	private static final ZoneId GMT = ZoneId.of("GMT");
+	private static final Map<String, String> MIME_MAP = new HashMap<>();
+	static {
+		MIME_MAP.put("css", "text/css");
+		MIME_MAP.put("gif", "image/gif");
+		MIME_MAP.put("htm", "text/html");
+		MIME_MAP.put("html", "text/html");
+		MIME_MAP.put("js", "application/javascript");
+		MIME_MAP.put("json", "application/json");
+		MIME_MAP.put("jpg", "image/jpeg");
+		MIME_MAP.put("jpeg", "image/jpeg");
+		MIME_MAP.put("mp3", "audio/mpeg");
+		MIME_MAP.put("mp4", "video/mp4");
+		MIME_MAP.put("flv", "video/x-flv");
+		MIME_MAP.put("mov", "video/quicktime");
+		MIME_MAP.put("swf", "application/x-shockwave-flash");
+		MIME_MAP.put("pdf", "application/pdf");
+		MIME_MAP.put("doc", "application/msword");
+		MIME_MAP.put("ogg", "application/x-ogg");
+		MIME_MAP.put("png", "image/png");
+		MIME_MAP.put("svg", "image/svg+xml");
+		MIME_MAP.put("xml", "application/xml");
+		MIME_MAP.put("zip", "application/zip");
+		MIME_MAP.put("md", "text/plain");
+		MIME_MAP.put("txt", "text/plain");
+		MIME_MAP.put("map", "application/json");
+		MIME_MAP.put("wasm", "application/wasm");
+	}
+
+	public StaticFileHandler(File rootDirectory) {
+		this.rootDirectory = rootDirectory;
+	}
+
+	private File rootDirectory;
+
+	public File getRootDirectory() {
+		return rootDirectory;
+	}
+
+	@Override
+	public void handle(HttpExchange httpExchange) throws IOException {
+		String requestPath = httpExchange.getRequestURI().getPath();
+
+		requestPath = requestPath.substring(1);
+		requestPath = requestPath.replaceAll("//", "/");
+		if (requestPath.length() == 0) {
+			requestPath = "index.html";
+		}
+
+		Path rootPath = rootDirectory.toPath().toAbsolutePath().normalize();
+		Path filePath = rootPath.resolve(requestPath).normalize();
+		File file = filePath.toFile();
+		if (!filePath.startsWith(rootPath) || !file.isFile()) {
+			writeError(httpExchange, 404, "The requested resource was not found on server");
+			return;
+		}
+		writeFile(httpExchange, file);
+	}
+
+	/**
+	 * Writes the contents of a file, or a <em>304 Not Modified</em> response
+	 * if the client's cached copy is still fresh.
+	 */
+	protected void writeFile(HttpExchange httpExchange, File file) throws IOException {
+		String mimeType = getMimeType(file);
+		String eTag = getETag(file);
+		File gzipFile = new File(file.getPath() + GzipPrecompressor.EXTENSION);
+		if (acceptsGzip(httpExchange) && GzipPrecompressor.isFresh(file, gzipFile)) {
+			httpExchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			file = gzipFile;
+			eTag = eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+		}
+		httpExchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+		if (writeNotModified(httpExchange, file, eTag)) {
+			return;
+		}
+		byte[] content = Files.readAllBytes(file.toPath());
+		writeContent(httpExchange, content.length, content, mimeType);
+	}
+
+	/**
+	 * Adds the caching headers for a file, and if the client's
+	 * {@code If-None-Match} header matches, writes a <em>304 Not
+	 * Modified</em> response.
+	 *
+	 * @return {@code true} if the response was written
+	 */
+	protected boolean writeNotModified(HttpExchange httpExchange, File file, String eTag) throws IOException {
+		Headers responseHeaders = httpExchange.getResponseHeaders();
+		responseHeaders.set("Cache-Control", getCacheControl(file));
+		responseHeaders.set("ETag", eTag);
+		responseHeaders.set("Last-Modified",
+				DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(file.lastModified()).atZone(GMT)));
+		String ifNoneMatch = httpExchange.getRequestHeaders().getFirst("If-None-Match");
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String current : ifNoneMatch.split(",")) {
+			current = current.trim();
+			if (current.startsWith("W/")) {
+				current = current.substring(2);
+			}
+			if (current.equals("*") || current.equals(eTag)) {
+				httpExchange.sendResponseHeaders(304, -1);
+				httpExchange.close();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the value of the {@code Cache-Control} header for a file. By
+	 * default, clients may cache any file, but they must always revalidate
+	 * it with its {@code ETag}, because the files may be rebuilt with the
+	 * same names.
+	 */
+	protected String getCacheControl(File file) {
+		return "no-cache";
+	}
+
+	protected String getETag(File file) {
+		return "\"" + Long.toHexString(file.lastModified()) + "-" + Long.toHexString(file.length()) + "\"";
+	}
+
+	protected String getMimeType(File file) {
+		String extension = null;
+		String fileName = file.getName();
+		int extensionIndex = fileName.lastIndexOf(".");
+		if (extensionIndex != -1) {
+			extension = fileName.substring(extensionIndex + 1);
+		}
+		return MIME_MAP.getOrDefault(extension, "application/octet-stream");
+	}
+
+	protected boolean acceptsGzip(HttpExchange httpExchange) {
+		String acceptEncoding = httpExchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String encoding : acceptEncoding.split(",")) {
+			String[] parts = encoding.trim().split(";");
+			if (!"gzip".equals(parts[0].trim())) {
+				continue;
+			}
+			if (parts.length > 1 && parts[1].trim().replace(" ", "").equals("q=0")) {
+				return false;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	protected void writeContent(HttpExchange httpExchange, int contentLength, byte[] content,
+			String contentType) throws IOException {
+		httpExchange.getResponseHeaders().set("Content-Type", contentType);
+		httpExchange.sendResponseHeaders(200, contentLength);
+		httpExchange.getResponseBody().write(content);
+		httpExchange.getResponseBody().close();
+	}
+
+	protected void writeError(HttpExchange httpExchange, int respCode, String errDesc)
+			throws IOException {
+		String message = "HTTP error " + respCode + ": " + errDesc;
+		byte[] messageBytes = message.getBytes("UTF-8");
+
+		httpExchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		httpExchange.sendResponseHeaders(respCode, messageBytes.length);
+
+		OutputStream os = httpExchange.getResponseBody();
+		os.write(messageBytes);
+		os.close();
+	}
+}
@@ -0,0 +1,246 @@
+/*
+Copyright 2022 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.feathersui.maven.plugin.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+/**
+ * Records spans of time in the
+ * <a href="https://docs.google.com/document/d/1CvAClvFfyA5R-PhYUmn5OOQtYMH4h6I0nSsKchNAySU">Trace
+ * Event Format</a>, which may be opened in <em>chrome://tracing</em> or
+ * <a href="https://ui.perfetto.dev/">Perfetto</a>. Every goal executed in
+ * the same Maven session records to the same timeline, where each Maven
+ * project is a process, and each Java thread is a thread.
+ */
+public class TraceRecorder {
+	private static final Charset UTF_8 = Charset.forName("utf-8");
+	private static final Map<String, TraceRecorder> INSTANCES = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the recorder for a trace file, shared by every goal in the same
+	 * Maven session. A later session that writes to the same file replaces
+	 * the recorder of the previous one, so a long-running JVM, like the Maven
+	 * daemon, keeps only the latest recorder for each file.
+	 *
+	 * @param sessionStartTime distinguishes sessions in the same JVM, such as
+	 *                         with the Maven daemon
+	 */
+	public static TraceRecorder getInstance(File file, long sessionStartTime) {
+		return INSTANCES.compute(file.getAbsolutePath(), (key, existing) -> {
+			if (existing != null && existing.sessionStartTime == sessionStartTime) {
+				return existing;
+			}
+			return new TraceRecorder(file, sessionStartTime);
+		});
+	}
+
+	private TraceRecorder(File file, long sessionStartTime) {
+		this.file = file;
+		this.sessionStartTime = sessionStartTime;
+	}
+
+	private File file;
+	private long sessionStartTime;
+	private long originNanos = System.nanoTime();
+	private long originMicros = System.currentTimeMillis() * 1000L;
+	private List<Map<String, Object>> events = new ArrayList<>();
+	private Map<String, Integer> processIds = new HashMap<>();
+	private Set<String> namedThreads = new HashSet<>();
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Starts a span on the current thread. Close it to record the span.
+	 *
+	 * @param process the name of the Maven project
+	 */
+	public Span begin(String process, String category, String name) {
+		return new Span(this, process, category, name);
+	}
+
+	/**
+	 * Writes every span recorded so far in this session. Projects built in
+	 * parallel may write at the same time, so the file is replaced
+	 * atomically, and never contains a partial trace.
+	 */
+	public synchronized void write() throws IOException {
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("traceEvents", events);
+		result.put("displayTimeUnit", "ms");
+		String json = Json.stringify(result);
+		Path filePath = file.getAbsoluteFile().toPath();
+		Files.createDirectories(filePath.getParent());
+		Path tempPath = Files.createTempFile(filePath.getParent(), file.getName(), ".tmp");
+		try {
+			Files.write(tempPath, json.getBytes(UTF_8));
+			try {
+				Files.move(tempPath, filePath, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+
+	private long now() {
+		return originMicros + (System.nanoTime() - originNanos) / 1000L;
+	}
+
+	private synchronized void addEvent(Map<String, Object> event, String process, Thread thread) {
+		Integer pid = processIds.get(process);
+		if (pid == null) {
+			pid = processIds.size() + 1;
+			processIds.put(process, pid);
+			events.add(createMetadataEvent("process_name", pid, null, process));
+		}
+		long tid = thread.getId();
+		if (namedThreads.add(pid + ":" + tid)) {
+			events.add(createMetadataEvent("thread_name", pid, tid, thread.getName()));
+		}
+		event.put("pid", pid);
+		event.put("tid", tid);
+		events.add(event);
+	}
+
+	private static Map<String, Object> createMetadataEvent(String name, int pid, Long tid, String value) {
+		Map<String, Object> event = new LinkedHashMap<>();
+		event.put("name", name);
+		event.put("ph", "M");
+		event.put("pid", pid);
+		if (tid != null) {
+			event.put("tid", tid);
+		}
+		Map<String, Object> args = new LinkedHashMap<>();
+		args.put("name", value);
+		event.put("args", args);
+		return event;
+	}
+
+	/**
+	 * A span of time on one thread. When tracing is disabled, use
+	 * {@link #DISABLED}, which records nothing.
+	 */
+	public static class Span implements Closeable {
+		public static final Span DISABLED = new Span(null, null, null, null);
+
+		private Span(TraceRecorder recorder, String process, String category, String name) {
+			this.recorder = recorder;
+			this.process = process;
+			this.category = category;
+			this.name = name;
+			if (recorder != null) {
+				thread = Thread.currentThread();
+				start = recorder.now();
+			}
+		}
+
+		private TraceRecorder recorder;
+		private String process;
+		private String category;
+		private String name;
+		private Thread thread;
+		private long start;
+		private Map<String, Object> args = new LinkedHashMap<>();
+		private AtomicBoolean hasOutput = new AtomicBoolean();
+		private boolean closed = false;
+
+		/**
+		 * Adds a value that is displayed with the span.
+		 */
+		public Span arg(String key, Object value) {
+			if (recorder != null) {
+				synchronized (args) {
+					args.put(key, value);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Records an instant event inside of the span.
+		 */
+		public void mark(String markName) {
+			if (recorder == null) {
+				return;
+			}
+			Map<String, Object> event = new LinkedHashMap<>();
+			event.put("name", markName);
+			event.put("cat", category);
+			event.put("ph", "i");
+			event.put("s", "t");
+			event.put("ts", recorder.now());
+			recorder.addEvent(event, process, thread);
+		}
+
+		/**
+		 * Wraps the output of a child process, and marks the time when any
+		 * of the wrapped consumers receives its first line.
+		 */
+		public StreamConsumer markFirstOutput(StreamConsumer consumer) {
+			if (recorder == null) {
+				return consumer;
+			}
+			return line -> {
+				if (!hasOutput.get() && hasOutput.compareAndSet(false, true)) {
+					mark("first output");
+				}
+				consumer.consumeLine(line);
+			};
+		}
+
+		@Override
+		public void close() {
+			if (recorder == null || closed) {
+				return;
+			}
+			closed = true;
+			Map<String, Object> event = new LinkedHashMap<>();
+			event.put("name", name);
+			event.put("cat", category);
+			event.put("ph", "X");
+			event.put("ts", start);
+			event.put("dur", recorder.now() - start);
+			synchronized (args) {
+				if (args.size() > 0) {
+					event.put("args", new LinkedHashMap<>(args));
+				}
+			}
+			recorder.addEvent(event, process, thread);
+		}
+	}
+}